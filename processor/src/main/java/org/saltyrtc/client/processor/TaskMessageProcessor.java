@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generate a `TaskMessageCodec` for every class annotated with `@TaskMessageType`.
+ *
+ * The codec for `Offer` is called `OfferCodec` (`Outer_OfferCodec` for nested classes) and
+ * is put into the same package. It reads and writes the fields directly, without reflection
+ * or an intermediate map.
+ *
+ * Requirements for annotated classes:
+ *
+ * - The class extends `TaskMessage` and passes the codec to the `TaskMessage(String, TaskMessageCodec)`
+ *   constructor, e.g. `super(OfferCodec.TYPE, OfferCodec.INSTANCE)`.
+ * - It has a constructor without parameters and is not abstract or private.
+ * - All non-static, non-transient fields are encoded. They must not be private or final.
+ *   Supported types are `boolean`, `int`, `long`, `double`, their boxed types, `String` and `byte[]`.
+ * - Reference fields are optional and may be null, unless they are annotated with `@NonNull`.
+ *   Primitive fields are required.
+ */
+public class TaskMessageProcessor extends AbstractProcessor {
+
+    private static final String TASK_MESSAGE_TYPE = "org.saltyrtc.client.annotations.TaskMessageType";
+    private static final String TASK_MESSAGE_FIELD = "org.saltyrtc.client.annotations.TaskMessageField";
+    private static final String NON_NULL = "org.saltyrtc.client.annotations.NonNull";
+    private static final String TASK_MESSAGE = "org.saltyrtc.client.messages.c2c.TaskMessage";
+
+    /**
+     * The supported field types, with the names used in the generated code.
+     */
+    private enum Kind {
+        BOOLEAN("Boolean", "packBoolean"),
+        INT("Int", "packInt"),
+        LONG("Long", "packLong"),
+        DOUBLE("Double", "packDouble"),
+        STRING("String", "packString"),
+        BINARY("Binary", null);
+
+        final String read;
+        final String pack;
+
+        Kind(String read, String pack) {
+            this.read = read;
+            this.pack = pack;
+        }
+    }
+
+    private static final class Field {
+        final String name;
+        final String key;
+        final Kind kind;
+        final boolean primitive;
+        final boolean nullable;
+        final String boxed;
+
+        Field(String name, String key, Kind kind, boolean primitive, boolean nullable, String boxed) {
+            this.name = name;
+            this.key = key;
+            this.kind = kind;
+            this.primitive = primitive;
+            this.nullable = nullable;
+            this.boxed = boxed;
+        }
+
+        boolean isRequired() {
+            return !this.nullable;
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(TASK_MESSAGE_TYPE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    this.error(element, "@TaskMessageType can only be used on classes");
+                    continue;
+                }
+                try {
+                    this.generate((TypeElement) element);
+                } catch (IOException e) {
+                    this.error(element, "Could not write codec: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        if (!this.validateClass(type)) {
+            return;
+        }
+        final String messageType = this.getAnnotationValue(type, TASK_MESSAGE_TYPE);
+        final List<Field> fields = new ArrayList<>();
+        final Set<String> keys = new HashSet<>();
+        boolean valid = true;
+        for (VariableElement variable : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final Set<Modifier> modifiers = variable.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            final Field field = this.toField(variable);
+            if (field == null) {
+                valid = false;
+            } else if (!keys.add(field.key)) {
+                this.error(variable, "Duplicate key: " + field.key);
+                valid = false;
+            } else {
+                fields.add(field);
+            }
+        }
+        if (!valid) {
+            return;
+        }
+
+        final PackageElement pkg = this.processingEnv.getElementUtils().getPackageOf(type);
+        final String packageName = pkg.isUnnamed() ? null : pkg.getQualifiedName().toString();
+        final String codecName = codecName(type);
+        final String qualifiedName = packageName == null ? codecName : packageName + "." + codecName;
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(new CodecWriter(packageName, codecName, type.getQualifiedName().toString(),
+                messageType, fields).toString());
+        }
+    }
+
+    private boolean validateClass(TypeElement type) {
+        final Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            this.error(type, "@TaskMessageType classes must not be abstract or private");
+            return false;
+        }
+        if (type.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)) {
+            this.error(type, "Nested @TaskMessageType classes must be static");
+            return false;
+        }
+        if (!this.extendsTaskMessage(type)) {
+            this.error(type, "@TaskMessageType classes must extend " + TASK_MESSAGE);
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        this.error(type, "@TaskMessageType classes must have a non-private constructor without parameters");
+        return false;
+    }
+
+    private boolean extendsTaskMessage(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        while (superclass.getKind() == TypeKind.DECLARED) {
+            final TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (element.getQualifiedName().contentEquals(TASK_MESSAGE)) {
+                return true;
+            }
+            superclass = element.getSuperclass();
+        }
+        return false;
+    }
+
+    private Field toField(VariableElement variable) {
+        final String name = variable.getSimpleName().toString();
+        final Set<Modifier> modifiers = variable.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+            this.error(variable, "Task message fields must not be private or final");
+            return null;
+        }
+        final String annotatedKey = this.getAnnotationValue(variable, TASK_MESSAGE_FIELD);
+        final String key = annotatedKey != null ? annotatedKey : name;
+        if (key.equals("type")) {
+            this.error(variable, "The key 'type' is reserved for the message type");
+            return null;
+        }
+        final boolean nonNull = this.getAnnotation(variable, NON_NULL) != null;
+
+        final TypeMirror type = variable.asType();
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return new Field(name, key, Kind.BOOLEAN, true, false, null);
+            case INT:
+                return new Field(name, key, Kind.INT, true, false, null);
+            case LONG:
+                return new Field(name, key, Kind.LONG, true, false, null);
+            case DOUBLE:
+                return new Field(name, key, Kind.DOUBLE, true, false, null);
+            case ARRAY:
+                if (((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE) {
+                    return new Field(name, key, Kind.BINARY, false, !nonNull, null);
+                }
+                break;
+            case DECLARED:
+                final String typeName = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+                switch (typeName) {
+                    case "java.lang.Boolean":
+                        return new Field(name, key, Kind.BOOLEAN, false, !nonNull, "Boolean");
+                    case "java.lang.Integer":
+                        return new Field(name, key, Kind.INT, false, !nonNull, "Integer");
+                    case "java.lang.Long":
+                        return new Field(name, key, Kind.LONG, false, !nonNull, "Long");
+                    case "java.lang.Double":
+                        return new Field(name, key, Kind.DOUBLE, false, !nonNull, "Double");
+                    case "java.lang.String":
+                        return new Field(name, key, Kind.STRING, false, !nonNull, null);
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+        this.error(variable, "Unsupported task message field type: " + type
+            + " (supported: boolean, int, long, double, their boxed types, String and byte[])");
+        return null;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the `value` of the annotation, or null if the element is not annotated.
+     */
+    private String getAnnotationValue(Element element, String annotationType) {
+        final AnnotationMirror mirror = this.getAnnotation(element, annotationType);
+        if (mirror == null) {
+            return null;
+        }
+        for (ExecutableElement method : mirror.getElementValues().keySet()) {
+            if (method.getSimpleName().contentEquals("value")) {
+                final AnnotationValue value = mirror.getElementValues().get(method);
+                return (String) value.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the codec name, `Outer_InnerCodec` for nested classes.
+     */
+    private static String codecName(TypeElement type) {
+        final StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("Codec").toString();
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Source code of a generated codec.
+     */
+    private static final class CodecWriter {
+        private static final String FIELDS = "org.saltyrtc.client.helpers.TaskMessageFields";
+
+        private final StringBuilder out = new StringBuilder();
+
+        CodecWriter(String packageName, String codecName, String messageClass, String messageType,
+                    List<Field> fields) {
+            if (packageName != null) {
+                this.line("package " + packageName + ";");
+                this.line("");
+            }
+            this.line("/**");
+            this.line(" * Codec for {@link " + messageClass + "}.");
+            this.line(" *");
+            this.line(" * Generated by the SaltyRTC task message processor, do not edit.");
+            this.line(" */");
+            this.line("public final class " + codecName
+                + " implements org.saltyrtc.client.messages.c2c.TaskMessageCodec<" + messageClass + "> {");
+            this.line("");
+            this.line("    public static final String TYPE = " + literal(messageType) + ";");
+            this.line("    public static final " + codecName + " INSTANCE = new " + codecName + "();");
+            this.line("");
+            final StringBuilder names = new StringBuilder();
+            for (Field field : fields) {
+                names.append(names.length() == 0 ? "" : ", ").append(literal(field.key));
+            }
+            this.line("    private static final " + FIELDS + ".Names NAMES = " + FIELDS + ".Names.of(" + names + ");");
+            this.line("    private static final byte[] TYPE_KEY = " + FIELDS + ".encodeString(\"type\");");
+            this.line("    private static final byte[] TYPE_VALUE = " + FIELDS + ".encodeString(TYPE);");
+            for (int i = 0; i < fields.size(); i++) {
+                this.line("    private static final byte[] KEY_" + i + " = " + FIELDS + ".encodeString("
+                    + literal(fields.get(i).key) + ");");
+            }
+            this.line("");
+            this.line("    private " + codecName + "() {");
+            this.line("    }");
+            this.line("");
+
+            this.line("    @Override");
+            this.line("    public String getType() {");
+            this.line("        return TYPE;");
+            this.line("    }");
+            this.line("");
+
+            this.writeWrite(messageClass, fields);
+            this.writeRead(messageClass, fields);
+            this.writeToMap(messageClass, fields);
+            this.line("}");
+        }
+
+        private void writeWrite(String messageClass, List<Field> fields) {
+            this.line("    @Override");
+            this.line("    public void write(" + messageClass + " message, org.msgpack.core.MessagePacker packer)");
+            this.line("            throws java.io.IOException {");
+            this.line("        packer.packMapHeader(" + (fields.size() + 1) + ");");
+            this.line("        packer.writePayload(TYPE_KEY);");
+            this.line("        packer.writePayload(TYPE_VALUE);");
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                final String value = "message." + field.name;
+                this.line("        packer.writePayload(KEY_" + i + ");");
+                String indent = "        ";
+                if (!field.primitive) {
+                    if (field.nullable) {
+                        this.line("        if (" + value + " == null) {");
+                        this.line("            packer.packNil();");
+                        this.line("        } else {");
+                        indent = "            ";
+                    } else {
+                        this.line("        if (" + value + " == null) {");
+                        this.line("            throw new NullPointerException(" + literal(field.name + " must not be null") + ");");
+                        this.line("        }");
+                    }
+                }
+                if (field.kind == Kind.BINARY) {
+                    this.line(indent + "packer.packBinaryHeader(" + value + ".length).writePayload(" + value + ");");
+                } else {
+                    this.line(indent + "packer." + field.kind.pack + "(" + value + ");");
+                }
+                if (!field.primitive && field.nullable) {
+                    this.line("        }");
+                }
+            }
+            this.line("    }");
+            this.line("");
+        }
+
+        private void writeRead(String messageClass, List<Field> fields) {
+            this.line("    @Override");
+            this.line("    public " + messageClass + " read(" + FIELDS + " fields)");
+            this.line("            throws org.saltyrtc.client.exceptions.SerializationError,");
+            this.line("                   org.saltyrtc.client.exceptions.ValidationError, java.io.IOException {");
+            this.line("        final " + messageClass + " message = new " + messageClass + "();");
+            for (int i = 0; i < fields.size(); i++) {
+                if (fields.get(i).isRequired()) {
+                    this.line("        boolean has" + i + " = false;");
+                }
+            }
+            this.line("        int field;");
+            this.line("        while ((field = fields.next(NAMES)) != " + FIELDS + ".NO_MORE_FIELDS) {");
+            this.line("            switch (field) {");
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                final String read = "fields.read" + field.kind.read + "(" + literal(field.key) + ")";
+                this.line("                case " + i + ":");
+                if (field.nullable) {
+                    final String value = field.boxed != null ? field.boxed + ".valueOf(" + read + ")" : read;
+                    this.line("                    message." + field.name + " = fields.readNil() ? null : " + value + ";");
+                } else {
+                    if (!field.primitive) {
+                        this.line("                    if (fields.readNil()) {");
+                        this.line("                        throw new org.saltyrtc.client.exceptions.ValidationError("
+                            + literal(field.key + " must not be null") + ");");
+                        this.line("                    }");
+                    }
+                    this.line("                    message." + field.name + " = " + read + ";");
+                    this.line("                    has" + i + " = true;");
+                }
+                this.line("                    break;");
+            }
+            this.line("                default:");
+            this.line("                    fields.skip();");
+            this.line("            }");
+            this.line("        }");
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                if (field.isRequired()) {
+                    this.line("        if (!has" + i + ") {");
+                    this.line("            throw new org.saltyrtc.client.exceptions.ValidationError("
+                        + literal("Message is missing the '" + field.key + "' field") + ");");
+                    this.line("        }");
+                }
+            }
+            this.line("        return message;");
+            this.line("    }");
+            this.line("");
+        }
+
+        private void writeToMap(String messageClass, List<Field> fields) {
+            this.line("    @Override");
+            this.line("    public java.util.Map<String, Object> toMap(" + messageClass + " message) {");
+            this.line("        final java.util.Map<String, Object> map = new java.util.LinkedHashMap<>();");
+            this.line("        map.put(\"type\", TYPE);");
+            for (Field field : fields) {
+                this.line("        map.put(" + literal(field.key) + ", message." + field.name + ");");
+            }
+            this.line("        return map;");
+            this.line("    }");
+            this.line("");
+        }
+
+        private void line(String line) {
+            this.out.append(line).append('\n');
+        }
+
+        private static String literal(String value) {
+            final StringBuilder literal = new StringBuilder("\"");
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    literal.append('\\').append(c);
+                } else if (c < 0x20 || c > 0x7e) {
+                    literal.append(String.format("\\u%04x", (int) c));
+                } else {
+                    literal.append(c);
+                }
+            }
+            return literal.append('"').toString();
+        }
+
+        @Override
+        public String toString() {
+            return this.out.toString();
+        }
+    }
+
+}
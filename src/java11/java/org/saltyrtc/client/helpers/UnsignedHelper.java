@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Tools for signed/unsigned conversion.
+ *
+ * Java 11+ variant of this class, used from the multi-release jar. It must provide
+ * the same public methods as the Java 7 variant.
+ */
+public class UnsignedHelper {
+
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    public static short readUnsignedByte(byte val) {
+        return (short) Byte.toUnsignedInt(val);
+    }
+
+    public static int readUnsignedShort(short val) {
+        return Short.toUnsignedInt(val);
+    }
+
+    public static long readUnsignedInt(int val) {
+        return Integer.toUnsignedLong(val);
+    }
+
+    public static byte getUnsignedByte(short val) {
+        if (val >= (1 << 8)) {
+            throw new IllegalArgumentException("Value is too large to fit in a byte");
+        }
+        if (val < 0) {
+            throw new IllegalArgumentException("Value must not be negative");
+        }
+        return (byte) val;
+    }
+
+    public static short getUnsignedShort(int val) {
+        if (val >= (1 << 16)) {
+            throw new IllegalArgumentException("Value is too large to fit in a short");
+        }
+        if (val < 0) {
+            throw new IllegalArgumentException("Value must not be negative");
+        }
+        return (short) val;
+    }
+
+    public static int getUnsignedInt(long val) {
+        if (val >= (1L << 32)) {
+            throw new IllegalArgumentException("Value is too large to fit in an int");
+        }
+        if (val < 0) {
+            throw new IllegalArgumentException("Value must not be negative");
+        }
+        return (int) val;
+    }
+
+    /**
+     * Read an unsigned big endian 16 bit integer from `buf` at `offset`.
+     */
+    public static int readUnsignedShort(byte[] buf, int offset) {
+        return Short.toUnsignedInt((short) SHORT.get(buf, offset));
+    }
+
+    /**
+     * Read an unsigned big endian 32 bit integer from `buf` at `offset`.
+     */
+    public static long readUnsignedInt(byte[] buf, int offset) {
+        return Integer.toUnsignedLong((int) INT.get(buf, offset));
+    }
+
+    /**
+     * Write an unsigned 16 bit integer to `buf` at `offset` in big endian byte order.
+     */
+    public static void writeUnsignedShort(byte[] buf, int offset, int val) {
+        SHORT.set(buf, offset, getUnsignedShort(val));
+    }
+
+    /**
+     * Write an unsigned 32 bit integer to `buf` at `offset` in big endian byte order.
+     */
+    public static void writeUnsignedInt(byte[] buf, int offset, long val) {
+        INT.set(buf, offset, getUnsignedInt(val));
+    }
+
+}
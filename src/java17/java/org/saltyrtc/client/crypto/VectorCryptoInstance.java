@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.util.Arrays;
+
+/**
+ * Crypto instance that encrypts boxes of at least {@link #MIN_VECTOR_LENGTH} bytes with
+ * {@link VectorXSalsa20Poly1305} and smaller ones with jnacl.
+ */
+class VectorCryptoInstance implements CryptoInstance {
+
+    // Below this length, the scalar implementation is faster
+    static final int MIN_VECTOR_LENGTH = 512;
+
+    @NonNull private final byte[] key;
+    @NonNull private final NaClCryptoInstance scalar;
+    private volatile boolean wiped = false;
+
+    /**
+     * @param key The precomputed or symmetric key, it is copied.
+     */
+    VectorCryptoInstance(@NonNull byte[] key) {
+        this.key = key.clone();
+        this.scalar = new NaClCryptoInstance(new NaCl(key));
+    }
+
+    @NonNull
+    @Override
+    public byte[] encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+        if (nonce.length != CryptoProvider.NONCEBYTES) {
+            throw new CryptoFailedException("Invalid nonce length");
+        }
+        final byte[] output = new byte[data.length + CryptoProvider.BOXOVERHEAD];
+        this.encrypt(output, 0, data, 0, data.length, nonce, 0);
+        return output;
+    }
+
+    @NonNull
+    @Override
+    public byte[] decrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+        if (nonce.length != CryptoProvider.NONCEBYTES) {
+            throw new CryptoFailedException("Invalid nonce length");
+        }
+        if (data.length < CryptoProvider.BOXOVERHEAD) {
+            throw new CryptoFailedException("Decrypted data is null");
+        }
+        final byte[] output = new byte[data.length - CryptoProvider.BOXOVERHEAD];
+        this.decrypt(output, 0, data, 0, data.length, nonce, 0);
+        return output;
+    }
+
+    @Override
+    public void encrypt(@NonNull byte[] output, int outputOffset,
+                        @NonNull byte[] input, int inputOffset, int inputLength,
+                        @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+        if (inputLength < MIN_VECTOR_LENGTH) {
+            this.scalar.encrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+            return;
+        }
+        this.checkNotWiped();
+        checkRange(input, inputOffset, inputLength);
+        checkRange(output, outputOffset, inputLength + CryptoProvider.BOXOVERHEAD);
+        checkRange(nonce, nonceOffset, CryptoProvider.NONCEBYTES);
+        VectorXSalsa20Poly1305.seal(output, outputOffset, input, inputOffset, inputLength,
+            nonce, nonceOffset, this.key);
+    }
+
+    @Override
+    public void decrypt(@NonNull byte[] output, int outputOffset,
+                        @NonNull byte[] input, int inputOffset, int inputLength,
+                        @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+        if (inputLength - CryptoProvider.BOXOVERHEAD < MIN_VECTOR_LENGTH) {
+            this.scalar.decrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+            return;
+        }
+        this.checkNotWiped();
+        checkRange(input, inputOffset, inputLength);
+        checkRange(output, outputOffset, inputLength - CryptoProvider.BOXOVERHEAD);
+        checkRange(nonce, nonceOffset, CryptoProvider.NONCEBYTES);
+        if (!VectorXSalsa20Poly1305.open(output, outputOffset, input, inputOffset, inputLength,
+                nonce, nonceOffset, this.key)) {
+            throw new CryptoFailedException("Could not decrypt data");
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance copy() {
+        if (this.wiped) {
+            throw new IllegalStateException("Crypto instance has been wiped");
+        }
+        return new VectorCryptoInstance(this.key);
+    }
+
+    @Override
+    public void wipe() {
+        this.wiped = true;
+        this.scalar.wipe();
+        Arrays.fill(this.key, (byte) 0);
+    }
+
+    private void checkNotWiped() throws CryptoFailedException {
+        if (this.wiped) {
+            throw new CryptoFailedException("Crypto instance has been wiped");
+        }
+    }
+
+    private static void checkRange(byte[] array, int offset, int length) throws CryptoFailedException {
+        if (offset < 0 || length < 0 || offset > array.length - length) {
+            throw new CryptoFailedException("Invalid array range");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.util.Arrays;
+
+/**
+ * Crypto provider that encrypts large boxes with the Java Vector API
+ * (`jdk.incubator.vector`, Java 17+).
+ *
+ * Several Salsa20 blocks are computed in parallel lanes and Poly1305 processes four
+ * blocks at once. Small boxes, key generation and key agreement are handled by jnacl.
+ *
+ * The provider is only available if the incubator module has been added to the
+ * runtime, e.g. with `--add-modules jdk.incubator.vector`. In that case it is selected
+ * by {@link CryptoProviders#getDefault()} automatically.
+ */
+public class VectorCryptoProvider implements CryptoProvider {
+
+    private static final String MODULE = "jdk.incubator.vector";
+
+    @NonNull private final JnaclCryptoProvider jnacl = new JnaclCryptoProvider();
+
+    /**
+     * @throws UnsupportedOperationException The Vector API module is not present.
+     */
+    public VectorCryptoProvider() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Module " + MODULE + " is not present");
+        }
+    }
+
+    /**
+     * Return whether the Vector API module is present.
+     */
+    public static boolean isSupported() {
+        return ModuleLayer.boot().findModule(MODULE).isPresent();
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public void generateKeyPair(@NonNull byte[] publicKey, @NonNull byte[] secretKey) {
+        this.jnacl.generateKeyPair(publicKey, secretKey);
+    }
+
+    @Override
+    public void generateKeyPairs(@NonNull byte[][] publicKeys, @NonNull byte[][] secretKeys) {
+        this.jnacl.generateKeyPairs(publicKeys, secretKeys);
+    }
+
+    @NonNull
+    @Override
+    public byte[] derivePublicKey(@NonNull byte[] secretKey) throws InvalidKeyException {
+        return this.jnacl.derivePublicKey(secretKey);
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey)
+            throws InvalidKeyException {
+        final byte[] precomputed = new byte[NaCl.BEFORENMBYTES];
+        try {
+            NaCl.precompute(precomputed, secretKey, publicKey);
+            return new VectorCryptoInstance(precomputed);
+        } catch (Error e) {
+            throw new InvalidKeyException(e.toString());
+        } finally {
+            Arrays.fill(precomputed, (byte) 0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getSymmetricInstance(@NonNull byte[] key) throws InvalidKeyException {
+        if (key.length != SYMMKEYBYTES) {
+            throw new InvalidKeyException("Key must be " + SYMMKEYBYTES + " bytes long");
+        }
+        return new VectorCryptoInstance(key);
+    }
+}
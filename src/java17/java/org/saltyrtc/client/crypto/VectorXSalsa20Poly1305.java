@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.xsalsa20;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * XSalsa20-Poly1305 secret boxes using the Java Vector API.
+ *
+ * Salsa20 computes one key stream block per lane, so 4 or 8 blocks (depending on the
+ * vector size of the platform) are computed at once. Poly1305 keeps four independent
+ * accumulators, one per lane, which are multiplied by r^4 for every group of four
+ * blocks and combined with the powers r^4, r^3, r^2 and r at the end.
+ *
+ * The output is identical to jnacl's xsalsa20poly1305 with the nopad layout:
+ * the 16 byte authenticator followed by the ciphertext.
+ */
+final class VectorXSalsa20Poly1305 {
+
+    private static final VectorSpecies<Integer> INTS =
+        IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256 ? IntVector.SPECIES_256 : IntVector.SPECIES_128;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_256;
+
+    // Number of Salsa20 blocks computed at once
+    private static final int LANES = INTS.length();
+    private static final int GROUP_BYTES = 64 * LANES;
+
+    // ks[SCATTER[i] + j] receives word j of block i
+    private static final int[] SCATTER = new int[LANES];
+    static {
+        for (int i = 0; i < LANES; i++) {
+            SCATTER[i] = 16 * i;
+        }
+    }
+
+    private static final VarHandle LE_INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int SIGMA0 = le32(xsalsa20.sigma, 0);
+    private static final int SIGMA1 = le32(xsalsa20.sigma, 4);
+    private static final int SIGMA2 = le32(xsalsa20.sigma, 8);
+    private static final int SIGMA3 = le32(xsalsa20.sigma, 12);
+
+    private static final long MASK26 = 0x3ffffff;
+
+    private VectorXSalsa20Poly1305() {
+        // Static class
+    }
+
+    private static int le32(byte[] x, int offset) {
+        return (int) LE_INT.get(x, offset);
+    }
+
+    private static long le32u(byte[] x, int offset) {
+        return ((int) LE_INT.get(x, offset)) & 0xffffffffL;
+    }
+
+    /**
+     * Encrypt mlen bytes of m and store the authenticator and the ciphertext in c.
+     * c and m may be the same array if coffset + 16 == moffset.
+     */
+    static void seal(byte[] c, int coffset, byte[] m, int moffset, int mlen,
+                     byte[] n, int noffset, byte[] k) {
+        final int[] subkey = new int[8];
+        xsalsa20.crypto_subkey(subkey, n, noffset, k);
+
+        final byte[] polykey = new byte[32];
+        xsalsa20.crypto_stream_xor_skip32(polykey, null, 0, null, 0, 0, n, noffset, subkey);
+        streamXor(c, coffset + 16, m, moffset, mlen, subkey, le32(n, noffset + 16), le32(n, noffset + 20));
+        poly1305(c, coffset, c, coffset + 16, mlen, polykey);
+    }
+
+    /**
+     * Verify and decrypt the box of clen bytes in c and store the plaintext in m.
+     * m and c may be the same array if moffset <= coffset + 16.
+     *
+     * @return false if the authenticator is invalid.
+     */
+    static boolean open(byte[] m, int moffset, byte[] c, int coffset, int clen,
+                        byte[] n, int noffset, byte[] k) {
+        final int[] subkey = new int[8];
+        xsalsa20.crypto_subkey(subkey, n, noffset, k);
+
+        final byte[] polykey = new byte[32];
+        xsalsa20.crypto_stream_xor_skip32(polykey, null, 0, null, 0, 0, n, noffset, subkey);
+        final byte[] mac = new byte[16];
+        poly1305(mac, 0, c, coffset + 16, clen - 16, polykey);
+        final byte[] expected = new byte[16];
+        System.arraycopy(c, coffset, expected, 0, 16);
+        if (!MessageDigest.isEqual(mac, expected)) {
+            return false;
+        }
+
+        streamXor(m, moffset, c, coffset + 16, clen - 16, subkey, le32(n, noffset + 16), le32(n, noffset + 20));
+        return true;
+    }
+
+    /**
+     * XOR mlen bytes of the Salsa20 key stream, starting at key stream byte 32, into m and
+     * store the result in c. c and m may be the same array as long as coffset <= moffset.
+     */
+    static void streamXor(byte[] c, int coffset, byte[] m, int moffset, int mlen,
+                          int[] subkey, int n0, int n1) {
+        final int[] ks = new int[16 * LANES];
+        final int vectorBytes = INTS.vectorByteSize();
+
+        // The message byte at pos uses key stream byte pos + 32
+        for (long counter = 0; 64 * counter - 32 < mlen; counter += LANES) {
+            blocks(ks, subkey, n0, n1, counter);
+
+            final int groupStart = (int) (64 * counter - 32);
+            int t = counter == 0 ? 32 : 0;
+            final int end = Math.min(GROUP_BYTES, mlen - groupStart);
+            for (; t + vectorBytes <= end; t += vectorBytes) {
+                final int pos = groupStart + t;
+                IntVector.fromByteArray(INTS, m, moffset + pos, ByteOrder.LITTLE_ENDIAN)
+                    .lanewise(VectorOperators.XOR, IntVector.fromArray(INTS, ks, t >> 2))
+                    .intoByteArray(c, coffset + pos, ByteOrder.LITTLE_ENDIAN);
+            }
+            for (; t < end; t++) {
+                final int pos = groupStart + t;
+                c[coffset + pos] = (byte) (m[moffset + pos] ^ (ks[t >> 2] >>> (8 * (t & 3))));
+            }
+        }
+    }
+
+    /**
+     * Compute the key stream blocks counter to counter + LANES - 1 and store them in ks,
+     * one block of 16 words after the other.
+     */
+    private static void blocks(int[] ks, int[] subkey, int n0, int n1, long counter) {
+        final int[] lo = new int[LANES];
+        final int[] hi = new int[LANES];
+        for (int i = 0; i < LANES; i++) {
+            lo[i] = (int) (counter + i);
+            hi[i] = (int) ((counter + i) >>> 32);
+        }
+
+        final IntVector j0 = IntVector.broadcast(INTS, SIGMA0);
+        final IntVector j1 = IntVector.broadcast(INTS, subkey[0]);
+        final IntVector j2 = IntVector.broadcast(INTS, subkey[1]);
+        final IntVector j3 = IntVector.broadcast(INTS, subkey[2]);
+        final IntVector j4 = IntVector.broadcast(INTS, subkey[3]);
+        final IntVector j5 = IntVector.broadcast(INTS, SIGMA1);
+        final IntVector j6 = IntVector.broadcast(INTS, n0);
+        final IntVector j7 = IntVector.broadcast(INTS, n1);
+        final IntVector j8 = IntVector.fromArray(INTS, lo, 0);
+        final IntVector j9 = IntVector.fromArray(INTS, hi, 0);
+        final IntVector j10 = IntVector.broadcast(INTS, SIGMA2);
+        final IntVector j11 = IntVector.broadcast(INTS, subkey[4]);
+        final IntVector j12 = IntVector.broadcast(INTS, subkey[5]);
+        final IntVector j13 = IntVector.broadcast(INTS, subkey[6]);
+        final IntVector j14 = IntVector.broadcast(INTS, subkey[7]);
+        final IntVector j15 = IntVector.broadcast(INTS, SIGMA3);
+
+        IntVector x0 = j0, x1 = j1, x2 = j2, x3 = j3, x4 = j4, x5 = j5, x6 = j6, x7 = j7;
+        IntVector x8 = j8, x9 = j9, x10 = j10, x11 = j11, x12 = j12, x13 = j13, x14 = j14, x15 = j15;
+
+        for (int i = 20; i > 0; i -= 2) {
+            x4 = x4.lanewise(VectorOperators.XOR, x0.add(x12).lanewise(VectorOperators.ROL, 7));
+            x8 = x8.lanewise(VectorOperators.XOR, x4.add(x0).lanewise(VectorOperators.ROL, 9));
+            x12 = x12.lanewise(VectorOperators.XOR, x8.add(x4).lanewise(VectorOperators.ROL, 13));
+            x0 = x0.lanewise(VectorOperators.XOR, x12.add(x8).lanewise(VectorOperators.ROL, 18));
+            x9 = x9.lanewise(VectorOperators.XOR, x5.add(x1).lanewise(VectorOperators.ROL, 7));
+            x13 = x13.lanewise(VectorOperators.XOR, x9.add(x5).lanewise(VectorOperators.ROL, 9));
+            x1 = x1.lanewise(VectorOperators.XOR, x13.add(x9).lanewise(VectorOperators.ROL, 13));
+            x5 = x5.lanewise(VectorOperators.XOR, x1.add(x13).lanewise(VectorOperators.ROL, 18));
+            x14 = x14.lanewise(VectorOperators.XOR, x10.add(x6).lanewise(VectorOperators.ROL, 7));
+            x2 = x2.lanewise(VectorOperators.XOR, x14.add(x10).lanewise(VectorOperators.ROL, 9));
+            x6 = x6.lanewise(VectorOperators.XOR, x2.add(x14).lanewise(VectorOperators.ROL, 13));
+            x10 = x10.lanewise(VectorOperators.XOR, x6.add(x2).lanewise(VectorOperators.ROL, 18));
+            x3 = x3.lanewise(VectorOperators.XOR, x15.add(x11).lanewise(VectorOperators.ROL, 7));
+            x7 = x7.lanewise(VectorOperators.XOR, x3.add(x15).lanewise(VectorOperators.ROL, 9));
+            x11 = x11.lanewise(VectorOperators.XOR, x7.add(x3).lanewise(VectorOperators.ROL, 13));
+            x15 = x15.lanewise(VectorOperators.XOR, x11.add(x7).lanewise(VectorOperators.ROL, 18));
+            x1 = x1.lanewise(VectorOperators.XOR, x0.add(x3).lanewise(VectorOperators.ROL, 7));
+            x2 = x2.lanewise(VectorOperators.XOR, x1.add(x0).lanewise(VectorOperators.ROL, 9));
+            x3 = x3.lanewise(VectorOperators.XOR, x2.add(x1).lanewise(VectorOperators.ROL, 13));
+            x0 = x0.lanewise(VectorOperators.XOR, x3.add(x2).lanewise(VectorOperators.ROL, 18));
+            x6 = x6.lanewise(VectorOperators.XOR, x5.add(x4).lanewise(VectorOperators.ROL, 7));
+            x7 = x7.lanewise(VectorOperators.XOR, x6.add(x5).lanewise(VectorOperators.ROL, 9));
+            x4 = x4.lanewise(VectorOperators.XOR, x7.add(x6).lanewise(VectorOperators.ROL, 13));
+            x5 = x5.lanewise(VectorOperators.XOR, x4.add(x7).lanewise(VectorOperators.ROL, 18));
+            x11 = x11.lanewise(VectorOperators.XOR, x10.add(x9).lanewise(VectorOperators.ROL, 7));
+            x8 = x8.lanewise(VectorOperators.XOR, x11.add(x10).lanewise(VectorOperators.ROL, 9));
+            x9 = x9.lanewise(VectorOperators.XOR, x8.add(x11).lanewise(VectorOperators.ROL, 13));
+            x10 = x10.lanewise(VectorOperators.XOR, x9.add(x8).lanewise(VectorOperators.ROL, 18));
+            x12 = x12.lanewise(VectorOperators.XOR, x15.add(x14).lanewise(VectorOperators.ROL, 7));
+            x13 = x13.lanewise(VectorOperators.XOR, x12.add(x15).lanewise(VectorOperators.ROL, 9));
+            x14 = x14.lanewise(VectorOperators.XOR, x13.add(x12).lanewise(VectorOperators.ROL, 13));
+            x15 = x15.lanewise(VectorOperators.XOR, x14.add(x13).lanewise(VectorOperators.ROL, 18));
+        }
+
+        x0.add(j0).intoArray(ks, 0, SCATTER, 0);
+        x1.add(j1).intoArray(ks, 1, SCATTER, 0);
+        x2.add(j2).intoArray(ks, 2, SCATTER, 0);
+        x3.add(j3).intoArray(ks, 3, SCATTER, 0);
+        x4.add(j4).intoArray(ks, 4, SCATTER, 0);
+        x5.add(j5).intoArray(ks, 5, SCATTER, 0);
+        x6.add(j6).intoArray(ks, 6, SCATTER, 0);
+        x7.add(j7).intoArray(ks, 7, SCATTER, 0);
+        x8.add(j8).intoArray(ks, 8, SCATTER, 0);
+        x9.add(j9).intoArray(ks, 9, SCATTER, 0);
+        x10.add(j10).intoArray(ks, 10, SCATTER, 0);
+        x11.add(j11).intoArray(ks, 11, SCATTER, 0);
+        x12.add(j12).intoArray(ks, 12, SCATTER, 0);
+        x13.add(j13).intoArray(ks, 13, SCATTER, 0);
+        x14.add(j14).intoArray(ks, 14, SCATTER, 0);
+        x15.add(j15).intoArray(ks, 15, SCATTER, 0);
+    }
+
+    /**
+     * Compute the Poly1305 authenticator of mlen bytes of m with the 32 byte key k and
+     * store it in out. The accumulator and the key use 5 limbs of 26 bits, like jnacl.
+     */
+    static void poly1305(byte[] out, int outoffset, byte[] m, int moffset, int mlen, byte[] k) {
+        // r &= 0xffffffc0ffffffc0ffffffc0fffffff
+        final long t0 = le32u(k, 0), t1 = le32u(k, 4), t2 = le32u(k, 8), t3 = le32u(k, 12);
+        final long[] r = {
+            t0 & 0x3ffffff,
+            ((t0 >>> 26) | (t1 << 6)) & 0x3ffff03,
+            ((t1 >>> 20) | (t2 << 12)) & 0x3ffc0ff,
+            ((t2 >>> 14) | (t3 << 18)) & 0x3f03fff,
+            (t3 >>> 8) & 0x00fffff,
+        };
+
+        final long[] h = new long[5];
+        int offset = moffset;
+        int remaining = mlen;
+
+        final int groups = remaining / 64;
+        if (groups >= 2) {
+            // powers[i] = r^(4 - i), so that lane i is multiplied by the right power at the end
+            final long[][] powers = new long[4][];
+            powers[3] = r;
+            powers[2] = mul(r, r);
+            powers[1] = mul(powers[2], r);
+            powers[0] = mul(powers[2], powers[2]);
+
+            final long[][] lanes = accumulate(m, offset, groups, powers);
+            offset += 64 * groups;
+            remaining -= 64 * groups;
+
+            // h = sum of lane i * r^(4 - i)
+            for (int i = 0; i < 4; i++) {
+                final long[] product = mul(lanes[i], powers[i]);
+                for (int j = 0; j < 5; j++) {
+                    h[j] += product[j];
+                }
+            }
+            carry(h);
+        }
+
+        // Remaining blocks
+        final long s1 = r[1] * 5, s2 = r[2] * 5, s3 = r[3] * 5, s4 = r[4] * 5;
+        long h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3], h4 = h[4];
+        while (remaining > 0) {
+            long b0, b1, b2, b3, hibit;
+            if (remaining >= 16) {
+                b0 = le32u(m, offset);
+                b1 = le32u(m, offset + 4);
+                b2 = le32u(m, offset + 8);
+                b3 = le32u(m, offset + 12);
+                hibit = 1L << 24;
+                offset += 16;
+                remaining -= 16;
+            } else {
+                // The final partial block is padded with a single one byte followed by zeros
+                final byte[] block = new byte[16];
+                System.arraycopy(m, offset, block, 0, remaining);
+                block[remaining] = 1;
+                b0 = le32u(block, 0);
+                b1 = le32u(block, 4);
+                b2 = le32u(block, 8);
+                b3 = le32u(block, 12);
+                hibit = 0;
+                remaining = 0;
+            }
+
+            h0 += b0 & MASK26;
+            h1 += ((b0 >>> 26) | (b1 << 6)) & MASK26;
+            h2 += ((b1 >>> 20) | (b2 << 12)) & MASK26;
+            h3 += ((b2 >>> 14) | (b3 << 18)) & MASK26;
+            h4 += (b3 >>> 8) | hibit;
+
+            long d0 = h0 * r[0] + h1 * s4 + h2 * s3 + h3 * s2 + h4 * s1;
+            long d1 = h0 * r[1] + h1 * r[0] + h2 * s4 + h3 * s3 + h4 * s2;
+            long d2 = h0 * r[2] + h1 * r[1] + h2 * r[0] + h3 * s4 + h4 * s3;
+            long d3 = h0 * r[3] + h1 * r[2] + h2 * r[1] + h3 * r[0] + h4 * s4;
+            long d4 = h0 * r[4] + h1 * r[3] + h2 * r[2] + h3 * r[1] + h4 * r[0];
+
+            long c;
+            c = d0 >>> 26; h0 = d0 & MASK26;
+            d1 += c; c = d1 >>> 26; h1 = d1 & MASK26;
+            d2 += c; c = d2 >>> 26; h2 = d2 & MASK26;
+            d3 += c; c = d3 >>> 26; h3 = d3 & MASK26;
+            d4 += c; c = d4 >>> 26; h4 = d4 & MASK26;
+            h0 += c * 5; c = h0 >>> 26; h0 &= MASK26;
+            h1 += c;
+        }
+
+        finish(out, outoffset, h0, h1, h2, h3, h4, k);
+    }
+
+    /**
+     * Process groups of four blocks with one accumulator per lane and return the
+     * accumulators, lane after lane.
+     */
+    private static long[][] accumulate(byte[] m, int offset, int groups, long[][] powers) {
+        // Multiplier r^4, broadcast to all lanes
+        final long[] r4 = powers[0];
+        final LongVector r0 = LongVector.broadcast(LONGS, r4[0]);
+        final LongVector r1 = LongVector.broadcast(LONGS, r4[1]);
+        final LongVector r2 = LongVector.broadcast(LONGS, r4[2]);
+        final LongVector r3 = LongVector.broadcast(LONGS, r4[3]);
+        final LongVector r4v = LongVector.broadcast(LONGS, r4[4]);
+        final LongVector s1 = r1.mul(5), s2 = r2.mul(5), s3 = r3.mul(5), s4 = r4v.mul(5);
+
+        LongVector h0 = LongVector.zero(LONGS), h1 = h0, h2 = h0, h3 = h0, h4 = h0;
+        final long[] l0 = new long[4], l1 = new long[4], l2 = new long[4], l3 = new long[4], l4 = new long[4];
+
+        for (int g = 0; g < groups; g++, offset += 64) {
+            // h *= r^4
+            if (g > 0) {
+                final LongVector d0 = h0.mul(r0).add(h1.mul(s4)).add(h2.mul(s3)).add(h3.mul(s2)).add(h4.mul(s1));
+                LongVector d1 = h0.mul(r1).add(h1.mul(r0)).add(h2.mul(s4)).add(h3.mul(s3)).add(h4.mul(s2));
+                LongVector d2 = h0.mul(r2).add(h1.mul(r1)).add(h2.mul(r0)).add(h3.mul(s4)).add(h4.mul(s3));
+                LongVector d3 = h0.mul(r3).add(h1.mul(r2)).add(h2.mul(r1)).add(h3.mul(r0)).add(h4.mul(s4));
+                LongVector d4 = h0.mul(r4v).add(h1.mul(r3)).add(h2.mul(r2)).add(h3.mul(r1)).add(h4.mul(r0));
+
+                LongVector c = d0.lanewise(VectorOperators.LSHR, 26); h0 = d0.and(MASK26);
+                d1 = d1.add(c); c = d1.lanewise(VectorOperators.LSHR, 26); h1 = d1.and(MASK26);
+                d2 = d2.add(c); c = d2.lanewise(VectorOperators.LSHR, 26); h2 = d2.and(MASK26);
+                d3 = d3.add(c); c = d3.lanewise(VectorOperators.LSHR, 26); h3 = d3.and(MASK26);
+                d4 = d4.add(c); c = d4.lanewise(VectorOperators.LSHR, 26); h4 = d4.and(MASK26);
+                h0 = h0.add(c.mul(5)); c = h0.lanewise(VectorOperators.LSHR, 26); h0 = h0.and(MASK26);
+                h1 = h1.add(c);
+            }
+
+            // h += m, block i of the group goes to lane i
+            for (int i = 0; i < 4; i++) {
+                final int block = offset + 16 * i;
+                final long b0 = le32u(m, block), b1 = le32u(m, block + 4);
+                final long b2 = le32u(m, block + 8), b3 = le32u(m, block + 12);
+                l0[i] = b0 & MASK26;
+                l1[i] = ((b0 >>> 26) | (b1 << 6)) & MASK26;
+                l2[i] = ((b1 >>> 20) | (b2 << 12)) & MASK26;
+                l3[i] = ((b2 >>> 14) | (b3 << 18)) & MASK26;
+                l4[i] = (b3 >>> 8) | (1L << 24);
+            }
+            h0 = h0.add(LongVector.fromArray(LONGS, l0, 0));
+            h1 = h1.add(LongVector.fromArray(LONGS, l1, 0));
+            h2 = h2.add(LongVector.fromArray(LONGS, l2, 0));
+            h3 = h3.add(LongVector.fromArray(LONGS, l3, 0));
+            h4 = h4.add(LongVector.fromArray(LONGS, l4, 0));
+        }
+
+        h0.intoArray(l0, 0);
+        h1.intoArray(l1, 0);
+        h2.intoArray(l2, 0);
+        h3.intoArray(l3, 0);
+        h4.intoArray(l4, 0);
+        final long[][] lanes = new long[4][];
+        for (int i = 0; i < 4; i++) {
+            lanes[i] = new long[] { l0[i], l1[i], l2[i], l3[i], l4[i] };
+        }
+        return lanes;
+    }
+
+    /**
+     * Multiply two partially reduced elements.
+     */
+    private static long[] mul(long[] a, long[] b) {
+        final long s1 = b[1] * 5, s2 = b[2] * 5, s3 = b[3] * 5, s4 = b[4] * 5;
+        final long[] d = {
+            a[0] * b[0] + a[1] * s4 + a[2] * s3 + a[3] * s2 + a[4] * s1,
+            a[0] * b[1] + a[1] * b[0] + a[2] * s4 + a[3] * s3 + a[4] * s2,
+            a[0] * b[2] + a[1] * b[1] + a[2] * b[0] + a[3] * s4 + a[4] * s3,
+            a[0] * b[3] + a[1] * b[2] + a[2] * b[1] + a[3] * b[0] + a[4] * s4,
+            a[0] * b[4] + a[1] * b[3] + a[2] * b[2] + a[3] * b[1] + a[4] * b[0],
+        };
+        carry(d);
+        return d;
+    }
+
+    /**
+     * Partially reduce the limbs of h.
+     */
+    private static void carry(long[] h) {
+        long c;
+        c = h[0] >>> 26; h[0] &= MASK26;
+        h[1] += c; c = h[1] >>> 26; h[1] &= MASK26;
+        h[2] += c; c = h[2] >>> 26; h[2] &= MASK26;
+        h[3] += c; c = h[3] >>> 26; h[3] &= MASK26;
+        h[4] += c; c = h[4] >>> 26; h[4] &= MASK26;
+        h[0] += c * 5; c = h[0] >>> 26; h[0] &= MASK26;
+        h[1] += c;
+    }
+
+    /**
+     * Fully reduce h, add the pad and store the authenticator.
+     */
+    private static void finish(byte[] out, int outoffset, long h0, long h1, long h2, long h3, long h4, byte[] k) {
+        long c;
+        c = h1 >>> 26; h1 &= MASK26;
+        h2 += c; c = h2 >>> 26; h2 &= MASK26;
+        h3 += c; c = h3 >>> 26; h3 &= MASK26;
+        h4 += c; c = h4 >>> 26; h4 &= MASK26;
+        h0 += c * 5; c = h0 >>> 26; h0 &= MASK26;
+        h1 += c;
+
+        // compute h + -p
+        long g0 = h0 + 5; c = g0 >>> 26; g0 &= MASK26;
+        long g1 = h1 + c; c = g1 >>> 26; g1 &= MASK26;
+        long g2 = h2 + c; c = g2 >>> 26; g2 &= MASK26;
+        long g3 = h3 + c; c = g3 >>> 26; g3 &= MASK26;
+        long g4 = h4 + c - (1L << 26);
+
+        // select h if h < p, or h + -p if h >= p
+        final long mask = (g4 >>> 63) - 1;
+        h0 = (h0 & ~mask) | (g0 & mask);
+        h1 = (h1 & ~mask) | (g1 & mask);
+        h2 = (h2 & ~mask) | (g2 & mask);
+        h3 = (h3 & ~mask) | (g3 & mask);
+        h4 = (h4 & ~mask) | (g4 & mask);
+
+        // h = h % (2^128)
+        h0 = (h0 | (h1 << 26)) & 0xffffffffL;
+        h1 = ((h1 >>> 6) | (h2 << 20)) & 0xffffffffL;
+        h2 = ((h2 >>> 12) | (h3 << 14)) & 0xffffffffL;
+        h3 = ((h3 >>> 18) | (h4 << 8)) & 0xffffffffL;
+
+        // mac = (h + pad) % (2^128)
+        long f;
+        f = h0 + le32u(k, 16); h0 = f & 0xffffffffL;
+        f = h1 + le32u(k, 20) + (f >>> 32); h1 = f & 0xffffffffL;
+        f = h2 + le32u(k, 24) + (f >>> 32); h2 = f & 0xffffffffL;
+        f = h3 + le32u(k, 28) + (f >>> 32); h3 = f & 0xffffffffL;
+
+        LE_INT.set(out, outoffset, (int) h0);
+        LE_INT.set(out, outoffset + 4, (int) h1);
+        LE_INT.set(out, outoffset + 8, (int) h2);
+        LE_INT.set(out, outoffset + 12, (int) h3);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.curve25519;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deriving a public key from a secret key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Curve25519Benchmark {
+
+    private static final int BATCH_SIZE = 16;
+
+    private final byte[] basePoint = new byte[32];
+    private final byte[] secretKey = new byte[32];
+    private final byte[] publicKey = new byte[32];
+    private final byte[][] secretKeys = new byte[BATCH_SIZE][32];
+    private final byte[][] publicKeys = new byte[BATCH_SIZE][32];
+
+    @Setup
+    public void setUp() {
+        final SecureRandom random = new SecureRandom();
+        this.basePoint[0] = 9;
+        random.nextBytes(this.secretKey);
+        for (byte[] secretKey : this.secretKeys) {
+            random.nextBytes(secretKey);
+        }
+    }
+
+    @Benchmark
+    public byte[] ladder() {
+        curve25519.crypto_scalarmult(this.publicKey, this.secretKey, this.basePoint);
+        return this.publicKey;
+    }
+
+    @Benchmark
+    public byte[] fixedBase() {
+        curve25519.crypto_scalarmult_base(this.publicKey, this.secretKey);
+        return this.publicKey;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public byte[][] fixedBaseBatch() {
+        curve25519.crypto_scalarmult_base_batch(this.publicKeys, this.secretKeys);
+        return this.publicKeys;
+    }
+}
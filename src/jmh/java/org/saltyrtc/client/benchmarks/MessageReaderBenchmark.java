@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.RandomHelper;
+import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.messages.c2c.Application;
+import org.saltyrtc.client.messages.c2c.ResponderAuth;
+import org.saltyrtc.client.messages.s2c.InitiatorServerAuth;
+import org.saltyrtc.client.messages.s2c.ServerHello;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of received signaling messages, compared to decoding them into a map with
+ * Jackson first (the way the message reader used to work).
+ *
+ * Run with `-prof gc` to compare the allocation rate as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageReaderBenchmark {
+
+    @Param({"server-hello", "server-auth", "auth", "application"})
+    public String type;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws ValidationError {
+        final Message message;
+        switch (this.type) {
+            case "server-hello":
+                message = new ServerHello(RandomHelper.pseudoRandomBytes(32));
+                break;
+            case "server-auth":
+                message = new InitiatorServerAuth(RandomHelper.pseudoRandomBytes(16),
+                    RandomHelper.pseudoRandomBytes(80), Arrays.asList(2, 3, 4));
+                break;
+            case "auth":
+                final Map<Object, Object> taskData = new HashMap<>();
+                taskData.put("exclude", Arrays.asList(1, 2));
+                taskData.put("max_packet_size", 65536);
+                final Map<String, Map<Object, Object>> data = new HashMap<>();
+                data.put("v1.webrtc.tasks.saltyrtc.org", taskData);
+                message = new ResponderAuth(RandomHelper.pseudoRandomBytes(16),
+                    Arrays.asList("v1.webrtc.tasks.saltyrtc.org"), data);
+                break;
+            case "application":
+                final Map<String, Object> content = new HashMap<>();
+                content.put("text", "Hello, this is an application message");
+                content.put("number", 42);
+                content.put("list", Arrays.asList("a", "b", "c"));
+                message = new Application((Object) content);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + this.type);
+        }
+        this.bytes = message.toBytes();
+    }
+
+    @Benchmark
+    public Message streaming() throws SerializationError, ValidationError {
+        return MessageReader.read(this.bytes);
+    }
+
+    @Benchmark
+    public Message jacksonMap() throws IOException, ValidationError {
+        final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+        final Map<String, Object> map = objectMapper.readValue(this.bytes, new TypeReference<Map<String, Object>>() {});
+        switch ((String) map.get("type")) {
+            case "server-hello":
+                return new ServerHello(map);
+            case "server-auth":
+                return new InitiatorServerAuth(map);
+            case "auth":
+                return new ResponderAuth(map);
+            default:
+                return new Application(map);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.RandomHelper;
+import org.saltyrtc.client.messages.c2c.Close;
+import org.saltyrtc.client.messages.c2c.Key;
+import org.saltyrtc.client.messages.c2c.ResponderAuth;
+import org.saltyrtc.client.messages.s2c.ClientAuth;
+import org.saltyrtc.client.signaling.CloseCode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the handshake messages, as done for every connection.
+ *
+ * The auth message is encoded with the task data encoded once (as the signaling does)
+ * and from the task data map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageWriterBenchmark {
+
+    @Param({"client-auth", "key", "close", "auth", "auth-map"})
+    public String type;
+
+    private byte[] cookie;
+    private byte[] key;
+    private List<String> tasks;
+    private Map<String, Map<Object, Object>> tasksData;
+    private EncodedValue encodedTasksData;
+
+    @Setup
+    public void setUp() throws SerializationError {
+        this.cookie = RandomHelper.pseudoRandomBytes(16);
+        this.key = RandomHelper.pseudoRandomBytes(32);
+        final Map<Object, Object> taskData = new HashMap<>();
+        taskData.put("exclude", Arrays.asList(1, 2));
+        taskData.put("max_packet_size", 65536);
+        this.tasks = Collections.singletonList("v1.webrtc.tasks.saltyrtc.org");
+        this.tasksData = new HashMap<>();
+        this.tasksData.put(this.tasks.get(0), taskData);
+        this.encodedTasksData = EncodedValue.encode(this.tasksData);
+    }
+
+    @Benchmark
+    public byte[] write() throws ValidationError {
+        switch (this.type) {
+            case "client-auth":
+                return new ClientAuth(this.cookie, Collections.singletonList("v0.saltyrtc.org"), 0).toBytes();
+            case "key":
+                return new Key(this.key).toBytes();
+            case "close":
+                return new Close(CloseCode.GOING_AWAY).toBytes();
+            case "auth":
+                return new ResponderAuth(this.cookie, this.tasks, this.tasksData, this.encodedTasksData).toBytes();
+            case "auth-map":
+                return new ResponderAuth(this.cookie, this.tasks, this.tasksData).toBytes();
+            default:
+                throw new IllegalArgumentException("Unknown type: " + this.type);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.RandomHelper;
+import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.messages.c2c.Application;
+import org.saltyrtc.client.messages.c2c.ResponderAuth;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode and decode the first messages and to encrypt the first box in a fresh JVM.
+ *
+ * Run it with `gradle jmh` and with `gradle jmhLite`, which leaves Jackson off the classpath,
+ * and add `-prof cl` to compare the number of loaded classes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    @Benchmark
+    public List<Message> firstMessages() throws SerializationError, ValidationError {
+        final Map<Object, Object> taskData = new HashMap<>();
+        taskData.put("exclude", Arrays.asList(1, 2));
+        taskData.put("max_packet_size", 65536);
+        final Map<String, Map<Object, Object>> data = new HashMap<>();
+        data.put("v1.webrtc.tasks.saltyrtc.org", taskData);
+        final Message auth = new ResponderAuth(RandomHelper.pseudoRandomBytes(16),
+            Arrays.asList("v1.webrtc.tasks.saltyrtc.org"), data);
+
+        final Map<String, Object> content = new HashMap<>();
+        content.put("text", "Hello, this is an application message");
+        content.put("number", 42);
+        final Message application = new Application((Object) content);
+
+        final Message decodedAuth = MessageReader.read(auth.toBytes());
+        final Application decodedApplication = (Application) MessageReader.read(application.toBytes());
+        decodedApplication.getData();
+        return Arrays.asList(decodedAuth, decodedApplication);
+    }
+
+    @Benchmark
+    public Box firstBox() throws CryptoFailedException, InvalidKeyException {
+        final CryptoProvider provider = new JnaclCryptoProvider();
+        final KeyStore ours = new KeyStore(provider);
+        final KeyStore theirs = new KeyStore(provider);
+        return ours.getSharedKeyStore(theirs.getPublicKey())
+            .encrypt(RandomHelper.pseudoRandomBytes(64), RandomHelper.pseudoRandomBytes(CryptoProvider.NONCEBYTES));
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProviders;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.xsalsa20;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the symmetric part of a NaCl box for different message sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XSalsa20Poly1305Benchmark {
+
+    @Param({"64", "1024", "65536"})
+    public int size;
+
+    private byte[] key;
+    private byte[] nonce;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private byte[] output;
+    private byte[] inplace;
+    private NaCl nacl;
+    private CryptoInstance instance;
+
+    @Setup
+    public void setUp() throws InvalidKeyException {
+        final SecureRandom random = new SecureRandom();
+        this.key = new byte[NaCl.SYMMKEYBYTES];
+        this.nonce = new byte[NaCl.NONCEBYTES];
+        this.plaintext = new byte[this.size];
+        random.nextBytes(this.key);
+        random.nextBytes(this.nonce);
+        random.nextBytes(this.plaintext);
+        this.ciphertext = NaCl.symmetricEncryptData(this.plaintext, this.key, this.nonce);
+        this.output = new byte[this.size];
+        this.inplace = new byte[this.size + NaCl.BOXOVERHEAD];
+        this.nacl = new NaCl(this.key);
+        this.instance = CryptoProviders.getDefault().getSymmetricInstance(this.key);
+    }
+
+    @Benchmark
+    public byte[] streamXor() {
+        xsalsa20.crypto_stream_xor(this.output, this.plaintext, this.size, this.nonce, this.key);
+        return this.output;
+    }
+
+    @Benchmark
+    public byte[] seal() {
+        return NaCl.symmetricEncryptData(this.plaintext, this.key, this.nonce);
+    }
+
+    @Benchmark
+    public byte[] open() {
+        return NaCl.symmetricDecryptData(this.ciphertext, this.key, this.nonce);
+    }
+
+    @Benchmark
+    public byte[] boxSeal() {
+        return this.nacl.encrypt(this.plaintext, this.nonce);
+    }
+
+    @Benchmark
+    public byte[] boxOpen() {
+        return this.nacl.decrypt(this.ciphertext, this.nonce);
+    }
+
+    /**
+     * Seal in place, run with `-prof gc` to check that no memory is allocated per message.
+     */
+    @Benchmark
+    public byte[] boxSealInPlace() {
+        this.nacl.encrypt(this.inplace, 0, this.inplace, NaCl.BOXOVERHEAD, this.size, this.nonce, 0);
+        return this.inplace;
+    }
+
+    @Benchmark
+    public boolean boxOpenInPlace() {
+        System.arraycopy(this.ciphertext, 0, this.inplace, 0, this.ciphertext.length);
+        return this.nacl.decrypt(this.inplace, 0, this.inplace, 0, this.ciphertext.length, this.nonce, 0);
+    }
+
+    @Benchmark
+    public byte[] sealInPlace() {
+        NaCl.symmetricEncryptDataInplace(this.inplace, this.key, this.nonce);
+        return this.inplace;
+    }
+
+    @Benchmark
+    public boolean openInPlace() {
+        System.arraycopy(this.ciphertext, 0, this.inplace, 0, this.ciphertext.length);
+        return NaCl.symmetricDecryptDataInplace(this.inplace, this.key, this.nonce);
+    }
+
+    /**
+     * Seal with the default crypto provider. Add `--add-modules jdk.incubator.vector`
+     * to the JVM arguments to measure the Vector API provider.
+     */
+    @Benchmark
+    public byte[] providerSeal() throws CryptoFailedException {
+        return this.instance.encrypt(this.plaintext, this.nonce);
+    }
+
+    @Benchmark
+    public byte[] providerOpen() throws CryptoFailedException {
+        return this.instance.decrypt(this.ciphertext, this.nonce);
+    }
+
+}
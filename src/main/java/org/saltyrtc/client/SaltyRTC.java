@@ -8,7 +8,11 @@
 
 package org.saltyrtc.client;
 
+import org.saltyrtc.client.annotations.NonNull;
 import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.codecs.ApplicationCodec;
+import org.saltyrtc.client.codecs.ApplicationCodecRegistry;
+import org.saltyrtc.client.crypto.CryptoProvider;
 import org.saltyrtc.client.events.ApplicationDataEvent;
 import org.saltyrtc.client.events.CloseEvent;
 import org.saltyrtc.client.events.EventRegistry;
@@ -18,6 +22,7 @@ import org.saltyrtc.client.events.SignalingStateChangedEvent;
 import org.saltyrtc.client.exceptions.ConnectionException;
 import org.saltyrtc.client.exceptions.InvalidKeyException;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
 import org.saltyrtc.client.messages.c2c.Application;
 import org.saltyrtc.client.signaling.InitiatorSignaling;
 import org.saltyrtc.client.signaling.ResponderSignaling;
@@ -27,6 +32,8 @@ import org.saltyrtc.client.signaling.state.SignalingState;
 import org.saltyrtc.client.tasks.Task;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
+
 import javax.net.ssl.SSLContext;
 
 /**
@@ -43,46 +50,62 @@ public class SaltyRTC {
     // Reference to signaling class
     private Signaling signaling;
 
+    // Codecs for application data
+    @NonNull private final ApplicationCodecRegistry applicationCodecs;
+
     // Event registry
     public final SaltyRTC.Events events = new SaltyRTC.Events();
 
     // Internal constructor used by SaltyRTCBuilder.
     // Initialize as initiator without trusted key.
     SaltyRTC(KeyStore permanentKey, String host, int port, SSLContext sslContext,
-             @Nullable byte[] serverKey, Task[] tasks, int pingInterval)
+             @Nullable byte[] serverKey, Task[] tasks, int pingInterval, int messageHistorySize,
+             ApplicationCodecRegistry applicationCodecs,
+             CryptoProvider cryptoProvider, KeyStorePool keyStorePool)
              throws InvalidKeyException {
+        this.applicationCodecs = applicationCodecs;
         this.signaling = new InitiatorSignaling(
             this, host, port, permanentKey, sslContext,
-            null, serverKey, tasks, pingInterval);
+            null, serverKey, tasks, pingInterval, messageHistorySize,
+            cryptoProvider, keyStorePool);
     }
 
     // Internal constructor used by SaltyRTCBuilder.
     // Initialize as responder without trusted key.
     SaltyRTC(KeyStore permanentKey, String host, int port, SSLContext sslContext,
              byte[] initiatorPublicKey, byte[] authToken,
-             @Nullable byte[] serverKey, Task[] tasks, int pingInterval)
+             @Nullable byte[] serverKey, Task[] tasks, int pingInterval, int messageHistorySize,
+             ApplicationCodecRegistry applicationCodecs,
+             CryptoProvider cryptoProvider, KeyStorePool keyStorePool)
              throws InvalidKeyException {
+        this.applicationCodecs = applicationCodecs;
         this.signaling = new ResponderSignaling(
             this, host, port, permanentKey, sslContext,
-            initiatorPublicKey, authToken, null, serverKey, tasks, pingInterval);
+            initiatorPublicKey, authToken, null, serverKey, tasks, pingInterval,
+            messageHistorySize, cryptoProvider, keyStorePool);
     }
 
     // Internal constructor used by SaltyRTCBuilder.
     // Initialize as initiator or responder with trusted key.
     SaltyRTC(KeyStore permanentKey, String host, int port, SSLContext sslContext,
              byte[] peerTrustedKey, @Nullable byte[] serverKey, Task[] tasks, int pingInterval,
+             int messageHistorySize, ApplicationCodecRegistry applicationCodecs,
+             CryptoProvider cryptoProvider, KeyStorePool keyStorePool,
              SignalingRole role)
              throws InvalidKeyException {
+        this.applicationCodecs = applicationCodecs;
         switch (role) {
             case Initiator:
                 this.signaling = new InitiatorSignaling(
                     this, host, port, permanentKey, sslContext,
-                    peerTrustedKey, serverKey, tasks, pingInterval);
+                    peerTrustedKey, serverKey, tasks, pingInterval, messageHistorySize,
+                    cryptoProvider, keyStorePool);
                 break;
             case Responder:
                 this.signaling = new ResponderSignaling(
                     this, host, port, permanentKey, sslContext,
-                    null, null, peerTrustedKey, serverKey, tasks, pingInterval);
+                    null, null, peerTrustedKey, serverKey, tasks, pingInterval,
+                    messageHistorySize, cryptoProvider, keyStorePool);
                 break;
             default:
                 throw new IllegalArgumentException("Invalid role: " + role);
@@ -128,10 +151,44 @@ public class SaltyRTC {
         this.signaling.connect();
     }
 
+    /**
+     * Return the codecs used for application data.
+     */
+    @NonNull
+    public ApplicationCodecRegistry getApplicationCodecs() {
+        return this.applicationCodecs;
+    }
+
     /**
      * Send an application message to the peer.
+     *
+     * If a codec has been registered for the class of the data, it is used to encode the data.
      */
     public void sendApplicationMessage(Object data) throws ConnectionException {
+        final ApplicationCodec<Object> codec = this.applicationCodecs.forValue(data);
+        if (codec != null) {
+            this.signaling.sendApplication(new Application(data, codec));
+        } else {
+            this.signaling.sendApplication(new Application(data));
+        }
+    }
+
+    /**
+     * Send binary data to the peer in an application message.
+     *
+     * The data is packed as MessagePack binary, without going through Jackson.
+     */
+    public void sendApplicationMessage(byte[] data) throws ConnectionException {
+        this.signaling.sendApplication(new Application(data));
+    }
+
+    /**
+     * Send the remaining bytes of the buffer to the peer in an application message.
+     *
+     * The data is packed as MessagePack binary, without going through Jackson.
+     * Position and limit of the buffer are not modified.
+     */
+    public void sendApplicationMessage(ByteBuffer data) throws ConnectionException {
         this.signaling.sendApplication(new Application(data));
     }
 
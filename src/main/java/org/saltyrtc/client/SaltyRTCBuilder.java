@@ -8,10 +8,24 @@
 
 package org.saltyrtc.client;
 
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.codecs.ApplicationCodec;
+import org.saltyrtc.client.codecs.ApplicationCodecRegistry;
+import org.saltyrtc.client.codecs.JacksonApplicationCodec;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoProviders;
+import org.saltyrtc.client.crypto.CryptoSelfTest;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.events.ApplicationDataEvent;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
 import org.saltyrtc.client.exceptions.InvalidBuilderStateException;
 import org.saltyrtc.client.exceptions.InvalidKeyException;
 import org.saltyrtc.client.helpers.HexHelper;
+import org.saltyrtc.client.helpers.MessageHistory;
+import org.saltyrtc.client.helpers.MessagePackHelper;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
 import org.saltyrtc.client.signaling.SignalingRole;
 import org.saltyrtc.client.tasks.Task;
 
@@ -38,6 +52,12 @@ public class SaltyRTCBuilder {
     private byte[] serverKey;
     private Task[] tasks;
     private int pingInterval = 0;
+    private int messageHistorySize = MessageHistory.DEFAULT_SIZE;
+    private CryptoProvider cryptoProvider;
+    private KeyStorePool keyStorePool;
+    private CryptoSelfTest.Policy cryptoSelfTestPolicy;
+    private CryptoSelfTest.Listener cryptoSelfTestListener;
+    private final ApplicationCodecRegistry applicationCodecs = new ApplicationCodecRegistry();
 
     /**
      * Validate the specified host, throw an IllegalArgumentException if it's invalid.
@@ -185,6 +205,91 @@ public class SaltyRTCBuilder {
         return this;
     }
 
+    /**
+     * Set the number of sent messages that are remembered, so that the message can be
+     * identified when the server reports that it could not be delivered.
+     *
+     * @param size A positive integer. Set it to 0 to remember no messages.
+     */
+    public SaltyRTCBuilder withMessageHistorySize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Message history size may not be negative");
+        }
+        this.messageHistorySize = size;
+        return this;
+    }
+
+    /**
+     * Set the crypto provider used for the session keys and the auth token.
+     *
+     * The permanent key uses the provider of its key store. If no provider is set,
+     * the default provider returned by {@link CryptoProviders#getDefault()} is used.
+     */
+    public SaltyRTCBuilder withCryptoProvider(@NonNull CryptoProvider cryptoProvider) {
+        this.cryptoProvider = cryptoProvider;
+        return this;
+    }
+
+    /**
+     * Set a pool of pre-generated key pairs used for the session keys.
+     *
+     * The pool may be shared by multiple SaltyRTC instances. Its crypto provider takes
+     * precedence over the one set by {@link #withCryptoProvider(CryptoProvider)} for the
+     * session keys. By default, session keys are generated when they are needed.
+     */
+    public SaltyRTCBuilder withKeyStorePool(@NonNull KeyStorePool keyStorePool) {
+        this.keyStorePool = keyStorePool;
+        return this;
+    }
+
+    /**
+     * Set when the known answer tests of the crypto providers are run, and an optional
+     * listener receiving their results.
+     *
+     * The tests run once per provider. With the blocking policy, {@link #asInitiator()} and
+     * {@link #asResponder()} run them and throw an IllegalStateException if they fail. With the
+     * background policy, they do not delay the connection, but connecting with a provider whose
+     * test has already failed throws an IllegalStateException.
+     *
+     * By default, the bundled {@link JnaclCryptoProvider} is tested in the background and all
+     * other providers are tested with the blocking policy.
+     */
+    public SaltyRTCBuilder withCryptoSelfTest(@NonNull CryptoSelfTest.Policy policy,
+                                              @Nullable CryptoSelfTest.Listener listener) {
+        this.cryptoSelfTestPolicy = policy;
+        this.cryptoSelfTestListener = listener;
+        return this;
+    }
+
+    /**
+     * Register a codec for application data of a specific class.
+     *
+     * Sent values of the class are encoded with the codec. Received data is decoded with
+     * the first registered codec that accepts it, so {@link ApplicationDataEvent#getData()}
+     * returns an instance of its class.
+     *
+     * @throws IllegalArgumentException if a codec has already been registered for the class.
+     */
+    public SaltyRTCBuilder withApplicationCodec(@NonNull ApplicationCodec<?> codec) {
+        this.applicationCodecs.register(codec);
+        return this;
+    }
+
+    /**
+     * Register a Jackson based codec for application data of a specific class,
+     * see {@link #withApplicationCodec(ApplicationCodec)}.
+     *
+     * @throws IllegalStateException if Jackson is not available,
+     *     see {@link MessagePackHelper#isJacksonAvailable()}.
+     */
+    public <T> SaltyRTCBuilder withApplicationCodec(@NonNull Class<T> type) {
+        if (!MessagePackHelper.isJacksonAvailable()) {
+            throw new IllegalStateException("Cannot create a codec for " + type.getName()
+                + " without jackson-dataformat-msgpack on the classpath");
+        }
+        return this.withApplicationCodec(new JacksonApplicationCodec<>(type));
+    }
+
     /**
      * Set initiator connection info transferred via a secure data channel.
      *
@@ -223,6 +328,76 @@ public class SaltyRTCBuilder {
         return this;
     }
 
+    /**
+     * Run the self test of all crypto providers used by the instance.
+     */
+    private void verifyCryptoProviders(@NonNull KeyStorePool keyStorePool) {
+        final CryptoProvider[] providers = {
+            this.getCryptoProvider(),
+            this.keyStore.getCryptoProvider(),
+            keyStorePool.getCryptoProvider(),
+        };
+        for (int i = 0; i < providers.length; i++) {
+            boolean verified = false;
+            for (int j = 0; j < i; j++) {
+                verified |= providers[j] == providers[i];
+            }
+            if (verified) {
+                continue;
+            }
+            try {
+                CryptoSelfTest.verify(
+                    providers[i], this.getCryptoSelfTestPolicy(providers[i]), this.cryptoSelfTestListener);
+            } catch (CryptoFailedException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Return the configured self test policy, or the default policy for the provider.
+     */
+    @NonNull
+    private CryptoSelfTest.Policy getCryptoSelfTestPolicy(@NonNull CryptoProvider provider) {
+        if (this.cryptoSelfTestPolicy != null) {
+            return this.cryptoSelfTestPolicy;
+        }
+        if (provider.getClass() == JnaclCryptoProvider.class) {
+            return CryptoSelfTest.Policy.BACKGROUND;
+        }
+        return CryptoSelfTest.Policy.BLOCKING;
+    }
+
+    /**
+     * Return the configured crypto provider, or the default provider.
+     */
+    @NonNull
+    private CryptoProvider getCryptoProvider() {
+        if (this.cryptoProvider != null) {
+            return this.cryptoProvider;
+        }
+        return CryptoProviders.getDefault();
+    }
+
+    /**
+     * Return a copy of the registered application codecs, so that the builder can be reused.
+     */
+    @NonNull
+    private ApplicationCodecRegistry getApplicationCodecs() {
+        return new ApplicationCodecRegistry(this.applicationCodecs);
+    }
+
+    /**
+     * Return the configured key store pool, or a disabled pool.
+     */
+    @NonNull
+    private KeyStorePool getKeyStorePool() {
+        if (this.keyStorePool != null) {
+            return this.keyStorePool;
+        }
+        return KeyStorePool.disabled(this.getCryptoProvider());
+    }
+
     /**
      * Return a SaltyRTC instance configured as initiator.
      *
@@ -233,15 +408,20 @@ public class SaltyRTCBuilder {
         this.requireKeyStore();
         this.requireConnectionInfo();
         this.requireTasks();
+        final KeyStorePool keyStorePool = this.getKeyStorePool();
+        this.verifyCryptoProviders(keyStorePool);
         if (this.hasTrustedPeerKey) {
             return new SaltyRTC(
                 this.keyStore, this.host, this.port, this.sslContext,
                 this.peerTrustedKey, this.serverKey,
-                this.tasks, this.pingInterval, SignalingRole.Initiator);
+                this.tasks, this.pingInterval, this.messageHistorySize,
+                this.getApplicationCodecs(), this.getCryptoProvider(), keyStorePool,
+                SignalingRole.Initiator);
         } else {
             return new SaltyRTC(
                 this.keyStore, this.host, this.port, this.sslContext,
-                this.serverKey, this.tasks, this.pingInterval);
+                this.serverKey, this.tasks, this.pingInterval, this.messageHistorySize,
+                this.getApplicationCodecs(), this.getCryptoProvider(), keyStorePool);
         }
     }
 
@@ -256,15 +436,20 @@ public class SaltyRTCBuilder {
         this.requireKeyStore();
         this.requireConnectionInfo();
         this.requireTasks();
+        final KeyStorePool keyStorePool = this.getKeyStorePool();
+        this.verifyCryptoProviders(keyStorePool);
         if (this.hasTrustedPeerKey) {
             return new SaltyRTC(this.keyStore, this.host, this.port, this.sslContext,
                     this.peerTrustedKey, this.serverKey, this.tasks, this.pingInterval,
+                    this.messageHistorySize,
+                    this.getApplicationCodecs(), this.getCryptoProvider(), keyStorePool,
                     SignalingRole.Responder);
         } else {
             this.requireInitiatorInfo();
             return new SaltyRTC(this.keyStore, this.host, this.port, this.sslContext,
                     this.initiatorPublicKey, this.authToken, this.serverKey,
-                    this.tasks, this.pingInterval);
+                    this.tasks, this.pingInterval, this.messageHistorySize,
+                    this.getApplicationCodecs(), this.getCryptoProvider(), keyStorePool);
         }
     }
 }
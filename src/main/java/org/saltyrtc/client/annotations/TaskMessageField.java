@@ -0,0 +1,17 @@
+package org.saltyrtc.client.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Set the key of a field of a {@link TaskMessageType} class.
+ *
+ * By default, the field name is used as key.
+ */
+@Target(ElementType.FIELD)
+public @interface TaskMessageField {
+    /**
+     * The key of the field in the message.
+     */
+    String value();
+}
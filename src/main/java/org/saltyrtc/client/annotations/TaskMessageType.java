@@ -0,0 +1,19 @@
+package org.saltyrtc.client.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a {@link org.saltyrtc.client.messages.c2c.TaskMessage} subclass for code generation.
+ *
+ * The `saltyrtc-client-processor` annotation processor generates a
+ * {@link org.saltyrtc.client.messages.c2c.TaskMessageCodec} named `<Class>Codec` for it.
+ * All non-static, non-transient fields are encoded, see {@link TaskMessageField}.
+ */
+@Target(ElementType.TYPE)
+public @interface TaskMessageType {
+    /**
+     * The message type.
+     */
+    String value();
+}
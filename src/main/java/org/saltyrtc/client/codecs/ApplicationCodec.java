@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.codecs;
+
+import org.msgpack.core.MessagePacker;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+
+import java.io.IOException;
+
+/**
+ * Encode and decode application data of a specific class.
+ *
+ * Codecs are registered with {@link org.saltyrtc.client.SaltyRTCBuilder#withApplicationCodec(ApplicationCodec)}.
+ * Implementations must be thread safe.
+ */
+public interface ApplicationCodec<T> {
+
+    /**
+     * Return the class of the values handled by this codec.
+     *
+     * Sent values are encoded with this codec if their class is exactly this class.
+     */
+    @NonNull
+    Class<T> getType();
+
+    /**
+     * Write the value as a single MessagePack value.
+     */
+    void encode(@NonNull T value, @NonNull MessagePacker packer) throws IOException;
+
+    /**
+     * Decode received data.
+     *
+     * @throws ValidationError if the data is not a valid value of this type.
+     */
+    @NonNull
+    T decode(@NonNull EncodedValue data) throws ValidationError;
+
+}
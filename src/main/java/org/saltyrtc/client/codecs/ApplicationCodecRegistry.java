@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.codecs;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The application codecs of a SaltyRTC instance, by class.
+ *
+ * Sent values are encoded with the codec registered for their class. Received data is
+ * decoded with the first codec, in order of registration, that accepts it. Data that no
+ * codec accepts is decoded into maps and lists, like without codecs.
+ *
+ * Codecs must be registered before the registry is used to send or receive data.
+ */
+public class ApplicationCodecRegistry {
+
+    @NonNull private final Map<Class<?>, ApplicationCodec<?>> codecs;
+
+    public ApplicationCodecRegistry() {
+        this.codecs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Create a copy of the registry.
+     */
+    public ApplicationCodecRegistry(@NonNull ApplicationCodecRegistry registry) {
+        this.codecs = new LinkedHashMap<>(registry.codecs);
+    }
+
+    /**
+     * Register a codec for its class.
+     *
+     * @throws IllegalArgumentException if a codec has already been registered for the class.
+     */
+    public void register(@NonNull ApplicationCodec<?> codec) {
+        if (this.codecs.containsKey(codec.getType())) {
+            throw new IllegalArgumentException(
+                "A codec for " + codec.getType().getName() + " has already been registered");
+        }
+        this.codecs.put(codec.getType(), codec);
+    }
+
+    /**
+     * Return whether no codec has been registered.
+     */
+    public boolean isEmpty() {
+        return this.codecs.isEmpty();
+    }
+
+    /**
+     * Return the codec registered for the class, or null.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> ApplicationCodec<T> get(@NonNull Class<T> type) {
+        return (ApplicationCodec<T>) this.codecs.get(type);
+    }
+
+    /**
+     * Return the codec registered for the class of the value, or null.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public ApplicationCodec<Object> forValue(@Nullable Object value) {
+        if (value == null || this.codecs.isEmpty()) {
+            return null;
+        }
+        return (ApplicationCodec<Object>) this.codecs.get(value.getClass());
+    }
+
+    /**
+     * Decode received data with the first codec that accepts it, or into maps and lists.
+     *
+     * @throws SerializationError if the data cannot be decoded.
+     */
+    @Nullable
+    public Object decode(@NonNull EncodedValue data) throws SerializationError {
+        for (ApplicationCodec<?> codec : this.codecs.values()) {
+            try {
+                return codec.decode(data);
+            } catch (ValidationError e) {
+                // Try the next codec
+            }
+        }
+        return data.decode();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.codecs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.msgpack.core.MessagePacker;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.JacksonHelper;
+
+import java.io.IOException;
+
+/**
+ * Application codec that serializes a class with Jackson.
+ *
+ * The object writer and reader for the class are created once, so the class is only
+ * introspected when the codec is created.
+ *
+ * Jackson is an optional dependency, only use this class if
+ * {@link org.saltyrtc.client.helpers.MessagePackHelper#isJacksonAvailable()}.
+ */
+public class JacksonApplicationCodec<T> implements ApplicationCodec<T> {
+
+    @NonNull private final Class<T> type;
+    @NonNull private final ObjectWriter writer;
+    @NonNull private final ObjectReader reader;
+
+    /**
+     * Create a codec using the shared MessagePack object mapper.
+     */
+    public JacksonApplicationCodec(@NonNull Class<T> type) {
+        this(type, JacksonHelper.getObjectMapper());
+    }
+
+    /**
+     * Create a codec using a custom object mapper. It must use a `MessagePackFactory`.
+     */
+    public JacksonApplicationCodec(@NonNull Class<T> type, @NonNull ObjectMapper objectMapper) {
+        this.type = type;
+        this.writer = objectMapper.writerFor(type);
+        this.reader = objectMapper.readerFor(type);
+    }
+
+    @NonNull
+    @Override
+    public Class<T> getType() {
+        return this.type;
+    }
+
+    @Override
+    public void encode(@NonNull T value, @NonNull MessagePacker packer) throws IOException {
+        packer.writePayload(this.writer.writeValueAsBytes(value));
+    }
+
+    @NonNull
+    @Override
+    public T decode(@NonNull EncodedValue data) throws ValidationError {
+        final T value;
+        try {
+            value = JacksonHelper.readValue(this.reader, data);
+        } catch (SerializationError e) {
+            throw new ValidationError("Data is not a valid " + this.type.getSimpleName() + ": " + e.getMessage());
+        }
+        if (value == null) {
+            throw new ValidationError("Data is not a valid " + this.type.getSimpleName() + ": null");
+        }
+        // Jackson returns embedded binary data as is, regardless of the type
+        if (!this.type.isInstance(value)) {
+            throw new ValidationError("Data is not a valid " + this.type.getSimpleName() + ": "
+                + value.getClass().getSimpleName());
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+
+/**
+ * Encrypt and decrypt data with a fixed key, created by a {@link CryptoProvider}.
+ *
+ * The encrypted data consists of the {@link CryptoProvider#BOXOVERHEAD} bytes of the
+ * authenticator, followed by the ciphertext. Implementations must be thread safe.
+ */
+public interface CryptoInstance {
+
+    /**
+     * Encrypt data.
+     *
+     * @throws CryptoFailedException Encryption failed.
+     */
+    @NonNull
+    byte[] encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException;
+
+    /**
+     * Decrypt data.
+     *
+     * @throws CryptoFailedException Decryption or authentication failed.
+     */
+    @NonNull
+    byte[] decrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException;
+
+    /**
+     * Encrypt `inputLength` bytes of the input into the output, which must have room for
+     * `inputLength + BOXOVERHEAD` bytes.
+     *
+     * Input and output may be the same array if `outputOffset + BOXOVERHEAD == inputOffset`.
+     * The nonce may be located in the same array, as long as it does not overlap the output.
+     *
+     * @throws CryptoFailedException Encryption failed.
+     */
+    void encrypt(@NonNull byte[] output, int outputOffset,
+                 @NonNull byte[] input, int inputOffset, int inputLength,
+                 @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException;
+
+    /**
+     * Decrypt `inputLength` bytes of the input into the output, which must have room for
+     * `inputLength - BOXOVERHEAD` bytes.
+     *
+     * Input and output may be the same array if `outputOffset <= inputOffset + BOXOVERHEAD`.
+     * The nonce may be located in the same array, as long as it does not overlap the output.
+     *
+     * @throws CryptoFailedException Decryption or authentication failed.
+     */
+    void decrypt(@NonNull byte[] output, int outputOffset,
+                 @NonNull byte[] input, int inputOffset, int inputLength,
+                 @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException;
+
+    /**
+     * Return a new instance with the same key. Wiping one of them does not affect the other.
+     *
+     * @throws IllegalStateException The instance has been wiped.
+     */
+    @NonNull
+    CryptoInstance copy();
+
+    /**
+     * Overwrite the key and everything derived from it with zeros.
+     *
+     * Afterwards, encryption and decryption fail. The instance must not be in use by
+     * other threads while it is wiped.
+     */
+    void wipe();
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+
+/**
+ * A crypto backend providing Curve25519 key generation and key agreement as well as
+ * XSalsa20-Poly1305 encryption, compatible with NaCl boxes.
+ *
+ * All providers must produce identical results. They only differ in speed and in
+ * the platforms they are available on. The provider used by default is returned by
+ * {@link CryptoProviders#getDefault()}.
+ *
+ * Implementations must be thread safe.
+ */
+public interface CryptoProvider {
+
+    int PUBLICKEYBYTES = 32;
+    int SECRETKEYBYTES = 32;
+    int SYMMKEYBYTES = 32;
+    int NONCEBYTES = 24;
+    int BOXOVERHEAD = 16;
+
+    /**
+     * Return a short name identifying the provider.
+     */
+    @NonNull
+    String getName();
+
+    /**
+     * Generate a new random key pair.
+     *
+     * @param publicKey Array of {@link #PUBLICKEYBYTES} bytes that will receive the public key.
+     * @param secretKey Array of {@link #SECRETKEYBYTES} bytes that will receive the secret key.
+     */
+    void generateKeyPair(@NonNull byte[] publicKey, @NonNull byte[] secretKey);
+
+    /**
+     * Generate multiple new random key pairs at once.
+     *
+     * Providers may generate them faster than by calling {@link #generateKeyPair(byte[], byte[])}
+     * repeatedly, for example by sharing work between the key pairs.
+     *
+     * @param publicKeys Arrays of {@link #PUBLICKEYBYTES} bytes that will receive the public keys.
+     * @param secretKeys Arrays of {@link #SECRETKEYBYTES} bytes that will receive the secret keys,
+     *                   same count as the public keys.
+     */
+    void generateKeyPairs(@NonNull byte[][] publicKeys, @NonNull byte[][] secretKeys);
+
+    /**
+     * Derive the public key from a secret key.
+     *
+     * @throws InvalidKeyException The secret key is invalid.
+     */
+    @NonNull
+    byte[] derivePublicKey(@NonNull byte[] secretKey) throws InvalidKeyException;
+
+    /**
+     * Compute the shared key between our secret key and the public key of a peer
+     * and return an instance that encrypts and decrypts boxes with it.
+     *
+     * @throws InvalidKeyException One of the keys is invalid.
+     */
+    @NonNull
+    CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey) throws InvalidKeyException;
+
+    /**
+     * Return an instance that encrypts and decrypts secret boxes with a symmetric key.
+     *
+     * @throws InvalidKeyException The key is invalid.
+     */
+    @NonNull
+    CryptoInstance getSymmetricInstance(@NonNull byte[] key) throws InvalidKeyException;
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Selection of the default {@link CryptoProvider}.
+ *
+ * Unless a default has been set explicitly, the first provider registered via
+ * {@link ServiceLoader} that can be instantiated is used. If there is none, the
+ * Vector API provider is used when running on Java 17+ with the
+ * `jdk.incubator.vector` module present. Otherwise, the {@link JnaclCryptoProvider}
+ * is used.
+ */
+public final class CryptoProviders {
+
+    // Logger
+    private static final Logger LOG = org.slf4j.LoggerFactory.getLogger("SaltyRTC.CryptoProviders");
+
+    // Compiled for Java 17, so it must only be loaded by reflection
+    private static final String VECTOR_PROVIDER = "org.saltyrtc.client.crypto.VectorCryptoProvider";
+
+    @Nullable private static volatile CryptoProvider defaultProvider;
+
+    private CryptoProviders() {
+        // Static class
+    }
+
+    /**
+     * Return the default crypto provider.
+     */
+    @NonNull
+    public static CryptoProvider getDefault() {
+        CryptoProvider provider = defaultProvider;
+        if (provider == null) {
+            synchronized (CryptoProviders.class) {
+                provider = defaultProvider;
+                if (provider == null) {
+                    provider = load();
+                    defaultProvider = provider;
+                }
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Set the default crypto provider.
+     *
+     * This only affects key stores and SaltyRTC instances created afterwards.
+     *
+     * @param provider The provider, or null to select the default provider again.
+     */
+    public static void setDefault(@Nullable CryptoProvider provider) {
+        defaultProvider = provider;
+    }
+
+    @NonNull
+    private static CryptoProvider load() {
+        final Iterator<CryptoProvider> it = ServiceLoader.load(CryptoProvider.class).iterator();
+        try {
+            while (it.hasNext()) {
+                try {
+                    final CryptoProvider provider = it.next();
+                    LOG.debug("Using crypto provider " + provider.getName());
+                    return provider;
+                } catch (ServiceConfigurationError e) {
+                    // E.g. the provider is not supported on this platform, try the next one
+                    LOG.warn("Could not load crypto provider: " + e.getMessage());
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            LOG.warn("Could not look up crypto providers: " + e.getMessage());
+        }
+        final CryptoProvider vector = loadVectorProvider();
+        if (vector != null) {
+            LOG.debug("Using crypto provider " + vector.getName());
+            return vector;
+        }
+        return new JnaclCryptoProvider();
+    }
+
+    @Nullable
+    private static CryptoProvider loadVectorProvider() {
+        try {
+            return (CryptoProvider) Class.forName(VECTOR_PROVIDER).newInstance();
+        } catch (ClassNotFoundException e) {
+            // Java < 17 (the class is in META-INF/versions/17) or built without the Java 17 classes
+            return null;
+        } catch (LinkageError | ReflectiveOperationException | UnsupportedOperationException e) {
+            // Java < 17 or the module is not present
+            LOG.debug("Vector API crypto provider not available: " + e);
+            return null;
+        }
+    }
+}
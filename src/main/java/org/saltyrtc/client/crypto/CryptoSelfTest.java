@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.client.helpers.HexHelper;
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Known answer tests for crypto providers.
+ *
+ * The tests run once per provider, their result is remembered. Depending on the
+ * {@link Policy}, they are skipped, run on a background thread or run before the
+ * SaltyRTC instance is created. A provider whose test has failed is refused by
+ * {@link #verify(CryptoProvider, Policy, Listener)} and {@link #check(CryptoProvider)}
+ * with any policy other than off.
+ *
+ * This class is thread safe.
+ */
+public final class CryptoSelfTest {
+
+    // Logger
+    private static final Logger LOG = org.slf4j.LoggerFactory.getLogger("SaltyRTC.CryptoSelfTest");
+
+    // Test vectors from tests/box.* and tests/secretbox.* in the NaCl distribution
+    private static final byte[] ALICE_SK = HexHelper.hexStringToByteArray(
+        "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+    private static final byte[] ALICE_PK = HexHelper.hexStringToByteArray(
+        "8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+    private static final byte[] BOB_SK = HexHelper.hexStringToByteArray(
+        "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+    private static final byte[] BOB_PK = HexHelper.hexStringToByteArray(
+        "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f");
+    private static final byte[] SHARED_KEY = HexHelper.hexStringToByteArray(
+        "1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389");
+    private static final byte[] NONCE = HexHelper.hexStringToByteArray(
+        "69696ee955b62b73cd62bda875fc73d68219e0036b7a0b37");
+    private static final byte[] MESSAGE = HexHelper.hexStringToByteArray(
+        "be075fc53c81f2d5cf141316ebeb0c7b5228c52a4c62cbd44b66849b64244ffc"
+        + "e5ecbaaf33bd751a1ac728d45e6c61296cdc3c01233561f41db66cce314adb31"
+        + "0e3be8250c46f06dceea3a7fa1348057e2f6556ad6b1318a024a838f21af1fde"
+        + "048977eb48f59ffd4924ca1c60902e52f0a089bc76897040e082f93776384864"
+        + "5e0705");
+    private static final byte[] BOX = HexHelper.hexStringToByteArray(
+        "f3ffc7703f9400e52a7dfb4b3d3305d98e993b9f48681273c29650ba32fc76ce"
+        + "48332ea7164d96a4476fb8c531a1186ac0dfc17c98dce87b4da7f011ec48c972"
+        + "71d2c20f9b928fe2270d6fb863d51738b48eeee314a7cc8ab932164548e526ae"
+        + "90224368517acfeabd6bb3732bc0e9da99832b61ca01b6de56244a9e88d5f9b3"
+        + "7973f622a43d14a6599b1f654cb45a74e355a5");
+
+    /**
+     * When to run the self test.
+     */
+    public enum Policy {
+        /**
+         * Do not run the self test.
+         */
+        OFF,
+        /**
+         * Run the self test on a background thread, the connection is not delayed.
+         * A failure is logged and reported to the listener. Connecting afterwards fails.
+         */
+        BACKGROUND,
+        /**
+         * Run the self test before the SaltyRTC instance is created. A failure is thrown.
+         */
+        BLOCKING,
+    }
+
+    /**
+     * The result of a self test.
+     */
+    public static final class Result {
+        @NonNull private final CryptoProvider provider;
+        @Nullable private final CryptoFailedException error;
+        private final long durationNanos;
+
+        Result(@NonNull CryptoProvider provider, @Nullable CryptoFailedException error, long durationNanos) {
+            this.provider = provider;
+            this.error = error;
+            this.durationNanos = durationNanos;
+        }
+
+        @NonNull
+        public CryptoProvider getProvider() {
+            return this.provider;
+        }
+
+        public boolean isPassed() {
+            return this.error == null;
+        }
+
+        /**
+         * Return the reason of the failure, or null if the self test has passed.
+         */
+        @Nullable
+        public CryptoFailedException getError() {
+            return this.error;
+        }
+
+        /**
+         * Return how long the self test took, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return this.durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            final String status = this.error == null ? "Crypto self-test passed" : this.error.getMessage();
+            return status + " (" + this.provider.getName() + ", " + this.durationNanos / 1000 + " us)";
+        }
+    }
+
+    /**
+     * Receives the result of a self test.
+     */
+    public interface Listener {
+        /**
+         * Called with the result of the self test. With the background policy,
+         * this is called on the self test thread.
+         */
+        void onResult(@NonNull Result result);
+    }
+
+    // Self tests by provider, they are only run once. The tasks and results reference the
+    // provider, so the map is not weak. Providers are expected to live as long as the process.
+    private static final Map<CryptoProvider, FutureTask<Result>> TESTS = new IdentityHashMap<>();
+
+    private CryptoSelfTest() {
+        // Static class
+    }
+
+    /**
+     * Run the self test of the provider according to the policy.
+     *
+     * If the self test has already been run for the provider, its result is reused.
+     *
+     * @param listener Optional listener receiving the result. It is not called if the policy is off.
+     * @throws CryptoFailedException The policy is blocking and the self test has failed, or the
+     *                               policy is background and the self test has already failed.
+     */
+    public static void verify(@NonNull CryptoProvider provider, @NonNull Policy policy,
+                              @Nullable final Listener listener) throws CryptoFailedException {
+        switch (policy) {
+            case OFF:
+                return;
+            case BLOCKING:
+                final Result result = await(getTest(provider));
+                if (listener != null) {
+                    listener.onResult(result);
+                }
+                if (!result.isPassed()) {
+                    throw result.getError();
+                }
+                return;
+            case BACKGROUND:
+                final FutureTask<Result> test = getTest(provider);
+                if (test.isDone()) {
+                    final Result doneResult = await(test);
+                    if (!doneResult.isPassed()) {
+                        if (listener != null) {
+                            listener.onResult(doneResult);
+                        }
+                        throw doneResult.getError();
+                    }
+                    if (listener == null) {
+                        return;
+                    }
+                }
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Result backgroundResult = await(test);
+                        if (listener != null) {
+                            listener.onResult(backgroundResult);
+                        }
+                    }
+                }, "SaltyRTC.CryptoSelfTest");
+                thread.setDaemon(true);
+                thread.start();
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+    }
+
+    /**
+     * Return the result of the self test of the provider, or null if it has not been run yet.
+     */
+    @Nullable
+    public static Result getResult(@NonNull CryptoProvider provider) {
+        final FutureTask<Result> test;
+        synchronized (TESTS) {
+            test = TESTS.get(provider);
+        }
+        if (test == null || !test.isDone()) {
+            return null;
+        }
+        return await(test);
+    }
+
+    /**
+     * Refuse the provider if its self test has failed.
+     *
+     * A self test that has not been run yet or is still running is not waited for.
+     *
+     * @throws CryptoFailedException The self test of the provider has failed.
+     */
+    public static void check(@NonNull CryptoProvider provider) throws CryptoFailedException {
+        final Result result = getResult(provider);
+        if (result != null && !result.isPassed()) {
+            throw result.getError();
+        }
+    }
+
+    @NonNull
+    private static FutureTask<Result> getTest(@NonNull final CryptoProvider provider) {
+        synchronized (TESTS) {
+            FutureTask<Result> test = TESTS.get(provider);
+            if (test == null) {
+                test = new FutureTask<>(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return runAndLog(provider);
+                    }
+                });
+                TESTS.put(provider, test);
+            }
+            return test;
+        }
+    }
+
+    /**
+     * Run the test unless it is already running or done, and wait for the result.
+     */
+    @NonNull
+    private static Result await(@NonNull FutureTask<Result> test) {
+        test.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return test.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // The test catches all exceptions
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @NonNull
+    private static Result runAndLog(@NonNull CryptoProvider provider) {
+        final long start = System.nanoTime();
+        CryptoFailedException error = null;
+        try {
+            run(provider);
+        } catch (CryptoFailedException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new CryptoFailedException(e.toString());
+        }
+        final Result result = new Result(provider, error, System.nanoTime() - start);
+        if (result.isPassed()) {
+            LOG.debug(result.toString());
+        } else {
+            LOG.error(result.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Run the known answer tests on the calling thread, without remembering the result.
+     *
+     * @throws CryptoFailedException A test has failed.
+     */
+    public static void run(@NonNull CryptoProvider provider) throws CryptoFailedException {
+        try {
+            // Key derivation
+            if (!Arrays.equals(provider.derivePublicKey(ALICE_SK), ALICE_PK)
+                    || !Arrays.equals(provider.derivePublicKey(BOB_SK), BOB_PK)) {
+                throw new CryptoFailedException("Crypto self-test failed: public key derivation");
+            }
+
+            // Box
+            if (!Arrays.equals(provider.getInstance(ALICE_SK, BOB_PK).encrypt(MESSAGE, NONCE), BOX)) {
+                throw new CryptoFailedException("Crypto self-test failed: box encryption");
+            }
+            final CryptoInstance bob = provider.getInstance(BOB_SK, ALICE_PK);
+            if (!Arrays.equals(bob.decrypt(BOX, NONCE), MESSAGE)) {
+                throw new CryptoFailedException("Crypto self-test failed: box decryption");
+            }
+
+            // A modified box must be rejected
+            final byte[] modified = BOX.clone();
+            modified[modified.length - 1] ^= 1;
+            if (isAccepted(bob, modified)) {
+                throw new CryptoFailedException("Crypto self-test failed: modified box accepted");
+            }
+
+            // Secret box with the shared key gives the same result
+            final CryptoInstance symmetric = provider.getSymmetricInstance(SHARED_KEY);
+            if (!Arrays.equals(symmetric.encrypt(MESSAGE, NONCE), BOX)
+                    || !Arrays.equals(symmetric.decrypt(BOX, NONCE), MESSAGE)) {
+                throw new CryptoFailedException("Crypto self-test failed: secret box");
+            }
+        } catch (InvalidKeyException e) {
+            throw new CryptoFailedException("Crypto self-test failed: " + e.getMessage());
+        }
+    }
+
+    private static boolean isAccepted(@NonNull CryptoInstance instance, @NonNull byte[] box) {
+        try {
+            instance.decrypt(box, NONCE);
+            return true;
+        } catch (CryptoFailedException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.hsalsa20;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.xsalsa20;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreement;
+
+/**
+ * Crypto provider that uses the X25519 implementation of the JDK (Java 11+) for
+ * key generation and key agreement.
+ *
+ * The JDK implementation is constant time and benefits from JIT intrinsics for the
+ * field arithmetic. The JDK does not provide XSalsa20-Poly1305, so boxes are still
+ * encrypted by jnacl.
+ *
+ * Unlike jnacl, the JDK rejects public keys of small order, for which the shared
+ * secret would be zero.
+ *
+ * To use this provider by default, register it in
+ * `META-INF/services/org.saltyrtc.client.crypto.CryptoProvider`.
+ */
+public class JcaCryptoProvider implements CryptoProvider {
+
+    private static final String ALGORITHM = "X25519";
+
+    // DER prefixes of the X.509 and PKCS #8 encodings of raw X25519 keys (RFC 8410)
+    private static final byte[] PUBLIC_KEY_PREFIX = {
+        0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00,
+    };
+    private static final byte[] SECRET_KEY_PREFIX = {
+        0x30, 0x2e, 0x02, 0x01, 0x00, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x04, 0x22, 0x04, 0x20,
+    };
+
+    // The Curve25519 base point, used to derive public keys
+    private static final byte[] BASE_POINT = new byte[PUBLICKEYBYTES];
+    static {
+        BASE_POINT[0] = 9;
+    }
+
+    /**
+     * @throws UnsupportedOperationException The JDK does not support X25519.
+     */
+    public JcaCryptoProvider() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("X25519 is not supported by this JDK");
+        }
+    }
+
+    /**
+     * Return whether the JDK supports X25519.
+     */
+    public static boolean isSupported() {
+        try {
+            KeyPairGenerator.getInstance(ALGORITHM);
+            KeyFactory.getInstance(ALGORITHM);
+            KeyAgreement.getInstance(ALGORITHM);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "jca";
+    }
+
+    @Override
+    public void generateKeyPair(@NonNull byte[] publicKey, @NonNull byte[] secretKey) {
+        if (publicKey.length != PUBLICKEYBYTES || secretKey.length != SECRETKEYBYTES) {
+            throw new IllegalArgumentException("Invalid key array length");
+        }
+        final KeyPair keyPair;
+        try {
+            keyPair = KeyPairGenerator.getInstance(ALGORITHM).generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        unwrap(keyPair.getPublic().getEncoded(), PUBLIC_KEY_PREFIX, publicKey);
+        final byte[] encoded = keyPair.getPrivate().getEncoded();
+        unwrap(encoded, SECRET_KEY_PREFIX, secretKey);
+        Arrays.fill(encoded, (byte) 0);
+    }
+
+    @Override
+    public void generateKeyPairs(@NonNull byte[][] publicKeys, @NonNull byte[][] secretKeys) {
+        if (publicKeys.length != secretKeys.length) {
+            throw new IllegalArgumentException("Key array count mismatch");
+        }
+        // The JCA does not offer batch key generation
+        for (int i = 0; i < publicKeys.length; i++) {
+            this.generateKeyPair(publicKeys[i], secretKeys[i]);
+        }
+    }
+
+    @NonNull
+    @Override
+    public byte[] derivePublicKey(@NonNull byte[] secretKey) throws InvalidKeyException {
+        // The public key is the shared secret with the base point
+        return this.agree(secretKey, BASE_POINT);
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey)
+            throws InvalidKeyException {
+        final byte[] secret = this.agree(secretKey, publicKey);
+        final byte[] precomputed = new byte[NaCl.BEFORENMBYTES];
+        try {
+            hsalsa20.crypto_core(precomputed, null, secret, xsalsa20.sigma);
+            return new NaClCryptoInstance(new NaCl(precomputed));
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+            Arrays.fill(precomputed, (byte) 0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getSymmetricInstance(@NonNull byte[] key) throws InvalidKeyException {
+        if (key.length != SYMMKEYBYTES) {
+            throw new InvalidKeyException("Key must be " + SYMMKEYBYTES + " bytes long");
+        }
+        return new NaClCryptoInstance(new NaCl(key));
+    }
+
+    /**
+     * Return the raw X25519 shared secret.
+     */
+    private byte[] agree(@NonNull byte[] secretKey, @NonNull byte[] publicKey) throws InvalidKeyException {
+        if (secretKey.length != SECRETKEYBYTES) {
+            throw new InvalidKeyException("Secret key must be " + SECRETKEYBYTES + " bytes long");
+        }
+        if (publicKey.length != PUBLICKEYBYTES) {
+            throw new InvalidKeyException("Public key must be " + PUBLICKEYBYTES + " bytes long");
+        }
+        final byte[] encodedSecretKey = wrap(SECRET_KEY_PREFIX, secretKey);
+        try {
+            final KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+            final PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(encodedSecretKey));
+            final PublicKey otherKey = keyFactory.generatePublic(
+                new X509EncodedKeySpec(wrap(PUBLIC_KEY_PREFIX, publicKey)));
+            final KeyAgreement agreement = KeyAgreement.getInstance(ALGORITHM);
+            agreement.init(privateKey);
+            agreement.doPhase(otherKey, true);
+            return agreement.generateSecret();
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            throw new InvalidKeyException(e.toString());
+        } finally {
+            Arrays.fill(encodedSecretKey, (byte) 0);
+        }
+    }
+
+    private static byte[] wrap(byte[] prefix, byte[] key) {
+        final byte[] encoded = new byte[prefix.length + key.length];
+        System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+        System.arraycopy(key, 0, encoded, prefix.length, key.length);
+        return encoded;
+    }
+
+    private static void unwrap(byte[] encoded, byte[] prefix, byte[] key) {
+        if (encoded.length != prefix.length + key.length
+                || !Arrays.equals(prefix, Arrays.copyOf(encoded, prefix.length))) {
+            throw new IllegalStateException("Unexpected X25519 key encoding");
+        }
+        System.arraycopy(encoded, prefix.length, key, 0, key.length);
+    }
+}
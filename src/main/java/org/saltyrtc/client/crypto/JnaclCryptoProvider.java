@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java crypto provider based on the vendored jnacl implementation.
+ *
+ * This provider is available on all platforms and is used if no other provider
+ * has been configured.
+ */
+public class JnaclCryptoProvider implements CryptoProvider {
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "jnacl";
+    }
+
+    @Override
+    public void generateKeyPair(@NonNull byte[] publicKey, @NonNull byte[] secretKey) {
+        if (publicKey.length != PUBLICKEYBYTES || secretKey.length != SECRETKEYBYTES) {
+            throw new IllegalArgumentException("Invalid key array length");
+        }
+        NaCl.genkeypair(publicKey, secretKey);
+    }
+
+    @Override
+    public void generateKeyPairs(@NonNull byte[][] publicKeys, @NonNull byte[][] secretKeys) {
+        try {
+            NaCl.genkeypairs(publicKeys, secretKeys);
+        } catch (Error e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    @NonNull
+    @Override
+    public byte[] derivePublicKey(@NonNull byte[] secretKey) throws InvalidKeyException {
+        try {
+            return NaCl.derivePublicKey(secretKey);
+        } catch (Error e) {
+            throw new InvalidKeyException(e.toString());
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey)
+            throws InvalidKeyException {
+        final byte[] precomputed = new byte[NaCl.BEFORENMBYTES];
+        try {
+            NaCl.precompute(precomputed, secretKey, publicKey);
+            return new NaClCryptoInstance(new NaCl(precomputed));
+        } catch (Error e) {
+            throw new InvalidKeyException(e.toString());
+        } finally {
+            Arrays.fill(precomputed, (byte) 0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance getSymmetricInstance(@NonNull byte[] key) throws InvalidKeyException {
+        if (key.length != SYMMKEYBYTES) {
+            throw new InvalidKeyException("Key must be " + SYMMKEYBYTES + " bytes long");
+        }
+        // A secret box is a box with the symmetric key as precomputed key
+        return new NaClCryptoInstance(new NaCl(key));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.crypto;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+/**
+ * Crypto instance backed by the vendored jnacl implementation.
+ */
+class NaClCryptoInstance implements CryptoInstance {
+
+    @NonNull private final NaCl nacl;
+    private volatile boolean wiped = false;
+
+    NaClCryptoInstance(@NonNull NaCl nacl) {
+        this.nacl = nacl;
+    }
+
+    @NonNull
+    @Override
+    public byte[] encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+        this.checkNotWiped();
+        try {
+            return this.nacl.encrypt(data, nonce);
+        } catch (Error e) {
+            throw new CryptoFailedException(e.toString());
+        }
+    }
+
+    @NonNull
+    @Override
+    public byte[] decrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+        this.checkNotWiped();
+        final byte[] decrypted;
+        try {
+            decrypted = this.nacl.decrypt(data, nonce);
+        } catch (Error e) {
+            throw new CryptoFailedException(e.toString());
+        }
+        if (decrypted == null) {
+            throw new CryptoFailedException("Decrypted data is null");
+        }
+        return decrypted;
+    }
+
+    @Override
+    public void encrypt(@NonNull byte[] output, int outputOffset,
+                        @NonNull byte[] input, int inputOffset, int inputLength,
+                        @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+        this.checkNotWiped();
+        try {
+            this.nacl.encrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+        } catch (Error e) {
+            throw new CryptoFailedException(e.toString());
+        }
+    }
+
+    @Override
+    public void decrypt(@NonNull byte[] output, int outputOffset,
+                        @NonNull byte[] input, int inputOffset, int inputLength,
+                        @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+        this.checkNotWiped();
+        final boolean success;
+        try {
+            success = this.nacl.decrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+        } catch (Error e) {
+            throw new CryptoFailedException(e.toString());
+        }
+        if (!success) {
+            throw new CryptoFailedException("Could not decrypt data");
+        }
+    }
+
+    @NonNull
+    @Override
+    public CryptoInstance copy() {
+        if (this.wiped) {
+            throw new IllegalStateException("Crypto instance has been wiped");
+        }
+        return new NaClCryptoInstance(this.nacl.copy());
+    }
+
+    @Override
+    public void wipe() {
+        this.wiped = true;
+        this.nacl.wipe();
+    }
+
+    private void checkNotWiped() throws CryptoFailedException {
+        if (this.wiped) {
+            throw new CryptoFailedException("Crypto instance has been wiped");
+        }
+    }
+}
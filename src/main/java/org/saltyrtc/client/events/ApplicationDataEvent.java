@@ -8,19 +8,144 @@
 
 package org.saltyrtc.client.events;
 
+import org.msgpack.core.MessageUnpacker;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.codecs.ApplicationCodec;
+import org.saltyrtc.client.codecs.ApplicationCodecRegistry;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+
+import java.io.IOException;
+
 /**
  * Application data was received.
+ *
+ * The event carries the MessagePack encoded data. It is only decoded when
+ * {@link #getData()} is called, handlers that just forward the data can use
+ * {@link #getRawData()} instead.
+ *
+ * If application codecs have been registered, the data is decoded into an instance of
+ * the class of the first codec that accepts it.
  */
 public class ApplicationDataEvent implements Event {
 
-    private final Object data;
+    @Nullable private EncodedValue encodedData;
+    @NonNull private final ApplicationCodecRegistry codecs;
+    private Object data;
+    private boolean decoded;
 
     public ApplicationDataEvent(Object data) {
         this.data = data;
+        this.decoded = true;
+        this.codecs = new ApplicationCodecRegistry();
     }
 
-    public Object getData() {
+    public ApplicationDataEvent(@NonNull EncodedValue data) {
+        this(data, new ApplicationCodecRegistry());
+    }
+
+    public ApplicationDataEvent(@NonNull EncodedValue data, @NonNull ApplicationCodecRegistry codecs) {
+        this.encodedData = data;
+        this.codecs = codecs;
+    }
+
+    /**
+     * Return the decoded data. It is decoded on the first call, later calls return the same object.
+     */
+    public synchronized Object getData() {
+        if (!this.decoded) {
+            try {
+                this.data = this.codecs.decode(this.encodedData);
+            } catch (SerializationError e) {
+                // The data has been validated when the message was read
+                throw new IllegalStateException("Could not decode application data", e);
+            }
+            this.decoded = true;
+        }
         return this.data;
     }
 
+    /**
+     * Return the MessagePack encoded data, without decoding it.
+     *
+     * @throws SerializationError if the event was created from an object that cannot be serialized.
+     */
+    @NonNull
+    public synchronized EncodedValue getRawData() throws SerializationError {
+        if (this.encodedData == null) {
+            this.encodedData = EncodedValue.encode(this.data);
+        }
+        return this.encodedData;
+    }
+
+    /**
+     * Decode the data into an instance of the class, with the codec registered for the
+     * class or with Jackson.
+     *
+     * @throws SerializationError if the data cannot be decoded into the class, or if no
+     *     codec is registered for the class and Jackson is not available.
+     */
+    @Nullable
+    public <T> T getDataAs(@NonNull Class<T> type) throws SerializationError {
+        synchronized (this) {
+            if (this.decoded && type.isInstance(this.data)) {
+                return type.cast(this.data);
+            }
+        }
+        final ApplicationCodec<T> codec = this.codecs.get(type);
+        if (codec == null) {
+            return this.getRawData().decodeAs(type);
+        }
+        try {
+            return codec.decode(this.getRawData());
+        } catch (ValidationError e) {
+            throw new SerializationError("Deserialization failed", e);
+        }
+    }
+
+    /**
+     * Return an unpacker to read the encoded data value by value.
+     *
+     * @throws SerializationError if the event was created from an object that cannot be serialized.
+     */
+    @NonNull
+    public MessageUnpacker getDataUnpacker() throws SerializationError {
+        return this.getRawData().newUnpacker();
+    }
+
+    /**
+     * Return whether the peer sent binary data.
+     */
+    public synchronized boolean isBinary() {
+        return this.encodedData != null ? this.encodedData.isBinary() : this.data instanceof byte[];
+    }
+
+    /**
+     * Return the binary data sent by the peer, or null if the data is not binary.
+     *
+     * The data is read from the encoded value directly, so it is returned even if a
+     * registered codec decodes binary data into another class.
+     */
+    @Nullable
+    public byte[] getBytes() {
+        final EncodedValue encoded;
+        synchronized (this) {
+            if (this.encodedData == null) {
+                return this.data instanceof byte[] ? (byte[]) this.data : null;
+            }
+            encoded = this.encodedData;
+        }
+        if (!encoded.isBinary()) {
+            return null;
+        }
+        try (MessageUnpacker unpacker = encoded.newUnpacker()) {
+            return unpacker.readPayload(unpacker.unpackBinaryHeader());
+        } catch (IOException e) {
+            // The data has been validated when the message was read
+            throw new IllegalStateException("Could not decode binary application data", e);
+        }
+    }
+
 }
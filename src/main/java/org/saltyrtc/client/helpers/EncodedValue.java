@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.SerializationError;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A single MessagePack encoded value, as a slice of a received message.
+ *
+ * The value has been validated when the message was read, but it is only decoded
+ * when asked for. The slice is not copied, the underlying array is never modified.
+ */
+public final class EncodedValue {
+
+    // Package private, so that JacksonHelper can read the slice without copying it
+    @NonNull final byte[] bytes;
+    final int offset;
+    final int length;
+
+    EncodedValue(@NonNull byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Encode a value with {@link MessagePackHelper#packValue}.
+     *
+     * @throws SerializationError if the value cannot be serialized.
+     */
+    @NonNull
+    public static EncodedValue encode(@Nullable Object value) throws SerializationError {
+        final byte[] bytes;
+        try {
+            final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+            MessagePackHelper.packValue(packer, value);
+            packer.close();
+            bytes = packer.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationError("Serialization failed", e);
+        }
+        return new EncodedValue(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Return the length of the encoded value in bytes.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Return whether the value is MessagePack binary data.
+     */
+    public boolean isBinary() {
+        return MessageFormat.valueOf(this.bytes[this.offset]).getValueType() == ValueType.BINARY;
+    }
+
+    /**
+     * Return a read-only buffer of the encoded value, without copying it.
+     */
+    @NonNull
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.bytes, this.offset, this.length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Return a copy of the encoded value.
+     */
+    @NonNull
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(this.bytes, this.offset, this.offset + this.length);
+    }
+
+    /**
+     * Return an unpacker positioned at the start of the value.
+     */
+    @NonNull
+    public MessageUnpacker newUnpacker() {
+        return MessagePack.newDefaultUnpacker(this.bytes, this.offset, this.length);
+    }
+
+    /**
+     * Decode the value into the same objects as {@link MessageReader} does for other fields:
+     * maps with string keys, lists, byte arrays, strings, booleans and numbers.
+     *
+     * @throws SerializationError if the value cannot be decoded.
+     */
+    @Nullable
+    public Object decode() throws SerializationError {
+        try {
+            return new MessageFieldReader(this.bytes, this.offset, this.length).readValue();
+        } catch (IOException | MessagePackException e) {
+            throw new SerializationError("Deserialization failed", e);
+        }
+    }
+
+    /**
+     * Decode the value into an instance of the class with Jackson.
+     *
+     * Jackson is an optional dependency, see {@link MessagePackHelper#isJacksonAvailable()}.
+     *
+     * @throws SerializationError if the value cannot be decoded into the class, or if
+     *     Jackson is not available.
+     */
+    @Nullable
+    public <T> T decodeAs(@NonNull Class<T> type) throws SerializationError {
+        if (!MessagePackHelper.isJacksonAvailable()) {
+            throw new SerializationError("Cannot deserialize " + type.getName()
+                + " without jackson-dataformat-msgpack on the classpath");
+        }
+        return JacksonHelper.readValue(type, this);
+    }
+
+    /**
+     * Write the encoded value to the packer as is.
+     */
+    public void writeTo(@NonNull MessagePacker packer) throws IOException {
+        packer.writePayload(this.bytes, this.offset, this.length);
+    }
+
+}
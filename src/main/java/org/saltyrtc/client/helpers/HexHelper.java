@@ -10,6 +10,14 @@ package org.saltyrtc.client.helpers;
 
 public class HexHelper {
 
+    // Value of the ASCII hex digits, -1 for all other characters
+    private static final byte[] DIGITS = new byte[128];
+    static {
+        for (int c = 0; c < DIGITS.length; c++) {
+            DIGITS[c] = (byte) Character.digit(c, 16);
+        }
+    }
+
     /**
      * Convert a hex string to a byte array.
      * http://stackoverflow.com/a/19119453
@@ -18,10 +26,13 @@ public class HexHelper {
         int len = s.length();
         byte[] data = new byte[len / 2];
         for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-                + Character.digit(s.charAt(i+1), 16));
+            data[i / 2] = (byte) ((digit(s.charAt(i)) << 4) + digit(s.charAt(i+1)));
         }
         return data;
     }
 
+    private static int digit(char c) {
+        return c < DIGITS.length ? DIGITS[c] : Character.digit(c, 16);
+    }
+
 }
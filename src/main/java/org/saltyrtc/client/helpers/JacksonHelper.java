@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.SerializationError;
+
+import java.io.IOException;
+
+/**
+ * Shared Jackson object mapper for MessagePack.
+ *
+ * The object mapper is thread safe once configured. It is created on first use,
+ * so it is never created if only binary data is sent.
+ *
+ * Jackson is optional, only use this class if {@link MessagePackHelper#isJacksonAvailable()}.
+ */
+public class JacksonHelper {
+
+    private static class Holder {
+        static final ObjectMapper MAPPER = new ObjectMapper(new MessagePackFactory());
+    }
+
+    public static ObjectMapper getObjectMapper() {
+        return Holder.MAPPER;
+    }
+
+    static Object newExtensionType(byte type, byte[] data) {
+        return new MessagePackExtensionType(type, data);
+    }
+
+    /**
+     * Decode an encoded value with a Jackson object reader, without copying it.
+     *
+     * @throws SerializationError if the value cannot be decoded by the reader.
+     */
+    @Nullable
+    public static <T> T readValue(@NonNull ObjectReader reader, @NonNull EncodedValue value)
+            throws SerializationError {
+        try {
+            return reader.readValue(value.bytes, value.offset, value.length);
+        } catch (IOException e) {
+            throw new SerializationError("Deserialization failed", e);
+        }
+    }
+
+    static <T> T readValue(Class<T> type, EncodedValue value) throws SerializationError {
+        return readValue(getObjectMapper().readerFor(type), value);
+    }
+
+}
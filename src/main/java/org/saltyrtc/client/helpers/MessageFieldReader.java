@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Iterate over the fields of a MessagePack encoded message without decoding it into a map first.
+ *
+ * Values are decoded into the same objects that Jackson creates for a `Map<String, Object>`,
+ * so that they can be checked with the {@link ValidationHelper}. Lengths of strings, binary
+ * data, arrays and maps are checked against the size of the message before anything is
+ * allocated.
+ */
+final class MessageFieldReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] TYPE = "type".getBytes(UTF_8);
+
+    static final int UNKNOWN_FIELD = -1;
+    static final int NO_MORE_FIELDS = -2;
+
+    // Maximum nesting depth of arrays and maps
+    private static final int MAX_DEPTH = 32;
+
+    @NonNull private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    @NonNull private MessageUnpacker unpacker;
+
+    private int size;
+    private int index;
+    private int typeIndex = -1;
+    @Nullable private String name;
+
+    MessageFieldReader(@NonNull byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Read from a slice of the array.
+     */
+    MessageFieldReader(@NonNull byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.unpacker = MessagePack.newDefaultUnpacker(bytes, offset, length);
+    }
+
+    /**
+     * Find the message type and look it up in the registry.
+     *
+     * Afterwards, {@link #next()} iterates over all other fields.
+     *
+     * @throws SerializationError if the message is not a map or does not have a string type.
+     * @throws ValidationError if the message type is unknown.
+     */
+    @NonNull
+    MessageTypeRegistry.Entry readType(@NonNull MessageTypeRegistry registry)
+            throws SerializationError, ValidationError, IOException {
+        this.start();
+        for (int i = 0; i < this.size; i++) {
+            if (!this.readKeyEquals(TYPE)) {
+                this.unpacker.skipValue();
+                continue;
+            }
+            if (this.unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+                throw new SerializationError("Message type must be a string");
+            }
+
+            // Look up the raw bytes, the type is not decoded
+            final int length = this.unpacker.unpackRawStringHeader();
+            this.checkLength(length);
+            final int offset = this.position();
+            final MessageTypeRegistry.Entry entry = registry.lookup(this.bytes, offset, length);
+            if (entry == null) {
+                throw new ValidationError("Unknown message type: " + new String(this.bytes, offset, length, UTF_8));
+            }
+            this.unpacker.readPayloadAsReference(length);
+
+            this.typeIndex = i;
+            if (i == 0) {
+                // Usual case, continue with the next field
+                this.index = 1;
+            } else {
+                // Start from the beginning, the type field will be skipped
+                this.unpacker = MessagePack.newDefaultUnpacker(this.bytes, this.offset, this.length);
+                this.start();
+            }
+            return entry;
+        }
+        throw new SerializationError("Message does not contain a type field");
+    }
+
+    private void start() throws SerializationError, IOException {
+        if (!this.unpacker.hasNext() || this.unpacker.getNextFormat().getValueType() != ValueType.MAP) {
+            throw new SerializationError("Message must be a map");
+        }
+        this.size = this.unpacker.unpackMapHeader();
+        this.checkLength(this.size * 2L);
+        this.index = 0;
+    }
+
+    /**
+     * Advance to the next field. The value of the field must be consumed with one of the
+     * read methods or {@link #skip()} before calling this again.
+     *
+     * @return false if there are no more fields.
+     */
+    boolean next() throws SerializationError, IOException {
+        if (this.index == this.typeIndex) {
+            // Skip key and value of the type field
+            this.unpacker.skipValue();
+            this.unpacker.skipValue();
+            this.index++;
+        }
+        if (this.index >= this.size) {
+            this.name = null;
+            return false;
+        }
+        this.name = this.readKey();
+        this.index++;
+        return true;
+    }
+
+    /**
+     * Advance to the next field and look up its key in the UTF-8 encoded names, without
+     * decoding the key. The value must be consumed before calling this again.
+     *
+     * @return The index of the key in the names, {@link #UNKNOWN_FIELD} or {@link #NO_MORE_FIELDS}.
+     */
+    int nextField(@NonNull byte[][] names) throws SerializationError, IOException {
+        if (this.index == this.typeIndex) {
+            this.unpacker.skipValue();
+            this.unpacker.skipValue();
+            this.index++;
+        }
+        this.name = null;
+        if (this.index >= this.size) {
+            return NO_MORE_FIELDS;
+        }
+        this.index++;
+        if (this.unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+            throw new SerializationError("Map keys must be strings");
+        }
+        final int length = this.unpacker.unpackRawStringHeader();
+        this.checkLength(length);
+        final int offset = this.position();
+        this.unpacker.readPayloadAsReference(length);
+        for (int i = 0; i < names.length; i++) {
+            if (equals(names[i], this.bytes, offset, length)) {
+                return i;
+            }
+        }
+        return UNKNOWN_FIELD;
+    }
+
+    /**
+     * Return the name of the current field.
+     */
+    @Nullable
+    String name() {
+        return this.name;
+    }
+
+    /**
+     * Skip the value of the current field without decoding it.
+     */
+    void skip() throws IOException {
+        this.unpacker.skipValue();
+    }
+
+    /**
+     * Validate the next value without decoding it and return its encoded bytes.
+     *
+     * The value is checked like {@link #readValue()} would check it (lengths, nesting
+     * depth and string map keys), so decoding it later does not fail.
+     */
+    @NonNull
+    EncodedValue readEncodedValue() throws SerializationError, IOException {
+        final int start = this.position();
+        this.skipValue(0);
+        return new EncodedValue(this.bytes, start, this.position() - start);
+    }
+
+    private void skipValue(int depth) throws SerializationError, IOException {
+        final int length;
+        switch (this.unpacker.getNextFormat().getValueType()) {
+            case ARRAY:
+                this.checkDepth(depth);
+                length = this.unpacker.unpackArrayHeader();
+                this.checkLength(length);
+                for (int i = 0; i < length; i++) {
+                    this.skipValue(depth + 1);
+                }
+                break;
+            case MAP:
+                this.checkDepth(depth);
+                length = this.unpacker.unpackMapHeader();
+                this.checkLength(length * 2L);
+                for (int i = 0; i < length; i++) {
+                    if (this.unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+                        throw new SerializationError("Map keys must be strings");
+                    }
+                    this.unpacker.skipValue();
+                    this.skipValue(depth + 1);
+                }
+                break;
+            default:
+                // Scalars, strings, binary and extension values
+                this.unpacker.skipValue();
+        }
+    }
+
+    /**
+     * Read binary data of a fixed length. The length is checked before the data is read.
+     *
+     * @throws ValidationError if the value is not binary data of the expected length.
+     */
+    @NonNull
+    byte[] readByteArray(int expectedLength, String name) throws SerializationError, ValidationError, IOException {
+        if (this.unpacker.getNextFormat().getValueType() != ValueType.BINARY) {
+            return ValidationHelper.validateByteArray(this.readValue(), expectedLength, name);
+        }
+        final int length = this.unpacker.unpackBinaryHeader();
+        if (length != expectedLength) {
+            throw new ValidationError(
+                    name + " must be " + expectedLength + " bytes long, not " + length);
+        }
+        this.checkLength(length);
+        return this.unpacker.readPayload(length);
+    }
+
+    /**
+     * Like {@link #readByteArray(int, String)}, but return null for a nil value.
+     */
+    @Nullable
+    byte[] readNullableByteArray(int expectedLength, String name) throws SerializationError, ValidationError, IOException {
+        if (this.unpacker.getNextFormat() == MessageFormat.NIL) {
+            this.unpacker.unpackNil();
+            return null;
+        }
+        return this.readByteArray(expectedLength, name);
+    }
+
+    /**
+     * Read and return any value.
+     *
+     * Integers are returned as {@link Integer}, {@link Long} or {@link BigInteger}, whatever
+     * is the smallest type they fit in. Floats are returned as {@link Double}, arrays as
+     * {@link ArrayList} and maps as {@link LinkedHashMap} with string keys.
+     */
+    @Nullable
+    Object readValue() throws SerializationError, IOException {
+        return this.readValue(0);
+    }
+
+    @Nullable
+    private Object readValue(int depth) throws SerializationError, IOException {
+        final MessageFormat format = this.unpacker.getNextFormat();
+        final int length;
+        switch (format.getValueType()) {
+            case NIL:
+                this.unpacker.unpackNil();
+                return null;
+            case BOOLEAN:
+                return this.unpacker.unpackBoolean();
+            case INTEGER:
+                if (format == MessageFormat.UINT64) {
+                    final BigInteger value = this.unpacker.unpackBigInteger();
+                    return value.bitLength() < Long.SIZE ? narrow(value.longValue()) : value;
+                }
+                return narrow(this.unpacker.unpackLong());
+            case FLOAT:
+                return this.unpacker.unpackDouble();
+            case STRING:
+                length = this.unpacker.unpackRawStringHeader();
+                this.checkLength(length);
+                return new String(this.unpacker.readPayload(length), UTF_8);
+            case BINARY:
+                length = this.unpacker.unpackBinaryHeader();
+                this.checkLength(length);
+                return this.unpacker.readPayload(length);
+            case ARRAY:
+                this.checkDepth(depth);
+                length = this.unpacker.unpackArrayHeader();
+                this.checkLength(length);
+                final List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    list.add(this.readValue(depth + 1));
+                }
+                return list;
+            case MAP:
+                this.checkDepth(depth);
+                length = this.unpacker.unpackMapHeader();
+                this.checkLength(length * 2L);
+                final Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < length; i++) {
+                    map.put(this.readKey(), this.readValue(depth + 1));
+                }
+                return map;
+            case EXTENSION:
+                final ExtensionTypeHeader header = this.unpacker.unpackExtensionTypeHeader();
+                this.checkLength(header.getLength());
+                return MessagePackHelper.newExtensionValue(header.getType(), this.unpacker.readPayload(header.getLength()));
+            default:
+                throw new SerializationError("Unknown value type: " + format.getValueType());
+        }
+    }
+
+    @NonNull
+    private String readKey() throws SerializationError, IOException {
+        if (this.unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+            throw new SerializationError("Map keys must be strings");
+        }
+        final int length = this.unpacker.unpackRawStringHeader();
+        this.checkLength(length);
+        return new String(this.unpacker.readPayload(length), UTF_8);
+    }
+
+    /**
+     * Read a key and compare it to the expected UTF-8 bytes without decoding it.
+     */
+    private boolean readKeyEquals(@NonNull byte[] expected) throws SerializationError, IOException {
+        if (this.unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+            throw new SerializationError("Map keys must be strings");
+        }
+        final int length = this.unpacker.unpackRawStringHeader();
+        this.checkLength(length);
+        final int offset = this.position();
+        this.unpacker.readPayloadAsReference(length);
+        return equals(expected, this.bytes, offset, length);
+    }
+
+    private static boolean equals(@NonNull byte[] expected, @NonNull byte[] bytes, int offset, int length) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consume a nil value.
+     *
+     * @return false if the value is not nil, it has not been consumed then.
+     */
+    boolean readNil() throws IOException {
+        if (this.unpacker.getNextFormat() == MessageFormat.NIL) {
+            this.unpacker.unpackNil();
+            return true;
+        }
+        return false;
+    }
+
+    boolean readBoolean(String name) throws ValidationError, IOException {
+        this.expect(ValueType.BOOLEAN, name);
+        return this.unpacker.unpackBoolean();
+    }
+
+    int readInt(String name) throws ValidationError, IOException {
+        this.expect(ValueType.INTEGER, name);
+        final MessageFormat format = this.unpacker.getNextFormat();
+        if (format == MessageFormat.UINT32 || format == MessageFormat.UINT64 || format == MessageFormat.INT64) {
+            final long value = this.readLong(name);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new ValidationError(name + " must be a 32 bit integer");
+            }
+            return (int) value;
+        }
+        return this.unpacker.unpackInt();
+    }
+
+    long readLong(String name) throws ValidationError, IOException {
+        this.expect(ValueType.INTEGER, name);
+        if (this.unpacker.getNextFormat() == MessageFormat.UINT64) {
+            final BigInteger value = this.unpacker.unpackBigInteger();
+            if (value.bitLength() >= Long.SIZE) {
+                throw new ValidationError(name + " must be a 64 bit integer");
+            }
+            return value.longValue();
+        }
+        return this.unpacker.unpackLong();
+    }
+
+    double readDouble(String name) throws ValidationError, IOException {
+        if (this.unpacker.getNextFormat().getValueType() == ValueType.INTEGER) {
+            return this.readLong(name);
+        }
+        this.expect(ValueType.FLOAT, name);
+        return this.unpacker.unpackDouble();
+    }
+
+    @NonNull
+    String readString(String name) throws SerializationError, ValidationError, IOException {
+        this.expect(ValueType.STRING, name);
+        final int length = this.unpacker.unpackRawStringHeader();
+        this.checkLength(length);
+        final int offset = this.position();
+        this.unpacker.readPayloadAsReference(length);
+        return new String(this.bytes, offset, length, UTF_8);
+    }
+
+    @NonNull
+    byte[] readBinary(String name) throws SerializationError, ValidationError, IOException {
+        this.expect(ValueType.BINARY, name);
+        final int length = this.unpacker.unpackBinaryHeader();
+        this.checkLength(length);
+        return this.unpacker.readPayload(length);
+    }
+
+    private void expect(@NonNull ValueType type, String name) throws ValidationError, IOException {
+        final ValueType actual = this.unpacker.getNextFormat().getValueType();
+        if (actual != type) {
+            throw new ValidationError(name + " must be of type " + type + ", not " + actual);
+        }
+    }
+
+    @NonNull
+    private static Number narrow(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * Return the index in the array of the next byte to read.
+     */
+    private int position() {
+        return this.offset + (int) this.unpacker.getTotalReadBytes();
+    }
+
+    /**
+     * Every value takes at least one byte, so a length larger than the rest of the
+     * message can be rejected before allocating anything.
+     */
+    private void checkLength(long length) throws SerializationError {
+        if (length < 0 || length > this.length - this.unpacker.getTotalReadBytes()) {
+            throw new SerializationError("Length " + length + " exceeds the message size");
+        }
+    }
+
+    private void checkDepth(int depth) throws SerializationError {
+        if (depth >= MAX_DEPTH) {
+            throw new SerializationError("Values must not be nested deeper than " + MAX_DEPTH + " levels");
+        }
+    }
+
+}
@@ -8,43 +8,122 @@
 
 package org.saltyrtc.client.helpers;
 
+import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.nonce.NonceView;
 import org.saltyrtc.client.nonce.SignalingChannelNonce;
-import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
 
-import java.nio.ByteBuffer;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * This is a fixed-size FIFO linked hash map that only keeps a limited number of entries.
+ * A fixed-size FIFO of sent messages, looked up by their message key.
  *
  * It is used to "remember" the sent messages.
+ *
+ * The message key consists of exactly 8 bytes (see {@link #getMessageKey(SignalingChannelNonce)}),
+ * so it is handled as a `long`. Messages are stored in a ring buffer, an open addressed hash
+ * table with linear probing maps keys to positions in the ring.
+ *
+ * Storing a message takes a lock. Lookups do not lock and do not allocate: they are
+ * validated with a version counter that is incremented before and after every change,
+ * and only fall back to locking if a change happened at the same time.
  */
 public class MessageHistory {
 
+    /**
+     * Number of messages remembered by default.
+     */
+    public static final int DEFAULT_SIZE = 10;
+
+    private static final int KEY_LENGTH = 8;
+
     private final int maxSize;
-    // TODO: The forced synchronization could probably be removed by using a synchronized map.
-    private final Map<String, Message> history;
 
-    private class LimitedHashMap<K, V> extends LinkedHashMap<K, V> {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return this.size() > maxSize;
-        }
-    }
+    // Ring buffer of keys and messages. A position is empty if its message is null.
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<Message> messages;
+    private int head = 0;
+    private int size = 0;
+
+    // Hash table of ring positions + 1, 0 marks an empty slot
+    private final AtomicIntegerArray index;
+    private final int mask;
 
+    // Odd while a change is in progress
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Create a new message history.
+     *
+     * @param maxSize Number of messages to remember. Set it to 0 to remember no messages.
+     */
     public MessageHistory(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Message history size may not be negative");
+        }
         this.maxSize = maxSize;
-        this.history = new LimitedHashMap<>();
+        this.keys = new AtomicLongArray(maxSize);
+        this.messages = new AtomicReferenceArray<>(maxSize);
+
+        // Keep the load factor at or below 0.5
+        int tableSize = 2;
+        while (tableSize < maxSize * 2) {
+            tableSize <<= 1;
+        }
+        this.index = new AtomicIntegerArray(tableSize);
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * Store the message in the history.
+     */
+    public void store(Message message, SignalingChannelNonce nonce) {
+        this.store(message, getKey(nonce.getSource(), nonce.getDestination(), nonce.getCombinedSequence()));
+    }
+
+    /**
+     * Store the message in the history, using the nonce of the sent packet.
+     */
+    public void store(Message message, NonceView nonce) {
+        this.store(message, getKey(nonce.getSource(), nonce.getDestination(), nonce.getCombinedSequence()));
     }
 
     /**
      * Store the message in the history.
+     *
+     * If a message with the same key has already been stored, it is replaced.
+     * Otherwise, the oldest message is dropped if the history is full.
      */
-    public synchronized void store(Message message, SignalingChannelNonce nonce) {
-        final byte[] key = MessageHistory.getMessageKey(nonce);
-        this.history.put(NaCl.asHex(key).toLowerCase(), message);
+    public synchronized void store(Message message, long key) {
+        if (this.maxSize == 0) {
+            return;
+        }
+        this.version.incrementAndGet();
+        try {
+            final int existing = this.lookup(key);
+            if (existing >= 0) {
+                this.messages.set(existing, message);
+                return;
+            }
+
+            // Drop the oldest message
+            final int position = this.head;
+            if (this.messages.get(position) != null) {
+                this.removeFromIndex(this.keys.get(position));
+                this.size--;
+            }
+
+            this.keys.set(position, key);
+            this.messages.set(position, message);
+            this.addToIndex(key, position);
+            this.head = (position + 1) % this.maxSize;
+            this.size++;
+        } finally {
+            this.version.incrementAndGet();
+        }
     }
 
     /**
@@ -54,31 +133,145 @@ public class MessageHistory {
      * sequence number of the nonce section from the original message.
      */
     public static byte[] getMessageKey(SignalingChannelNonce nonce) {
-        final ByteBuffer buf = ByteBuffer.allocate(8);
-        buf.put(UnsignedHelper.getUnsignedByte(nonce.getSource()));
-        buf.put(UnsignedHelper.getUnsignedByte(nonce.getDestination()));
-        buf.putShort(UnsignedHelper.getUnsignedShort(nonce.getOverflow()));
-        buf.putInt(UnsignedHelper.getUnsignedInt(nonce.getSequence()));
-        return buf.array();
+        return toBytes(getKey(nonce.getSource(), nonce.getDestination(), nonce.getCombinedSequence()));
     }
 
     /**
-     * Look up a sent message type by SHA256 hash.
+     * Return the message key of a nonce view, see {@link #getMessageKey(SignalingChannelNonce)}.
+     */
+    public static byte[] getMessageKey(NonceView nonce) {
+        return toBytes(getKey(nonce.getSource(), nonce.getDestination(), nonce.getCombinedSequence()));
+    }
+
+    /**
+     * Return the message key as `long`, see {@link #getMessageKey(SignalingChannelNonce)}.
+     */
+    public static long getKey(short source, short destination, long combinedSequence) {
+        return (long) source << 56 | (long) destination << 48 | combinedSequence;
+    }
+
+    private static byte[] toBytes(long key) {
+        final byte[] bytes = new byte[KEY_LENGTH];
+        UnsignedHelper.writeUnsignedInt(bytes, 0, key >>> 32);
+        UnsignedHelper.writeUnsignedInt(bytes, 4, key & 0xffffffffL);
+        return bytes;
+    }
+
+    /**
+     * Look up a sent message by its message key.
      *
      * If message is not found, null is returned.
      */
-    public synchronized Message find(byte[] key) {
-        return this.history.get(NaCl.asHex(key).toLowerCase());
+    @Nullable
+    public Message find(byte[] key) {
+        if (key.length != KEY_LENGTH) {
+            return null;
+        }
+        return this.find(UnsignedHelper.readUnsignedInt(key, 0) << 32 | UnsignedHelper.readUnsignedInt(key, 4));
+    }
+
+    /**
+     * Look up a sent message by its hex encoded message key.
+     */
+    @Nullable
+    public Message find(String key) {
+        if (key.length() != KEY_LENGTH * 2) {
+            return null;
+        }
+        return this.find(HexHelper.hexStringToByteArray(key));
     }
 
     /**
-     * Look up a sent message by SHA256 hash hex string.
+     * Look up a sent message by its message key.
+     *
+     * If message is not found, null is returned.
      */
-    public synchronized Message find(String key) {
-        return this.history.get(key.toLowerCase());
+    @Nullable
+    public Message find(long key) {
+        final int before = this.version.get();
+        if ((before & 1) == 0) {
+            final int position = this.lookup(key);
+            final Message message = position >= 0 ? this.messages.get(position) : null;
+            if (this.version.get() == before) {
+                return message;
+            }
+        }
+
+        // The history has been changed concurrently
+        synchronized (this) {
+            final int position = this.lookup(key);
+            return position >= 0 ? this.messages.get(position) : null;
+        }
     }
 
+    /**
+     * Return the number of stored messages.
+     */
     public synchronized int size() {
-        return this.history.size();
+        return this.size;
+    }
+
+    private int hash(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & this.mask;
+    }
+
+    /**
+     * Return the ring position of the key, or -1.
+     */
+    private int lookup(long key) {
+        if (this.maxSize == 0) {
+            return -1;
+        }
+        for (int slot = this.hash(key), i = 0; i <= this.mask; slot = (slot + 1) & this.mask, i++) {
+            final int entry = this.index.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (this.keys.get(entry - 1) == key) {
+                return entry - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void addToIndex(long key, int position) {
+        int slot = this.hash(key);
+        while (this.index.get(slot) != 0) {
+            slot = (slot + 1) & this.mask;
+        }
+        this.index.set(slot, position + 1);
+    }
+
+    /**
+     * Remove the key from the index and move following entries back, so that
+     * no gaps are left in the probe sequences.
+     */
+    private void removeFromIndex(long key) {
+        int slot = this.hash(key);
+        int entry;
+        while ((entry = this.index.get(slot)) != 0 && this.keys.get(entry - 1) != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        if (entry == 0) {
+            return;
+        }
+        int next = slot;
+        while (true) {
+            next = (next + 1) & this.mask;
+            entry = this.index.get(next);
+            if (entry == 0) {
+                break;
+            }
+            // Move the entry unless its home slot is cyclically in (slot, next]
+            final int home = this.hash(this.keys.get(entry - 1));
+            final boolean stays = slot <= next
+                ? slot < home && home <= next
+                : slot < home || home <= next;
+            if (!stays) {
+                this.index.set(slot, entry);
+                slot = next;
+            }
+        }
+        this.index.set(slot, 0);
     }
 }
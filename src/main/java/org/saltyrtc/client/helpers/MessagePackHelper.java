@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.msgpack.core.MessagePacker;
+import org.msgpack.value.ValueFactory;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Pack untyped values with msgpack-core.
+ *
+ * Maps, collections, arrays, strings, numbers, booleans and binary data are packed directly,
+ * the same way Jackson packs them. Jackson (`jackson-dataformat-msgpack`) is an optional
+ * dependency: it is only needed for other objects, like POJOs, and it is only loaded then.
+ */
+public class MessagePackHelper {
+
+    private static final boolean JACKSON_AVAILABLE = isClassAvailable("org.msgpack.jackson.dataformat.MessagePackFactory");
+
+    private static boolean isClassAvailable(String name) {
+        try {
+            Class.forName(name, false, MessagePackHelper.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return whether Jackson and its MessagePack data format are on the classpath.
+     */
+    public static boolean isJacksonAvailable() {
+        return JACKSON_AVAILABLE;
+    }
+
+    /**
+     * Pack a value.
+     *
+     * Map keys that are not strings are packed as strings, like Jackson does.
+     *
+     * @throws IOException if the value needs Jackson and Jackson is not available.
+     */
+    public static void packValue(@NonNull MessagePacker packer, @Nullable Object value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof String) {
+            packer.packString((String) value);
+        } else if (value instanceof Boolean) {
+            packer.packBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            packer.packLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            packer.packDouble((Double) value);
+        } else if (value instanceof Float) {
+            packer.packFloat((Float) value);
+        } else if (value instanceof BigInteger) {
+            packer.packBigInteger((BigInteger) value);
+        } else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            packer.packBinaryHeader(bytes.length).writePayload(bytes);
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            packer.packMapHeader(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                packer.packString(String.valueOf(entry.getKey()));
+                packValue(packer, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            final Collection<?> collection = (Collection<?>) value;
+            packer.packArrayHeader(collection.size());
+            for (Object element : collection) {
+                packValue(packer, element);
+            }
+        } else if (value instanceof Object[]) {
+            final Object[] array = (Object[]) value;
+            packer.packArrayHeader(array.length);
+            for (Object element : array) {
+                packValue(packer, element);
+            }
+        } else if (value instanceof ByteBuffer) {
+            final ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            packer.packBinaryHeader(bytes.length).writePayload(bytes);
+        } else if (JACKSON_AVAILABLE) {
+            packer.writePayload(JacksonHelper.getObjectMapper().writeValueAsBytes(value));
+        } else {
+            throw new IOException("Cannot serialize " + value.getClass().getName()
+                + " without jackson-dataformat-msgpack on the classpath");
+        }
+    }
+
+    /**
+     * Return an extension value read from a message.
+     *
+     * This is a `MessagePackExtensionType` if Jackson is available, like Jackson would
+     * decode it, or a msgpack-core `ExtensionValue` otherwise.
+     */
+    @NonNull
+    static Object newExtensionValue(byte type, @NonNull byte[] data) {
+        if (JACKSON_AVAILABLE) {
+            return JacksonHelper.newExtensionType(type, data);
+        }
+        return ValueFactory.newExtension(type, data);
+    }
+
+}
@@ -8,10 +8,7 @@
 
 package org.saltyrtc.client.helpers;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.msgpack.core.MessagePackException;
 import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.ValidationError;
 import org.saltyrtc.client.messages.Message;
@@ -31,17 +28,35 @@ import org.saltyrtc.client.messages.s2c.NewResponder;
 import org.saltyrtc.client.messages.s2c.ResponderServerAuth;
 import org.saltyrtc.client.messages.s2c.SendError;
 import org.saltyrtc.client.messages.s2c.ServerHello;
+import org.saltyrtc.client.signaling.CloseCode;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Read msgpack bytes, create corresponding message.
+ *
+ * The fields are decoded straight from the MessagePack data into the message. Only the
+ * fields known for the message type are decoded, all others are skipped.
  */
 public class MessageReader {
 
+    private static final int COOKIE_LENGTH = 16;
+    private static final int SIGNED_KEYS_LENGTH = NaCl.PUBLICKEYBYTES * 2 + NaCl.BOXOVERHEAD;
+    private static final List<Integer> DROP_RESPONDER_REASONS;
+    static {
+        final List<Integer> reasons = new ArrayList<>();
+        for (int reason : CloseCode.CLOSE_CODES_DROP_RESPONDER) {
+            reasons.add(reason);
+        }
+        DROP_RESPONDER_REASONS = Collections.unmodifiableList(reasons);
+    }
+
     /**
      * Read MessagePack bytes, return a Message subclass instance.
      * @param bytes Messagepack bytes.
@@ -50,80 +65,306 @@ public class MessageReader {
      * @throws ValidationError Thrown if message can be deserialized but is invalid.
      */
     public static Message read(byte[] bytes) throws SerializationError, ValidationError {
-        return MessageReader.read(bytes, new ArrayList<String>());
+        return MessageReader.read(bytes, MessageTypeRegistry.CORE);
     }
 
     /**
      * Read MessagePack bytes, return a Message subclass instance.
+     *
      * @param bytes Messagepack bytes.
      * @param taskTypes List of message types supported by task.
      * @return Message subclass instance.
      * @throws SerializationError Thrown if deserialization fails.
      * @throws ValidationError Thrown if message can be deserialized but is invalid.
+     * @deprecated This creates a new registry on every call. Use
+     *     {@link #read(byte[], MessageTypeRegistry)} with a registry that is kept.
      */
+    @Deprecated
     public static Message read(byte[] bytes, List<String> taskTypes) throws SerializationError, ValidationError {
-        // Unpack data into map
-        ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-        Map<String, Object> map;
-        try {
-            map = objectMapper.readValue(bytes, new TypeReference<Map<String, Object>>() {});
-        } catch (IOException e) {
-            throw new SerializationError("Deserialization failed", e);
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        for (String type : taskTypes) {
+            if (!registry.contains(type)) {
+                registry.register(type);
+            }
         }
+        return MessageReader.read(bytes, registry);
+    }
 
-        // Get type value
-        if (!map.containsKey("type")) {
-            throw new SerializationError("Message does not contain a type field");
-        }
-        Object typeObj = map.get("type");
-        if (!(typeObj instanceof String)) {
-            throw new SerializationError("Message type must be a string");
+    /**
+     * Read MessagePack bytes, return a Message subclass instance.
+     *
+     * Task messages are decoded with the decoder registered for their type, if any.
+     *
+     * @param bytes Messagepack bytes.
+     * @param registry The core and task message types.
+     * @return Message subclass instance.
+     * @throws SerializationError Thrown if deserialization fails.
+     * @throws ValidationError Thrown if message can be deserialized but is invalid.
+     */
+    public static Message read(byte[] bytes, MessageTypeRegistry registry) throws SerializationError, ValidationError {
+        final MessageFieldReader reader = new MessageFieldReader(bytes);
+        try {
+            return MessageReader.read(reader, registry);
+        } catch (IOException | MessagePackException e) {
+            throw new SerializationError("Deserialization failed", e);
         }
-        String type = (String)typeObj;
+    }
 
+    private static Message read(MessageFieldReader reader, MessageTypeRegistry registry)
+            throws SerializationError, ValidationError, IOException {
         // Dispatch message instantiation
+        final MessageTypeRegistry.Entry entry = reader.readType(registry);
+        final String type = entry.type;
+        if (!entry.core) {
+            if (entry.codec != null) {
+                return entry.codec.read(new TaskMessageFields(reader));
+            }
+            return MessageTypeRegistry.decode(entry, readTaskMessage(reader, type));
+        }
         switch (type) {
             case "server-hello":
-                return new ServerHello(map);
+                return new ServerHello(readKey(reader, NaCl.PUBLICKEYBYTES));
             case "client-hello":
-                return new ClientHello(map);
+                return new ClientHello(readKey(reader, NaCl.PUBLICKEYBYTES));
             case "server-auth":
-                if (map.containsKey("initiator_connected")) {
-                    return new ResponderServerAuth(map);
-                } else if (map.containsKey("responders")) {
-                    return new InitiatorServerAuth(map);
-                }
-                throw new ValidationError("Invalid server-auth message");
+                return readServerAuth(reader);
             case "client-auth":
-                return new ClientAuth(map);
+                return readClientAuth(reader);
             case "new-initiator":
-                return new NewInitiator(map);
+                while (reader.next()) {
+                    reader.skip();
+                }
+                return new NewInitiator();
             case "new-responder":
-                return new NewResponder(map);
+                return readNewResponder(reader);
             case "drop-responder":
-                return new DropResponder(map);
+                return readDropResponder(reader);
             case "send-error":
-                return new SendError(map);
+                return readSendError(reader);
             case "token":
-                return new Token(map);
+                return new Token(readKey(reader, NaCl.SYMMKEYBYTES));
             case "key":
-                return new Key(map);
+                return new Key(readKey(reader, NaCl.PUBLICKEYBYTES));
             case "auth":
-                if (map.containsKey("task")) {
-                    return new InitiatorAuth(map);
-                } else if (map.containsKey("tasks")) {
-                    return new ResponderAuth(map);
-                }
-                throw new ValidationError("Invalid auth message");
+                return readAuth(reader);
             case "close":
-                return new Close(map);
+                return readClose(reader);
             case "application":
-                return new Application(map);
+                return readApplication(reader);
             default:
-                if (taskTypes.contains(type)) {
-                    return new TaskMessage(type, map);
-                }
                 throw new ValidationError("Unknown message type: " + type);
         }
     }
+
+    /**
+     * Read the `key` field of server-hello, client-hello, token and key messages.
+     */
+    private static byte[] readKey(MessageFieldReader reader, int length)
+            throws SerializationError, ValidationError, IOException {
+        byte[] key = null;
+        while (reader.next()) {
+            if ("key".equals(reader.name())) {
+                key = reader.readByteArray(length, "Key");
+            } else {
+                reader.skip();
+            }
+        }
+        return ValidationHelper.validateByteArray(key, length, "Key");
+    }
+
+    private static Message readServerAuth(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        byte[] yourCookie = null;
+        byte[] signedKeys = null;
+        Object initiatorConnected = null;
+        boolean hasInitiatorConnected = false;
+        Object responders = null;
+        boolean hasResponders = false;
+        while (reader.next()) {
+            switch (reader.name()) {
+                case "your_cookie":
+                    yourCookie = reader.readByteArray(COOKIE_LENGTH, "your_cookie");
+                    break;
+                case "signed_keys":
+                    signedKeys = reader.readNullableByteArray(SIGNED_KEYS_LENGTH, "signed_keys");
+                    break;
+                case "initiator_connected":
+                    initiatorConnected = reader.readValue();
+                    hasInitiatorConnected = true;
+                    break;
+                case "responders":
+                    responders = reader.readValue();
+                    hasResponders = true;
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        yourCookie = ValidationHelper.validateByteArray(yourCookie, COOKIE_LENGTH, "your_cookie");
+        if (hasInitiatorConnected) {
+            return new ResponderServerAuth(yourCookie, signedKeys,
+                ValidationHelper.validateBoolean(initiatorConnected, "initiator_connected"));
+        } else if (hasResponders) {
+            return new InitiatorServerAuth(yourCookie, signedKeys,
+                ValidationHelper.<Integer>validateTypedList(responders, Integer.class, "responders"));
+        }
+        throw new ValidationError("Invalid server-auth message");
+    }
+
+    private static ClientAuth readClientAuth(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        byte[] yourCookie = null;
+        Object subprotocols = null;
+        Object pingInterval = null;
+        while (reader.next()) {
+            switch (reader.name()) {
+                case "your_cookie":
+                    yourCookie = reader.readByteArray(COOKIE_LENGTH, "your_cookie");
+                    break;
+                case "subprotocols":
+                    subprotocols = reader.readValue();
+                    break;
+                case "ping_interval":
+                    pingInterval = reader.readValue();
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return new ClientAuth(
+            ValidationHelper.validateByteArray(yourCookie, COOKIE_LENGTH, "your_cookie"),
+            ValidationHelper.<String>validateTypedList(subprotocols, String.class, "subprotocols"),
+            ValidationHelper.validateInteger(pingInterval, 0, Integer.MAX_VALUE, "ping_interval"));
+    }
+
+    private static NewResponder readNewResponder(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        Object id = null;
+        while (reader.next()) {
+            if ("id".equals(reader.name())) {
+                id = reader.readValue();
+            } else {
+                reader.skip();
+            }
+        }
+        return new NewResponder(ValidationHelper.validateInteger(id, 0x00, 0xff, "id"));
+    }
+
+    private static DropResponder readDropResponder(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        Object id = null;
+        Integer reason = null;
+        while (reader.next()) {
+            switch (reader.name()) {
+                case "id":
+                    id = reader.readValue();
+                    break;
+                case "reason":
+                    reason = ValidationHelper.validateInteger(reader.readValue(), DROP_RESPONDER_REASONS, "reason");
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return new DropResponder(ValidationHelper.validateInteger(id, 0x00, 0xff, "id"), reason);
+    }
+
+    private static SendError readSendError(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        byte[] id = null;
+        while (reader.next()) {
+            if ("id".equals(reader.name())) {
+                id = reader.readByteArray(32, "Id");
+            } else {
+                reader.skip();
+            }
+        }
+        return new SendError(ValidationHelper.validateByteArray(id, 32, "Id"));
+    }
+
+    private static Message readAuth(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        byte[] yourCookie = null;
+        Object task = null;
+        boolean hasTask = false;
+        Object tasks = null;
+        boolean hasTasks = false;
+        Object data = null;
+        while (reader.next()) {
+            switch (reader.name()) {
+                case "your_cookie":
+                    yourCookie = reader.readByteArray(COOKIE_LENGTH, "Cookie");
+                    break;
+                case "task":
+                    task = reader.readValue();
+                    hasTask = true;
+                    break;
+                case "tasks":
+                    tasks = reader.readValue();
+                    hasTasks = true;
+                    break;
+                case "data":
+                    data = reader.readValue();
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        yourCookie = ValidationHelper.validateByteArray(yourCookie, COOKIE_LENGTH, "Cookie");
+        if (hasTask) {
+            return new InitiatorAuth(yourCookie,
+                ValidationHelper.validateString(task, "task"),
+                ValidationHelper.validateStringMapMap(data, "data"));
+        } else if (hasTasks) {
+            return new ResponderAuth(yourCookie,
+                ValidationHelper.<String>validateTypedList(tasks, String.class, "tasks"),
+                ValidationHelper.validateStringMapMap(data, "data"));
+        }
+        throw new ValidationError("Invalid auth message");
+    }
+
+    private static Close readClose(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        Object reason = null;
+        while (reader.next()) {
+            if ("reason".equals(reader.name())) {
+                reason = reader.readValue();
+            } else {
+                reader.skip();
+            }
+        }
+        return new Close(ValidationHelper.validateCloseCode(reason, false, "reason"));
+    }
+
+    private static Application readApplication(MessageFieldReader reader)
+            throws SerializationError, ValidationError, IOException {
+        EncodedValue data = null;
+        boolean hasData = false;
+        while (reader.next()) {
+            if ("data".equals(reader.name())) {
+                // Only validated here, decoded when the data is accessed
+                data = reader.readEncodedValue();
+                hasData = true;
+            } else {
+                reader.skip();
+            }
+        }
+        if (!hasData) {
+            throw new ValidationError("Message is missing the 'data' key");
+        }
+        return new Application(data);
+    }
+
+    /**
+     * Task messages are opaque, so all fields are decoded.
+     */
+    private static TaskMessage readTaskMessage(MessageFieldReader reader, String type)
+            throws SerializationError, IOException {
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put("type", type);
+        while (reader.next()) {
+            data.put(reader.name(), reader.readValue());
+        }
+        return new TaskMessage(type, data);
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.saltyrtc.client.annotations.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Builds the constant parts of a message, packed once.
+ *
+ * Messages keep the result in a static field and write it with `MessagePacker.writePayload`,
+ * so map headers, keys and the type are not encoded again for every message:
+ *
+ *     private static final byte[] PREFIX = new MessageTemplate(2)
+ *         .string("type").string(TYPE)
+ *         .string("key")
+ *         .toByteArray();
+ */
+public final class MessageTemplate {
+
+    @NonNull private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+
+    /**
+     * Start a template without a map header.
+     */
+    public MessageTemplate() {
+    }
+
+    /**
+     * Start a template with the header of a map with `size` entries.
+     */
+    public MessageTemplate(int size) {
+        try {
+            this.packer.packMapHeader(size);
+        } catch (IOException e) {
+            // Cannot happen when writing to a buffer
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    public MessageTemplate string(@NonNull String value) {
+        try {
+            this.packer.packString(value);
+        } catch (IOException e) {
+            // Cannot happen when writing to a buffer
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Return the packed template.
+     */
+    @NonNull
+    public byte[] toByteArray() {
+        return this.packer.toByteArray();
+    }
+
+}
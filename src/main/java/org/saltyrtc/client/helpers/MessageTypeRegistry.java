@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.messages.c2c.TaskMessage;
+import org.saltyrtc.client.messages.c2c.TaskMessageCodec;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The message types known when reading a message.
+ *
+ * The core SaltyRTC message types are always registered. Tasks register their message
+ * types, optionally with a decoder that turns the {@link TaskMessage} into a typed message
+ * and a handler that receives it instead of {@link org.saltyrtc.client.tasks.Task#onTaskMessage}.
+ * Types registered with a {@link TaskMessageCodec} are read field by field, without
+ * decoding the message into a map first.
+ *
+ * The {@link MessageReader} looks up the type of a message by its raw UTF-8 bytes, so no
+ * string is decoded for known types.
+ *
+ * Registering is synchronized and replaces an immutable lookup table, lookups do not lock.
+ */
+public class MessageTypeRegistry {
+
+    /**
+     * Decode a task message into a typed message.
+     */
+    public interface Decoder<T extends TaskMessage> {
+        /**
+         * @param message The message with all fields decoded into a map.
+         * @throws ValidationError if the message is invalid.
+         */
+        @NonNull
+        T decode(@NonNull TaskMessage message) throws ValidationError;
+    }
+
+    /**
+     * Handle a task message of a specific type.
+     */
+    public interface Handler<T extends TaskMessage> {
+        void handle(@NonNull T message);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] CORE_TYPES = {
+        "server-hello", "client-hello", "server-auth", "client-auth", "new-initiator", "new-responder",
+        "drop-responder", "send-error", "token", "key", "auth", "close", "application",
+    };
+
+    /**
+     * A registry with just the core message types.
+     */
+    static final MessageTypeRegistry CORE = new MessageTypeRegistry();
+
+    /**
+     * A registered message type.
+     */
+    static final class Entry {
+        @NonNull final String type;
+        @NonNull final byte[] bytes;
+        final int hash;
+        final boolean core;
+        @Nullable final Decoder<?> decoder;
+        @Nullable final TaskMessageCodec<?> codec;
+        @Nullable final Handler<?> handler;
+
+        Entry(@NonNull String type, boolean core, @Nullable Decoder<?> decoder,
+              @Nullable TaskMessageCodec<?> codec, @Nullable Handler<?> handler) {
+            this.type = type;
+            this.bytes = type.getBytes(UTF_8);
+            this.hash = hash(this.bytes, 0, this.bytes.length);
+            this.core = core;
+            this.decoder = decoder;
+            this.codec = codec;
+            this.handler = handler;
+        }
+
+        boolean matches(@NonNull byte[] bytes, int offset, int length, int hash) {
+            if (this.hash != hash || this.bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (this.bytes[i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Immutable lookup table, replaced on every registration.
+     */
+    private static final class Table {
+        @NonNull final Entry[] slots;
+        @NonNull final Map<String, Entry> byType;
+
+        Table(@NonNull Map<String, Entry> byType) {
+            this.byType = byType;
+            // Keep the load factor at or below 0.5
+            int size = 2;
+            while (size < byType.size() * 2) {
+                size <<= 1;
+            }
+            this.slots = new Entry[size];
+            for (Entry entry : byType.values()) {
+                int slot = entry.hash & (size - 1);
+                while (this.slots[slot] != null) {
+                    slot = (slot + 1) & (size - 1);
+                }
+                this.slots[slot] = entry;
+            }
+        }
+    }
+
+    @NonNull private volatile Table table;
+
+    /**
+     * Create a registry containing the core message types.
+     */
+    public MessageTypeRegistry() {
+        final Map<String, Entry> entries = new HashMap<>();
+        for (String type : CORE_TYPES) {
+            entries.put(type, new Entry(type, true, null, null, null));
+        }
+        this.table = new Table(entries);
+    }
+
+    /**
+     * Register a task message type. Messages of this type are passed to the task.
+     *
+     * @throws IllegalArgumentException if the type has already been registered.
+     */
+    public void register(@NonNull String type) {
+        this.add(new Entry(type, false, null, null, null));
+    }
+
+    /**
+     * Register a task message type with a decoder and an optional handler.
+     *
+     * Messages of this type are decoded into `T`. If a handler is set, they are passed to the
+     * handler instead of the task.
+     *
+     * @throws IllegalArgumentException if the type has already been registered.
+     */
+    public <T extends TaskMessage> void register(@NonNull String type, @NonNull Decoder<T> decoder,
+                                                 @Nullable Handler<? super T> handler) {
+        this.add(new Entry(type, false, decoder, null, handler));
+    }
+
+    /**
+     * Register a typed task message with its codec and an optional handler.
+     *
+     * Messages of this type are read with the codec. If a handler is set, they are passed
+     * to the handler instead of the task.
+     *
+     * @throws IllegalArgumentException if the type has already been registered.
+     */
+    public <T extends TaskMessage> void register(@NonNull TaskMessageCodec<T> codec,
+                                                 @Nullable Handler<? super T> handler) {
+        this.add(new Entry(codec.getType(), false, null, codec, handler));
+    }
+
+    private synchronized void add(@NonNull Entry entry) {
+        final Table current = this.table;
+        if (current.byType.containsKey(entry.type)) {
+            throw new IllegalArgumentException("Message type " + entry.type + " has already been registered");
+        }
+        final Map<String, Entry> entries = new HashMap<>(current.byType);
+        entries.put(entry.type, entry);
+        this.table = new Table(entries);
+    }
+
+    /**
+     * Return whether the message type has been registered or is a core message type.
+     */
+    public boolean contains(@NonNull String type) {
+        return this.table.byType.containsKey(type);
+    }
+
+    /**
+     * Pass the task message to the handler registered for its type.
+     *
+     * @return false if no handler has been registered for the type.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(@NonNull TaskMessage message) {
+        final Entry entry = this.table.byType.get(message.getType());
+        if (entry == null || entry.handler == null) {
+            return false;
+        }
+        ((Handler<TaskMessage>) entry.handler).handle(message);
+        return true;
+    }
+
+    /**
+     * Decode the task message with the decoder registered for the entry, if any.
+     */
+    @NonNull
+    static TaskMessage decode(@NonNull Entry entry, @NonNull TaskMessage message) throws ValidationError {
+        if (entry.decoder == null) {
+            return message;
+        }
+        return entry.decoder.decode(message);
+    }
+
+    /**
+     * Look up the message type from its UTF-8 bytes.
+     *
+     * @return The entry, or null if the type is unknown.
+     */
+    @Nullable
+    Entry lookup(@NonNull byte[] bytes, int offset, int length) {
+        final Entry[] slots = this.table.slots;
+        final int mask = slots.length - 1;
+        final int hash = hash(bytes, offset, length);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final Entry entry = slots[slot];
+            if (entry == null || entry.matches(bytes, offset, length, hash)) {
+                return entry;
+            }
+        }
+    }
+
+    private static int hash(@NonNull byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // Spread the bits, since the table is indexed by the low bits
+        return hash ^ (hash >>> 16);
+    }
+}
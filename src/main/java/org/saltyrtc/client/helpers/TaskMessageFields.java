@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.helpers;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * The fields of a task message that is being read, for {@link org.saltyrtc.client.messages.c2c.TaskMessageCodec}s.
+ *
+ * Keys are matched against pre-encoded {@link Names} and values are read directly as
+ * primitives, so reading a message does not create a map or box any values.
+ *
+ * The typed read methods throw a {@link ValidationError} if the value has a different type,
+ * use {@link #readNil()} first for nullable fields.
+ */
+public final class TaskMessageFields {
+
+    /**
+     * Returned by {@link #next(Names)} for keys that are not in the names.
+     */
+    public static final int UNKNOWN_FIELD = MessageFieldReader.UNKNOWN_FIELD;
+
+    /**
+     * Returned by {@link #next(Names)} after the last field.
+     */
+    public static final int NO_MORE_FIELDS = MessageFieldReader.NO_MORE_FIELDS;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The UTF-8 encoded keys of the fields of a message type. Create it once per type.
+     */
+    public static final class Names {
+        @NonNull final byte[][] names;
+
+        private Names(@NonNull String[] names) {
+            this.names = new byte[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                this.names[i] = names[i].getBytes(UTF_8);
+            }
+        }
+
+        @NonNull
+        public static Names of(@NonNull String... names) {
+            return new Names(names);
+        }
+    }
+
+    @NonNull private final MessageFieldReader reader;
+
+    TaskMessageFields(@NonNull MessageFieldReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advance to the next field. Its value must be read or skipped before calling this again.
+     *
+     * @return The index of the key in the names, {@link #UNKNOWN_FIELD} or {@link #NO_MORE_FIELDS}.
+     */
+    public int next(@NonNull Names names) throws SerializationError, IOException {
+        return this.reader.nextField(names.names);
+    }
+
+    /**
+     * Skip the value of the current field.
+     */
+    public void skip() throws IOException {
+        this.reader.skip();
+    }
+
+    /**
+     * Consume a nil value.
+     *
+     * @return false if the value is not nil. It has not been consumed then.
+     */
+    public boolean readNil() throws IOException {
+        return this.reader.readNil();
+    }
+
+    public boolean readBoolean(@NonNull String name) throws ValidationError, IOException {
+        return this.reader.readBoolean(name);
+    }
+
+    public int readInt(@NonNull String name) throws ValidationError, IOException {
+        return this.reader.readInt(name);
+    }
+
+    public long readLong(@NonNull String name) throws ValidationError, IOException {
+        return this.reader.readLong(name);
+    }
+
+    /**
+     * Read a float or an integer.
+     */
+    public double readDouble(@NonNull String name) throws ValidationError, IOException {
+        return this.reader.readDouble(name);
+    }
+
+    @NonNull
+    public String readString(@NonNull String name) throws SerializationError, ValidationError, IOException {
+        return this.reader.readString(name);
+    }
+
+    @NonNull
+    public byte[] readBinary(@NonNull String name) throws SerializationError, ValidationError, IOException {
+        return this.reader.readBinary(name);
+    }
+
+    /**
+     * Read any value. Integers are returned as `Integer`, `Long` or `BigInteger`,
+     * arrays as lists and maps as maps with string keys.
+     */
+    @Nullable
+    public Object readValue() throws SerializationError, IOException {
+        return this.reader.readValue();
+    }
+
+    /**
+     * Return the MessagePack encoding of a string, so that constant keys can be written
+     * with `MessagePacker.writePayload` without encoding them every time.
+     */
+    @NonNull
+    public static byte[] encodeString(@NonNull String value) {
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        try {
+            packer.packString(value);
+            packer.close();
+        } catch (IOException e) {
+            // Cannot happen when writing to a buffer
+            throw new IllegalStateException(e);
+        }
+        return packer.toByteArray();
+    }
+
+}
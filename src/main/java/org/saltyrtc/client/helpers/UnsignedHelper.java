@@ -57,4 +57,41 @@ public class UnsignedHelper {
         return (int) val;
     }
 
+    /**
+     * Read an unsigned big endian 16 bit integer from `buf` at `offset`.
+     */
+    public static int readUnsignedShort(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF) << 8) | (buf[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Read an unsigned big endian 32 bit integer from `buf` at `offset`.
+     */
+    public static long readUnsignedInt(byte[] buf, int offset) {
+        return (((long) (buf[offset] & 0xFF)) << 24)
+            | ((buf[offset + 1] & 0xFF) << 16)
+            | ((buf[offset + 2] & 0xFF) << 8)
+            | (buf[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Write an unsigned 16 bit integer to `buf` at `offset` in big endian byte order.
+     */
+    public static void writeUnsignedShort(byte[] buf, int offset, int val) {
+        final short s = getUnsignedShort(val);
+        buf[offset] = (byte) (s >>> 8);
+        buf[offset + 1] = (byte) s;
+    }
+
+    /**
+     * Write an unsigned 32 bit integer to `buf` at `offset` in big endian byte order.
+     */
+    public static void writeUnsignedInt(byte[] buf, int offset, long val) {
+        final int i = getUnsignedInt(val);
+        buf[offset] = (byte) (i >>> 24);
+        buf[offset + 1] = (byte) (i >>> 16);
+        buf[offset + 2] = (byte) (i >>> 8);
+        buf[offset + 3] = (byte) i;
+    }
+
 }
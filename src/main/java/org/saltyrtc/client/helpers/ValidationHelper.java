@@ -103,7 +103,8 @@ public class ValidationHelper {
 
     public static String validateString(Object value, String name) throws ValidationError {
         if (!(value instanceof String)) {
-            throw new ValidationError(name + " must be a String, not " + value.getClass().getName());
+            final String actual = value == null ? "null" : value.getClass().getName();
+            throw new ValidationError(name + " must be a String, not " + actual);
         }
         return (String) value;
     }
@@ -8,11 +8,15 @@
 
 package org.saltyrtc.client.keystore;
 
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoProviders;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
 import org.saltyrtc.client.exceptions.InvalidKeyException;
-import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 
 /**
@@ -26,19 +30,36 @@ public class AuthToken {
     private static final Logger LOG = org.slf4j.LoggerFactory.getLogger("SaltyRTC.AuthToken");
 
     // Keys
-    private byte[] authToken = new byte[NaCl.SYMMKEYBYTES];
+    private byte[] authToken = new byte[CryptoProvider.SYMMKEYBYTES];
+
+    // Reusing the instance keeps the per-cookie subkeys cached
+    private final CryptoInstance crypto;
 
     public AuthToken() {
+        this(CryptoProviders.getDefault());
+    }
+
+    public AuthToken(@NonNull CryptoProvider cryptoProvider) {
         final SecureRandom random = new SecureRandom();
         random.nextBytes(this.authToken);
+        try {
+            this.crypto = cryptoProvider.getSymmetricInstance(this.authToken);
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
         LOG.debug("Generated random auth token");
     }
 
     public AuthToken(byte[] authToken) throws InvalidKeyException {
-        if (authToken.length != NaCl.SYMMKEYBYTES) {
-            throw new InvalidKeyException("Auth token must be " + NaCl.SYMMKEYBYTES + " bytes long.");
+        this(CryptoProviders.getDefault(), authToken);
+    }
+
+    public AuthToken(@NonNull CryptoProvider cryptoProvider, byte[] authToken) throws InvalidKeyException {
+        if (authToken.length != CryptoProvider.SYMMKEYBYTES) {
+            throw new InvalidKeyException("Auth token must be " + CryptoProvider.SYMMKEYBYTES + " bytes long.");
         }
         this.authToken = authToken;
+        this.crypto = cryptoProvider.getSymmetricInstance(authToken);
         LOG.debug("Initialized auth token");
     }
 
@@ -55,13 +76,7 @@ public class AuthToken {
      * @throws CryptoFailedException Encryption failed.
      */
     public Box encrypt(byte[] data, byte[] nonce) throws CryptoFailedException {
-        final byte[] encrypted;
-        try {
-            encrypted = NaCl.symmetricEncryptData(data, this.authToken, nonce);
-        } catch (Error e) {
-            throw new CryptoFailedException(e.getMessage());
-        }
-        return new Box(nonce, encrypted);
+        return new Box(nonce, this.crypto.encrypt(data, nonce));
     }
 
     /**
@@ -72,16 +87,76 @@ public class AuthToken {
      * @throws CryptoFailedException Decryption failed.
      */
     public byte[] decrypt(Box box) throws CryptoFailedException {
-        final byte[] decrypted;
-        try {
-            decrypted = NaCl.symmetricDecryptData(box.getData(), this.authToken, box.getNonce());
-        } catch (Error e) {
-            throw new CryptoFailedException(e.getMessage());
+        return this.crypto.decrypt(box.getData(), box.getNonce());
+    }
+
+    /**
+     * Decrypt data using the auth token, without copying the box out of the frame.
+     *
+     * @param box View of the NaCl box.
+     * @return The decrypted data.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public byte[] decrypt(BoxView box) throws CryptoFailedException {
+        return box.decrypt(this.crypto);
+    }
+
+    /**
+     * Encrypt data using the auth token in place, without allocating.
+     *
+     * See {@link SharedKeyStore#encryptInPlace(byte[], int, int)} for the buffer layout.
+     *
+     * @return The length of the box.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public int encryptInPlace(byte[] buffer, int offset, int length) throws CryptoFailedException {
+        this.crypto.encrypt(buffer, offset + Box.NONCE_LENGTH, buffer, offset + Box.PLAINTEXT_OFFSET,
+            length, buffer, offset);
+        return length + Box.PLAINTEXT_OFFSET;
+    }
+
+    /**
+     * Encrypt data using the auth token in place, without allocating.
+     *
+     * See {@link SharedKeyStore#encryptInPlace(ByteBuffer)} for the buffer layout.
+     *
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public void encryptInPlace(ByteBuffer buffer) throws CryptoFailedException {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer must be backed by an accessible array");
         }
-        if (decrypted == null) {
-            throw new CryptoFailedException("Decrypted data is null");
+        this.encryptInPlace(buffer.array(), buffer.arrayOffset() + buffer.position(),
+            buffer.remaining() - Box.PLAINTEXT_OFFSET);
+    }
+
+    /**
+     * Decrypt data using the auth token in place, without allocating.
+     *
+     * See {@link SharedKeyStore#decryptInPlace(byte[], int, int)} for the buffer layout.
+     *
+     * @return The length of the plaintext.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public int decryptInPlace(byte[] buffer, int offset, int length) throws CryptoFailedException {
+        this.crypto.decrypt(buffer, offset + Box.PLAINTEXT_OFFSET, buffer,
+            offset + Box.NONCE_LENGTH, length - Box.NONCE_LENGTH, buffer, offset);
+        return length - Box.PLAINTEXT_OFFSET;
+    }
+
+    /**
+     * Decrypt data using the auth token in place, without allocating.
+     *
+     * See {@link SharedKeyStore#decryptInPlace(ByteBuffer)} for the buffer layout.
+     *
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public void decryptInPlace(ByteBuffer buffer) throws CryptoFailedException {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer must be backed by an accessible array");
         }
-        return decrypted;
+        this.decryptInPlace(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.position() + Box.PLAINTEXT_OFFSET);
     }
 
 }
@@ -8,13 +8,37 @@
 
 package org.saltyrtc.client.keystore;
 
+import org.saltyrtc.client.crypto.CryptoProvider;
+
 import java.nio.ByteBuffer;
 
 
 /**
  * A NaCl box. It holds encrypted data as well as the corresponding nonce.
+ *
+ * When encrypting or decrypting in place, a box is laid out as follows:
+ *
+ *     | nonce (24 bytes) | authenticator (16 bytes) | encrypted data |
+ *
+ * The plaintext is located at {@link #PLAINTEXT_OFFSET}.
  */
 public class Box {
+    /**
+     * Length of the nonce.
+     */
+    public static final int NONCE_LENGTH = CryptoProvider.NONCEBYTES;
+
+    /**
+     * Number of bytes added to the data by encryption.
+     */
+    public static final int OVERHEAD = CryptoProvider.BOXOVERHEAD;
+
+    /**
+     * Offset of the plaintext relative to the start of the box when encrypting
+     * or decrypting in place.
+     */
+    public static final int PLAINTEXT_OFFSET = NONCE_LENGTH + OVERHEAD;
+
     private final byte[] nonce;
     private final byte[] data;
 
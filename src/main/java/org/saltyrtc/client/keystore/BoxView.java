@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.keystore;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+
+/**
+ * A read-only view of a NaCl box inside a received frame.
+ *
+ * Unlike {@link Box}, nonce and data are not copied out of the frame. They are passed to
+ * the crypto backend directly when decrypting, so the only allocation is the plaintext.
+ * A view can be reused for the next frame by calling {@link #wrap(byte[], int, int)} again.
+ */
+public final class BoxView {
+
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    /**
+     * Create an empty view. It must be wrapped around a box before use.
+     */
+    public BoxView() {
+    }
+
+    /**
+     * Create a view of the entire buffer.
+     */
+    public BoxView(@NonNull byte[] buffer) {
+        this.wrap(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Point this view to the `length` bytes of the box at `offset` in `buffer`.
+     *
+     * @throws IllegalArgumentException if the range is out of bounds or too short for a nonce.
+     */
+    @NonNull
+    public BoxView wrap(@NonNull byte[] buffer, int offset, int length) {
+        if (offset < 0 || length < Box.NONCE_LENGTH || buffer.length - offset < length) {
+            throw new IllegalArgumentException("Buffer must contain a box of at least " + Box.NONCE_LENGTH +
+                " bytes at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Return the underlying array.
+     */
+    @NonNull
+    public byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Return the offset of the nonce in the underlying array.
+     */
+    public int getNonceOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Return the offset of the data in the underlying array.
+     */
+    public int getDataOffset() {
+        return this.offset + Box.NONCE_LENGTH;
+    }
+
+    /**
+     * Return the length of the data.
+     */
+    public int getDataLength() {
+        return this.length - Box.NONCE_LENGTH;
+    }
+
+    /**
+     * Return the size (in bytes) of the box.
+     */
+    public int getSize() {
+        return this.length;
+    }
+
+    /**
+     * Return a copy of the data.
+     */
+    @NonNull
+    public byte[] copyData() {
+        final byte[] data = new byte[this.getDataLength()];
+        System.arraycopy(this.buffer, this.getDataOffset(), data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Return a copy of this box as {@link Box}.
+     */
+    @NonNull
+    public Box toBox() {
+        final byte[] nonce = new byte[Box.NONCE_LENGTH];
+        System.arraycopy(this.buffer, this.offset, nonce, 0, Box.NONCE_LENGTH);
+        return new Box(nonce, this.copyData());
+    }
+
+    /**
+     * Decrypt the data into a new array. The frame is not modified.
+     *
+     * @throws CryptoFailedException Decryption failed.
+     */
+    @NonNull
+    byte[] decrypt(@NonNull CryptoInstance crypto) throws CryptoFailedException {
+        final int dataLength = this.getDataLength();
+        if (dataLength < Box.OVERHEAD) {
+            throw new CryptoFailedException("Box is too short");
+        }
+        final byte[] plaintext = new byte[dataLength - Box.OVERHEAD];
+        crypto.decrypt(plaintext, 0, this.buffer, this.getDataOffset(), dataLength, this.buffer, this.offset);
+        return plaintext;
+    }
+
+}
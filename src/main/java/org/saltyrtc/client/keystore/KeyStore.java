@@ -8,32 +8,50 @@
 
 package org.saltyrtc.client.keystore;
 
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoProviders;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
 import org.saltyrtc.client.exceptions.InvalidKeyException;
 import org.saltyrtc.client.helpers.HexHelper;
 import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
+
 /**
  * Handle encrypting and decrypting messages for the peers.
  *
- * This class uses NaCl asymmetric key encryption.
+ * This class uses NaCl asymmetric key encryption. Key generation and key agreement
+ * are done by a {@link CryptoProvider}. Constructors without a provider argument use
+ * the default provider returned by {@link CryptoProviders#getDefault()}.
  */
 public class KeyStore {
 
     // Logger
     private static final Logger LOG = org.slf4j.LoggerFactory.getLogger("SaltyRTC.KeyStore");
 
+    // Crypto backend
+    @NonNull private final CryptoProvider cryptoProvider;
+
     // Keys
-    private byte[] secretKey = new byte[NaCl.SECRETKEYBYTES];
-    private byte[] publicKey = new byte[NaCl.PUBLICKEYBYTES];
+    private byte[] secretKey = new byte[CryptoProvider.SECRETKEYBYTES];
+    private byte[] publicKey = new byte[CryptoProvider.PUBLICKEYBYTES];
 
     /**
      * Create a new key store.
      */
     public KeyStore() {
+        this(CryptoProviders.getDefault());
+    }
+
+    /**
+     * Create a new key store using the specified crypto provider.
+     */
+    public KeyStore(@NonNull CryptoProvider cryptoProvider) {
+        this.cryptoProvider = cryptoProvider;
         LOG.debug("Generating new key pair");
-        NaCl.genkeypair(this.publicKey, this.secretKey);
+        cryptoProvider.generateKeyPair(this.publicKey, this.secretKey);
         LOG.debug("Secret key: " + NaCl.asHex(this.secretKey));
         LOG.debug("Public key: " + NaCl.asHex(this.publicKey));
     }
@@ -43,9 +61,24 @@ public class KeyStore {
      * The public key will automatically be derived.
      */
     public KeyStore(byte[] secretKey) {
+        this(CryptoProviders.getDefault(), secretKey);
+    }
+
+    /**
+     * Create a new key store from an existing secret key using the specified crypto provider.
+     * The public key will automatically be derived.
+     *
+     * @throws IllegalArgumentException The secret key is invalid.
+     */
+    public KeyStore(@NonNull CryptoProvider cryptoProvider, byte[] secretKey) {
+        this.cryptoProvider = cryptoProvider;
         LOG.debug("Deriving public key from secret key");
         this.secretKey = secretKey;
-        this.publicKey = NaCl.derivePublicKey(secretKey);
+        try {
+            this.publicKey = cryptoProvider.derivePublicKey(secretKey);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
         LOG.debug("Secret key: " + NaCl.asHex(this.secretKey));
         LOG.debug("Public key: " + NaCl.asHex(this.publicKey));
     }
@@ -62,6 +95,14 @@ public class KeyStore {
      * Create a new key store from an existing keypair.
      */
     public KeyStore(byte[] publicKey, byte[] secretKey) {
+        this(CryptoProviders.getDefault(), publicKey, secretKey);
+    }
+
+    /**
+     * Create a new key store from an existing keypair using the specified crypto provider.
+     */
+    public KeyStore(@NonNull CryptoProvider cryptoProvider, byte[] publicKey, byte[] secretKey) {
+        this.cryptoProvider = cryptoProvider;
         LOG.debug("Using existing keypair");
         this.secretKey = secretKey;
         this.publicKey = publicKey;
@@ -77,6 +118,11 @@ public class KeyStore {
              HexHelper.hexStringToByteArray(secretKeyHex));
     }
 
+    @NonNull
+    public CryptoProvider getCryptoProvider() {
+        return this.cryptoProvider;
+    }
+
     public byte[] getPublicKey() {
         return publicKey;
     }
@@ -85,9 +131,26 @@ public class KeyStore {
         return secretKey;
     }
 
+    /**
+     * Precompute the shared key between our secret key and the public key of a peer.
+     *
+     * The returned key store should be kept and reused for all messages exchanged
+     * with that peer, since creating it is expensive. The result is not cached.
+     *
+     * @param otherKey The public key of the peer.
+     * @return The shared key store.
+     * @throws InvalidKeyException One of the keys was invalid.
+     */
+    public SharedKeyStore getSharedKeyStore(byte[] otherKey) throws InvalidKeyException {
+        return new SharedKeyStore(this.cryptoProvider, this.secretKey, otherKey);
+    }
+
     /**
      * Encrypt data for the peer. Return Box.
      *
+     * Note: This precomputes the shared key on every call. Use
+     * {@link #getSharedKeyStore(byte[])} when exchanging multiple messages with a peer.
+     *
      * @param data Bytes to be encrypted.
      * @param nonce The nonce that should be used to encrypt.
      * @param otherKey The public key of the peer.
@@ -96,56 +159,129 @@ public class KeyStore {
      * @throws CryptoFailedException Encryption failed.
      */
     public Box encrypt(byte[] data, byte[] nonce, byte[] otherKey) throws CryptoFailedException, InvalidKeyException {
-        // Create NaCl instance
-        final NaCl nacl;
-        try {
-            nacl = new NaCl(this.secretKey, otherKey);
-        } catch (Error e) {
-            throw new InvalidKeyException(e.toString());
-        }
-
-        // Encrypt
-        final byte[] encrypted;
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
         try {
-            encrypted = nacl.encrypt(data, nonce);
-        } catch (Error e) {
-            throw new CryptoFailedException(e.toString());
-        }
-        if (encrypted == null) {
-            throw new CryptoFailedException("Encrypted data is null");
+            return sharedKeyStore.encrypt(data, nonce);
+        } finally {
+            sharedKeyStore.wipe();
         }
-
-        // Return box
-        return new Box(nonce, encrypted);
     }
 
     /**
      * Decrypt data from the peer. Return contained bytes.
      *
+     * Note: This precomputes the shared key on every call. Use
+     * {@link #getSharedKeyStore(byte[])} when exchanging multiple messages with a peer.
+     *
      * @param box NaCl box.
      * @param otherKey The public key of the peer.
      * @return The decrypted data.
      * @throws CryptoFailedException Decryption failed.
      */
     public byte[] decrypt(Box box, byte[] otherKey) throws CryptoFailedException, InvalidKeyException {
-        // Create NaCl instance
-        final NaCl nacl;
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
         try {
-            nacl = new NaCl(this.secretKey, otherKey);
-        } catch (Error e) {
-            throw new InvalidKeyException(e.toString());
+            return sharedKeyStore.decrypt(box);
+        } finally {
+            sharedKeyStore.wipe();
         }
+    }
 
-        final byte[] decrypted;
+    /**
+     * Decrypt data from the peer without copying the box out of the frame.
+     *
+     * Note: This precomputes the shared key on every call.
+     *
+     * @param box View of the NaCl box.
+     * @param otherKey The public key of the peer.
+     * @return The decrypted data.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public byte[] decrypt(BoxView box, byte[] otherKey) throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
+        try {
+            return sharedKeyStore.decrypt(box);
+        } finally {
+            sharedKeyStore.wipe();
+        }
+    }
+
+    /**
+     * Encrypt data for the peer in place.
+     *
+     * See {@link SharedKeyStore#encryptInPlace(byte[], int, int)} for the buffer layout.
+     * This precomputes the shared key on every call. To avoid all allocations, use a
+     * shared key store obtained from {@link #getSharedKeyStore(byte[])} directly.
+     *
+     * @return The length of the box.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public int encryptInPlace(byte[] buffer, int offset, int length, byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
+        try {
+            return sharedKeyStore.encryptInPlace(buffer, offset, length);
+        } finally {
+            sharedKeyStore.wipe();
+        }
+    }
+
+    /**
+     * Encrypt data for the peer in place.
+     *
+     * See {@link SharedKeyStore#encryptInPlace(ByteBuffer)} for the buffer layout.
+     * This precomputes the shared key on every call.
+     *
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public void encryptInPlace(ByteBuffer buffer, byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
         try {
-            decrypted = nacl.decrypt(box.getData(), box.getNonce());
-        } catch (Error e) {
-            throw new CryptoFailedException(e.toString());
+            sharedKeyStore.encryptInPlace(buffer);
+        } finally {
+            sharedKeyStore.wipe();
         }
-        if (decrypted == null) {
-            throw new CryptoFailedException("Decrypted data is null");
+    }
+
+    /**
+     * Decrypt data from the peer in place.
+     *
+     * See {@link SharedKeyStore#decryptInPlace(byte[], int, int)} for the buffer layout.
+     * This precomputes the shared key on every call.
+     *
+     * @return The length of the plaintext.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public int decryptInPlace(byte[] buffer, int offset, int length, byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
+        try {
+            return sharedKeyStore.decryptInPlace(buffer, offset, length);
+        } finally {
+            sharedKeyStore.wipe();
         }
+    }
 
-        return decrypted;
+    /**
+     * Decrypt data from the peer in place.
+     *
+     * See {@link SharedKeyStore#decryptInPlace(ByteBuffer)} for the buffer layout.
+     * This precomputes the shared key on every call.
+     *
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public void decryptInPlace(ByteBuffer buffer, byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore sharedKeyStore = this.getSharedKeyStore(otherKey);
+        try {
+            sharedKeyStore.decryptInPlace(buffer);
+        } finally {
+            sharedKeyStore.wipe();
+        }
     }
 }
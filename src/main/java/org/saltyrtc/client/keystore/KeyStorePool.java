@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.keystore;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.slf4j.Logger;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of pre-generated key stores.
+ *
+ * Generating a key pair requires a Curve25519 scalar multiplication. The handshake
+ * needs a fresh session key pair for every responder, so the pool generates them
+ * ahead of time on a background executor instead of on the WebSocket thread.
+ *
+ * Once the number of ready key stores drops to the low watermark, the pool is
+ * refilled up to the high watermark. If the pool is empty when a key store is
+ * taken, it is generated synchronously and counted as starvation.
+ *
+ * A pool with a high watermark of 0 is disabled and always generates synchronously.
+ *
+ * This class is thread safe.
+ */
+public class KeyStorePool {
+
+    // Logger
+    private static final Logger LOG = org.slf4j.LoggerFactory.getLogger("SaltyRTC.KeyStorePool");
+
+    // Maximum number of key pairs generated at once during a refill
+    private static final int MAX_BATCH_SIZE = 16;
+
+    @NonNull private final CryptoProvider cryptoProvider;
+    private final int lowWatermark;
+    private final int highWatermark;
+    @NonNull private final BlockingQueue<KeyStore> keyStores = new LinkedBlockingQueue<>();
+
+    // Background refill, only set if the pool is enabled
+    @Nullable private final Executor executor;
+    @Nullable private final ExecutorService ownedExecutor;
+    @NonNull private final AtomicBoolean refilling = new AtomicBoolean(false);
+    private volatile boolean shutdown = false;
+    @NonNull private final Runnable refill = new Runnable() {
+        @Override
+        public void run() {
+            KeyStorePool.this.refill();
+        }
+    };
+
+    // Statistics
+    private final AtomicLong takes = new AtomicLong();
+    private final AtomicLong starvations = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+
+    /**
+     * Create a pool that is refilled on its own daemon thread.
+     *
+     * @param cryptoProvider The crypto provider generating the key pairs.
+     * @param lowWatermark Refill once this many or fewer key stores are ready.
+     * @param highWatermark Number of key stores to refill to, must be greater than the low
+     *                      watermark. Set both to 0 to disable the pool.
+     */
+    public KeyStorePool(@NonNull CryptoProvider cryptoProvider, int lowWatermark, int highWatermark) {
+        this(cryptoProvider, lowWatermark, highWatermark,
+            highWatermark > 0 ? Executors.newSingleThreadExecutor(new DaemonThreadFactory()) : null, true);
+    }
+
+    /**
+     * Create a pool that is refilled on the specified executor.
+     *
+     * @param cryptoProvider The crypto provider generating the key pairs.
+     * @param lowWatermark Refill once this many or fewer key stores are ready.
+     * @param highWatermark Number of key stores to refill to, must be greater than the low
+     *                      watermark. Set both to 0 to disable the pool.
+     * @param executor The executor running the refill task.
+     */
+    public KeyStorePool(@NonNull CryptoProvider cryptoProvider, int lowWatermark, int highWatermark,
+                        @NonNull Executor executor) {
+        this(cryptoProvider, lowWatermark, highWatermark, executor, false);
+    }
+
+    private KeyStorePool(@NonNull CryptoProvider cryptoProvider, int lowWatermark, int highWatermark,
+                         @Nullable Executor executor, boolean ownsExecutor) {
+        if (highWatermark != 0 && (lowWatermark < 0 || lowWatermark >= highWatermark)) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high");
+        }
+        this.cryptoProvider = cryptoProvider;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.executor = highWatermark > 0 ? executor : null;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.scheduleRefill();
+    }
+
+    /**
+     * Create a disabled pool that always generates key stores synchronously.
+     */
+    @NonNull
+    public static KeyStorePool disabled(@NonNull CryptoProvider cryptoProvider) {
+        return new KeyStorePool(cryptoProvider, 0, 0, null, false);
+    }
+
+    @NonNull
+    public CryptoProvider getCryptoProvider() {
+        return this.cryptoProvider;
+    }
+
+    public int getLowWatermark() {
+        return this.lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return this.highWatermark;
+    }
+
+    /**
+     * Take a key store with a fresh key pair from the pool.
+     *
+     * If no key store is ready, one is generated synchronously.
+     */
+    @NonNull
+    public KeyStore take() {
+        this.takes.incrementAndGet();
+        KeyStore keyStore = this.keyStores.poll();
+        if (keyStore == null) {
+            if (this.executor != null) {
+                this.starvations.incrementAndGet();
+                LOG.debug("Key store pool is empty, generating key pair synchronously");
+            }
+            keyStore = new KeyStore(this.cryptoProvider);
+        }
+        this.scheduleRefill();
+        return keyStore;
+    }
+
+    /**
+     * Stop refilling and discard all ready key stores.
+     *
+     * Key stores can still be taken afterwards, but will be generated synchronously.
+     * If the pool created its own thread, that thread is stopped.
+     */
+    public void shutdown() {
+        this.shutdown = true;
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdownNow();
+        }
+        this.keyStores.clear();
+    }
+
+    /**
+     * Return the number of ready key stores.
+     */
+    public int size() {
+        return this.keyStores.size();
+    }
+
+    /**
+     * Return the number of key stores that have been taken from the pool.
+     */
+    public long getTakes() {
+        return this.takes.get();
+    }
+
+    /**
+     * Return the number of times a key store had to be generated synchronously
+     * because the pool was empty.
+     */
+    public long getStarvations() {
+        return this.starvations.get();
+    }
+
+    /**
+     * Return the number of key stores generated in the background.
+     */
+    public long getGenerated() {
+        return this.generated.get();
+    }
+
+    private void scheduleRefill() {
+        if (this.executor == null || this.shutdown || this.keyStores.size() > this.lowWatermark) {
+            return;
+        }
+        if (this.refilling.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this.refill);
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Could not schedule key store pool refill: " + e.getMessage());
+                this.refilling.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            int missing;
+            while ((missing = this.highWatermark - this.keyStores.size()) > 0 && !this.shutdown) {
+                // Generate in batches, so the key pairs can share work
+                final int count = Math.min(missing, MAX_BATCH_SIZE);
+                final byte[][] publicKeys = new byte[count][CryptoProvider.PUBLICKEYBYTES];
+                final byte[][] secretKeys = new byte[count][CryptoProvider.SECRETKEYBYTES];
+                this.cryptoProvider.generateKeyPairs(publicKeys, secretKeys);
+                for (int i = 0; i < count; i++) {
+                    this.keyStores.add(new KeyStore(this.cryptoProvider, publicKeys[i], secretKeys[i]));
+                }
+                this.generated.addAndGet(count);
+            }
+        } finally {
+            this.refilling.set(false);
+        }
+        // Key stores may have been taken after the last check
+        this.scheduleRefill();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "SaltyRTC.KeyStorePool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
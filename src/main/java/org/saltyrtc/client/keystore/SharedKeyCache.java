@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.keystore;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of precomputed shared keys, keyed by crypto provider and
+ * (secret key, public key) pair.
+ *
+ * Computing the shared key requires a Curve25519 scalar multiplication. During the
+ * handshakes, the same permanent key is used with the same remote key several times,
+ * so caching the result avoids redoing the key agreement.
+ *
+ * The box operations run against the cached crypto instance itself, so the cached
+ * XSalsa20 subkeys are reused as well. Every entry counts the operations using it.
+ *
+ * The least recently used entry is evicted once the cache is full. The secret key
+ * copy of evicted entries is wiped immediately, the shared key as soon as no operation
+ * uses it any more. The cache is shared by all SaltyRTC instances in the process and
+ * is thread safe. Its size can be changed for the whole process with
+ * `SharedKeyCache.getInstance().setMaxSize(size)`.
+ *
+ * The signaling uses the cache for its permanent key only. The methods of
+ * {@link KeyStore} do not use it.
+ */
+public class SharedKeyCache {
+
+    /**
+     * Default number of cached shared keys.
+     */
+    public static final int DEFAULT_SIZE = 64;
+
+    private static final SharedKeyCache INSTANCE = new SharedKeyCache(DEFAULT_SIZE);
+
+    // Access ordered map, protected by `this`
+    private final LinkedHashMap<KeyPair, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSize;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     *
+     * Most users should use the shared instance returned by {@link #getInstance()}.
+     *
+     * @param maxSize Maximum number of cached shared keys. Set it to 0 to disable caching.
+     */
+    public SharedKeyCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size may not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Return the process wide cache instance.
+     */
+    @NonNull
+    public static SharedKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Encrypt data from the key store for the peer, using the cached shared key.
+     *
+     * @param keyStore Our key store.
+     * @param data Bytes to be encrypted.
+     * @param nonce The nonce that should be used to encrypt.
+     * @param otherKey The public key of the peer.
+     * @return The encrypted NaCl box.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    @NonNull
+    public Box encrypt(@NonNull KeyStore keyStore, @NonNull byte[] data, @NonNull byte[] nonce,
+                       @NonNull byte[] otherKey) throws CryptoFailedException, InvalidKeyException {
+        final Entry entry = this.acquire(keyStore.getCryptoProvider(), keyStore.getSecretKey(), otherKey);
+        try {
+            return entry.sharedKeyStore.encrypt(data, nonce);
+        } finally {
+            this.release(entry);
+        }
+    }
+
+    /**
+     * Decrypt data from the peer for the key store, using the cached shared key.
+     *
+     * @param keyStore Our key store.
+     * @param box NaCl box.
+     * @param otherKey The public key of the peer.
+     * @return The decrypted data.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull KeyStore keyStore, @NonNull Box box, @NonNull byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final Entry entry = this.acquire(keyStore.getCryptoProvider(), keyStore.getSecretKey(), otherKey);
+        try {
+            return entry.sharedKeyStore.decrypt(box);
+        } finally {
+            this.release(entry);
+        }
+    }
+
+    /**
+     * Decrypt data from the peer for the key store without copying the box out of the frame,
+     * using the cached shared key.
+     *
+     * @param keyStore Our key store.
+     * @param box View of the NaCl box.
+     * @param otherKey The public key of the peer.
+     * @return The decrypted data.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull KeyStore keyStore, @NonNull BoxView box, @NonNull byte[] otherKey)
+            throws CryptoFailedException, InvalidKeyException {
+        final Entry entry = this.acquire(keyStore.getCryptoProvider(), keyStore.getSecretKey(), otherKey);
+        try {
+            return entry.sharedKeyStore.decrypt(box);
+        } finally {
+            this.release(entry);
+        }
+    }
+
+    /**
+     * Encrypt data from the key store for the peer in place, using the cached shared key.
+     *
+     * See {@link SharedKeyStore#encryptInPlace(byte[], int, int)} for the buffer layout.
+     *
+     * @param keyStore Our key store.
+     * @param otherKey The public key of the peer.
+     * @return The length of the box.
+     * @throws InvalidKeyException One of the keys was invalid.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public int encryptInPlace(@NonNull KeyStore keyStore, @NonNull byte[] buffer, int offset, int length,
+                              @NonNull byte[] otherKey) throws CryptoFailedException, InvalidKeyException {
+        final Entry entry = this.acquire(keyStore.getCryptoProvider(), keyStore.getSecretKey(), otherKey);
+        try {
+            return entry.sharedKeyStore.encryptInPlace(buffer, offset, length);
+        } finally {
+            this.release(entry);
+        }
+    }
+
+    /**
+     * Change the maximum number of cached shared keys. Entries exceeding the new
+     * size will be evicted.
+     *
+     * @param maxSize Maximum number of cached shared keys. Set it to 0 to disable caching.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size may not be negative");
+        }
+        this.maxSize = maxSize;
+        this.evict(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Return the number of currently cached shared keys.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Remove and wipe all cached shared keys.
+     */
+    public synchronized void clear() {
+        this.evict(0);
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Look up or compute the entry for the specified key pair and mark it as used.
+     * The entry must be released with {@link #release(Entry)} afterwards.
+     */
+    @NonNull
+    private Entry acquire(@NonNull CryptoProvider cryptoProvider,
+                          @NonNull byte[] secretKey, @NonNull byte[] publicKey) throws InvalidKeyException {
+        final KeyPair lookup = new KeyPair(cryptoProvider, secretKey, publicKey);
+
+        // Look up existing entry
+        synchronized (this) {
+            final Entry entry = this.entries.get(lookup);
+            if (entry != null) {
+                this.hits.incrementAndGet();
+                entry.users++;
+                return entry;
+            }
+        }
+        this.misses.incrementAndGet();
+
+        // Compute shared key outside of the lock
+        final Entry entry = new Entry(cryptoProvider.getInstance(secretKey, publicKey), publicKey);
+
+        // Store entry
+        synchronized (this) {
+            entry.users++;
+            if (this.maxSize > 0 && !this.entries.containsKey(lookup)) {
+                this.entries.put(lookup.copy(), entry);
+                this.evict(this.maxSize);
+            } else {
+                // Not cached, so wipe it once it has been used
+                entry.evicted = true;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Mark the entry as no longer used by the caller.
+     */
+    private synchronized void release(@NonNull Entry entry) {
+        entry.users--;
+        entry.wipeIfUnused();
+    }
+
+    /**
+     * Evict and wipe least recently used entries until at most `size` entries are left.
+     */
+    private void evict(int size) {
+        final Iterator<Map.Entry<KeyPair, Entry>> it = this.entries.entrySet().iterator();
+        while (this.entries.size() > size && it.hasNext()) {
+            final Map.Entry<KeyPair, Entry> entry = it.next();
+            entry.getKey().wipe();
+            entry.getValue().evicted = true;
+            entry.getValue().wipeIfUnused();
+            it.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Cached shared key. The fields other than the shared key store are protected by the cache.
+     */
+    private static class Entry {
+        @NonNull final SharedKeyStore sharedKeyStore;
+        int users = 0;
+        boolean evicted = false;
+
+        Entry(@NonNull CryptoInstance crypto, @NonNull byte[] publicKey) {
+            this.sharedKeyStore = new SharedKeyStore(crypto, publicKey);
+        }
+
+        /**
+         * Wipe the shared key once the entry has been evicted and is no longer used.
+         */
+        void wipeIfUnused() {
+            if (this.evicted && this.users == 0) {
+                this.sharedKeyStore.wipe();
+            }
+        }
+    }
+
+    /**
+     * Cache key consisting of the crypto provider, our secret key and the public key of the peer.
+     */
+    private static class KeyPair {
+        private final CryptoProvider cryptoProvider;
+        private final byte[] secretKey;
+        private final byte[] publicKey;
+        private final int hash;
+
+        KeyPair(CryptoProvider cryptoProvider, byte[] secretKey, byte[] publicKey) {
+            this.cryptoProvider = cryptoProvider;
+            this.secretKey = secretKey;
+            this.publicKey = publicKey;
+            this.hash = 31 * Arrays.hashCode(secretKey) + Arrays.hashCode(publicKey);
+        }
+
+        /**
+         * Return a copy that does not share the key arrays with the caller.
+         */
+        KeyPair copy() {
+            return new KeyPair(this.cryptoProvider, this.secretKey.clone(), this.publicKey.clone());
+        }
+
+        void wipe() {
+            Arrays.fill(this.secretKey, (byte) 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof KeyPair)) {
+                return false;
+            }
+            final KeyPair other = (KeyPair) o;
+            return this.cryptoProvider == other.cryptoProvider
+                && Arrays.equals(this.secretKey, other.secretKey)
+                && Arrays.equals(this.publicKey, other.publicKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
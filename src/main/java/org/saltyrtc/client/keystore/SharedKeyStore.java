@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.keystore;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoProviders;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encrypt and decrypt messages between our secret key and the public key of one peer.
+ *
+ * The expensive key agreement is done once when the instance is created. Encryption
+ * and decryption afterwards only need the symmetric part of the NaCl box.
+ *
+ * This class is thread safe.
+ */
+public class SharedKeyStore {
+
+    @NonNull private final byte[] remotePublicKey;
+    @NonNull private final CryptoInstance crypto;
+
+    /**
+     * Precompute the shared key between our secret key and the public key of the peer,
+     * using the default crypto provider.
+     *
+     * @param localSecretKey Our secret key.
+     * @param remotePublicKey The public key of the peer.
+     * @throws InvalidKeyException One of the keys was invalid.
+     */
+    public SharedKeyStore(@NonNull byte[] localSecretKey, @NonNull byte[] remotePublicKey)
+            throws InvalidKeyException {
+        this(CryptoProviders.getDefault(), localSecretKey, remotePublicKey);
+    }
+
+    /**
+     * Precompute the shared key between our secret key and the public key of the peer.
+     *
+     * @param cryptoProvider The crypto provider computing the shared key.
+     * @param localSecretKey Our secret key.
+     * @param remotePublicKey The public key of the peer.
+     * @throws InvalidKeyException One of the keys was invalid.
+     */
+    public SharedKeyStore(@NonNull CryptoProvider cryptoProvider,
+                          @NonNull byte[] localSecretKey, @NonNull byte[] remotePublicKey)
+            throws InvalidKeyException {
+        this(cryptoProvider.getInstance(localSecretKey, remotePublicKey), remotePublicKey);
+    }
+
+    /**
+     * Create a shared key store from an already initialized crypto instance.
+     */
+    SharedKeyStore(@NonNull CryptoInstance crypto, @NonNull byte[] remotePublicKey) {
+        this.crypto = crypto;
+        this.remotePublicKey = remotePublicKey;
+    }
+
+    @NonNull
+    public byte[] getRemotePublicKey() {
+        return this.remotePublicKey;
+    }
+
+    /**
+     * Overwrite the shared key with zeros. Afterwards, encryption and decryption fail.
+     */
+    void wipe() {
+        this.crypto.wipe();
+    }
+
+    /**
+     * Encrypt data for the peer. Return Box.
+     *
+     * @param data Bytes to be encrypted.
+     * @param nonce The nonce that should be used to encrypt.
+     * @return The encrypted NaCl box.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    @NonNull
+    public Box encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+        return new Box(nonce, this.crypto.encrypt(data, nonce));
+    }
+
+    /**
+     * Decrypt data from the peer. Return contained bytes.
+     *
+     * @param box NaCl box.
+     * @return The decrypted data.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull Box box) throws CryptoFailedException {
+        return this.crypto.decrypt(box.getData(), box.getNonce());
+    }
+
+    /**
+     * Decrypt data from the peer without copying the box out of the frame.
+     *
+     * @param box View of the NaCl box.
+     * @return The decrypted data.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull BoxView box) throws CryptoFailedException {
+        return box.decrypt(this.crypto);
+    }
+
+    /**
+     * Encrypt data for the peer in place, without allocating.
+     *
+     * The buffer must contain the nonce at `offset`, followed by {@link Box#OVERHEAD} bytes
+     * of headroom and `length` bytes of plaintext at `offset + Box.PLAINTEXT_OFFSET`.
+     * Afterwards, the buffer contains the box (nonce and encrypted data) starting at `offset`.
+     *
+     * @param buffer The buffer containing nonce and plaintext.
+     * @param offset Start of the box in the buffer.
+     * @param length Length of the plaintext.
+     * @return The length of the box.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public int encryptInPlace(@NonNull byte[] buffer, int offset, int length) throws CryptoFailedException {
+        this.crypto.encrypt(buffer, offset + Box.NONCE_LENGTH, buffer, offset + Box.PLAINTEXT_OFFSET, length,
+            buffer, offset);
+        return length + Box.PLAINTEXT_OFFSET;
+    }
+
+    /**
+     * Encrypt data for the peer in place, without allocating.
+     *
+     * The box starts at the position of the buffer, the plaintext ends at the limit of the
+     * buffer. Position and limit are not modified, so the remaining bytes are the box afterwards.
+     * See {@link #encryptInPlace(byte[], int, int)} for the layout.
+     *
+     * @param buffer A buffer backed by an accessible array.
+     * @throws CryptoFailedException Encryption failed.
+     */
+    public void encryptInPlace(@NonNull ByteBuffer buffer) throws CryptoFailedException {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer must be backed by an accessible array");
+        }
+        this.encryptInPlace(buffer.array(), buffer.arrayOffset() + buffer.position(),
+            buffer.remaining() - Box.PLAINTEXT_OFFSET);
+    }
+
+    /**
+     * Decrypt data from the peer in place, without allocating.
+     *
+     * The buffer must contain the box (nonce and encrypted data) starting at `offset`.
+     * Afterwards, the plaintext is located at `offset + Box.PLAINTEXT_OFFSET`.
+     *
+     * @param buffer The buffer containing the box.
+     * @param offset Start of the box in the buffer.
+     * @param length Length of the box.
+     * @return The length of the plaintext.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public int decryptInPlace(@NonNull byte[] buffer, int offset, int length) throws CryptoFailedException {
+        this.crypto.decrypt(buffer, offset + Box.PLAINTEXT_OFFSET, buffer, offset + Box.NONCE_LENGTH,
+            length - Box.NONCE_LENGTH, buffer, offset);
+        return length - Box.PLAINTEXT_OFFSET;
+    }
+
+    /**
+     * Decrypt data from the peer in place, without allocating.
+     *
+     * The box starts at the position of the buffer and ends at its limit. Afterwards, the
+     * position is advanced by {@link Box#PLAINTEXT_OFFSET}, so the remaining bytes are the
+     * plaintext.
+     *
+     * @param buffer A buffer backed by an accessible array.
+     * @throws CryptoFailedException Decryption failed.
+     */
+    public void decryptInPlace(@NonNull ByteBuffer buffer) throws CryptoFailedException {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer must be backed by an accessible array");
+        }
+        this.decryptInPlace(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.position() + Box.PLAINTEXT_OFFSET);
+    }
+}
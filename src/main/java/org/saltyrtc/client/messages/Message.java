@@ -19,6 +19,21 @@ import java.io.IOException;
  */
 public abstract class Message {
 
+    /**
+     * Maximum headroom that can be reserved in front of a packed message.
+     */
+    public static final int MAX_HEADROOM = 64;
+    private static final byte[] ZEROS = new byte[MAX_HEADROOM];
+
+    // The packer and its buffer are reused for all messages packed by a thread
+    private static final int MAX_POOLED_SIZE = 64 * 1024;
+    private static final ThreadLocal<MessageBufferPacker> PACKER = new ThreadLocal<MessageBufferPacker>() {
+        @Override
+        protected MessageBufferPacker initialValue() {
+            return new PackerConfig().newBufferPacker();
+        }
+    };
+
     /**
      * Return its own message type.
      */
@@ -33,20 +48,42 @@ public abstract class Message {
      * Return messagepacked byte array.
      */
     public byte[] toBytes() {
-        final MessageBufferPacker packer = new PackerConfig()
-                .newBufferPacker();
+        return this.toBytes(0);
+    }
+
+    /**
+     * Return messagepacked byte array, preceded by `headroom` zero bytes.
+     *
+     * This allows packing a message directly behind the nonce and the MAC of a box, see
+     * {@link org.saltyrtc.client.keystore.SharedKeyStore#encryptInPlace(byte[], int, int)}.
+     *
+     * @param headroom Number of bytes to reserve, at most {@link #MAX_HEADROOM}.
+     */
+    public byte[] toBytes(int headroom) {
+        if (headroom < 0 || headroom > MAX_HEADROOM) {
+            throw new IllegalArgumentException("Headroom must be between 0 and " + MAX_HEADROOM);
+        }
+        final MessageBufferPacker packer = PACKER.get();
+        packer.clear();
         try {
+            packer.writePayload(ZEROS, 0, headroom);
             this.write(packer);
         } catch (IOException e) {
             // This shouldn't happen, as we're writing to a buffer, not to a stream
+            PACKER.remove();
             throw new RuntimeException("IOException while writing to MessageBufferPacker", e);
+        } catch (RuntimeException e) {
+            // Clearing the packer does not discard bytes that have not been flushed yet,
+            // so don't reuse a packer that contains a partially written message
+            PACKER.remove();
+            throw e;
         }
         final byte[] data = packer.toByteArray();
-        try {
-            packer.close();
-        } catch (IOException e) {
-            throw new RuntimeException("IOException while closing MessageBufferPacker", e);
+
+        // Don't keep large buffers around
+        if (data.length > MAX_POOLED_SIZE) {
+            PACKER.remove();
         }
         return data;
     }
-}
\ No newline at end of file
+}
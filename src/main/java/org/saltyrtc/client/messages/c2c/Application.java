@@ -8,15 +8,18 @@
 
 package org.saltyrtc.client.messages.c2c;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.msgpack.core.MessagePacker;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.codecs.ApplicationCodec;
+import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.MessagePackHelper;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -25,15 +28,58 @@ import java.util.Map;
  * This message type is special, as the `data` field may contain arbitrary data.
  * It is modeled as an opaque `Object`. That means that a round-trip serialization
  * and deserialization will not result in exactly the same objects.
+ *
+ * Binary data (`byte[]` or `ByteBuffer`) is packed directly as MessagePack `bin`,
+ * other values with {@link MessagePackHelper#packValue}.
+ *
+ * Received messages keep the encoded data, it is only decoded when {@link #getData()}
+ * is called.
  */
 public class Application extends Message {
 
     public static final String TYPE = "application";
 
     private Object data;
+    @Nullable private final EncodedValue encodedData;
+    private boolean decoded;
+    @Nullable private ApplicationCodec<Object> codec;
 
     public Application(Object data) {
         this.data = data;
+        this.encodedData = null;
+    }
+
+    public Application(byte[] data) {
+        this.data = data;
+        this.encodedData = null;
+    }
+
+    /**
+     * Create an application message whose data is encoded with the codec.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Application(T data, ApplicationCodec<? super T> codec) {
+        this.data = data;
+        this.encodedData = null;
+        this.codec = (ApplicationCodec<Object>) codec;
+    }
+
+    /**
+     * Create an application message from encoded data, which is decoded on demand.
+     */
+    public Application(EncodedValue data) {
+        this.encodedData = data;
+    }
+
+    /**
+     * Create an application message containing the remaining bytes of the buffer.
+     *
+     * The buffer is not copied, its content must not be changed until the message has been sent.
+     * Position and limit of the buffer are not modified.
+     */
+    public Application(ByteBuffer data) {
+        this.data = data.duplicate();
+        this.encodedData = null;
     }
 
     public Application(Map<String, Object> map) throws ValidationError {
@@ -42,20 +88,62 @@ public class Application extends Message {
             throw new ValidationError("Message is missing the 'data' key");
         }
         this.data = map.get("data");
+        this.encodedData = null;
     }
 
-    public Object getData() {
+    public synchronized Object getData() {
+        if (this.encodedData != null && !this.decoded) {
+            try {
+                this.data = this.encodedData.decode();
+            } catch (SerializationError e) {
+                // The data has been validated when the message was read
+                throw new IllegalStateException("Could not decode application data", e);
+            }
+            this.decoded = true;
+        }
         return this.data;
     }
 
+    /**
+     * Return the encoded data of a received message, or null if the message was created from an object.
+     */
+    @Nullable
+    public EncodedValue getEncodedData() {
+        return this.encodedData;
+    }
+
     @Override
     public void write(MessagePacker packer) throws IOException {
         packer.packMapHeader(2)
                 .packString("type")
                     .packString(TYPE)
                 .packString("data");
-        ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-        packer.writePayload(objectMapper.writeValueAsBytes(this.data));
+        if (this.encodedData != null) {
+            this.encodedData.writeTo(packer);
+        } else if (this.codec != null) {
+            this.codec.encode(this.data, packer);
+        } else if (this.data instanceof byte[]) {
+            final byte[] bytes = (byte[]) this.data;
+            packer.packBinaryHeader(bytes.length).writePayload(bytes);
+        } else if (this.data instanceof ByteBuffer) {
+            writeByteBuffer(packer, ((ByteBuffer) this.data).duplicate());
+        } else {
+            MessagePackHelper.packValue(packer, this.data);
+        }
+    }
+
+    private static void writeByteBuffer(MessagePacker packer, ByteBuffer buffer) throws IOException {
+        packer.packBinaryHeader(buffer.remaining());
+        if (buffer.hasArray()) {
+            packer.writePayload(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        final byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            final int length = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, length);
+            packer.writePayload(chunk, 0, length);
+        }
     }
 
     @Override
@@ -10,6 +10,7 @@ package org.saltyrtc.client.messages.c2c;
 
 import org.msgpack.core.MessagePacker;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageTemplate;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 
@@ -20,6 +21,12 @@ public class Close extends Message {
 
     public static final String TYPE = "close";
 
+    // Constant start of the message
+    private static final byte[] PREFIX = new MessageTemplate(2)
+            .string("type").string(TYPE)
+            .string("reason")
+            .toByteArray();
+
     private Integer reason;
 
     public Close(Integer reason) {
@@ -37,11 +44,8 @@ public class Close extends Message {
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        packer.packMapHeader(2)
-                .packString("type")
-                    .packString(TYPE)
-                .packString("reason")
-                    .packInt(this.reason);
+        packer.writePayload(PREFIX);
+        packer.packInt(this.reason);
     }
 
     @Override
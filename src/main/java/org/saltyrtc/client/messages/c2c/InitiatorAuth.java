@@ -8,11 +8,12 @@
 
 package org.saltyrtc.client.messages.c2c;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.msgpack.core.MessagePacker;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.MessagePackHelper;
+import org.saltyrtc.client.helpers.MessageTemplate;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 
@@ -23,15 +24,36 @@ public class InitiatorAuth extends Message {
 
     public static final String TYPE = "auth";
 
+    // Constant parts of the message
+    private static final byte[] PREFIX = new MessageTemplate(4)
+            .string("type").string(TYPE)
+            .string("your_cookie")
+            .toByteArray();
+    private static final byte[] TASK_KEY = new MessageTemplate().string("task").toByteArray();
+    private static final byte[] DATA_KEY = new MessageTemplate().string("data").toByteArray();
+
     private byte[] yourCookie;
     private String task;
     private Map<String, Map<Object, Object>> data;
+    @Nullable private EncodedValue encodedData;
 
     public InitiatorAuth(byte[] yourCookie, String task, Map<String, Map<Object, Object>> data) throws ValidationError {
+        this(yourCookie, task, data, null);
+    }
+
+    /**
+     * Create an auth message with task data that has already been encoded with
+     * {@link EncodedValue#encode(Object)}, so that it is not encoded again.
+     *
+     * @param encodedData The encoded task data, it must match the data.
+     */
+    public InitiatorAuth(byte[] yourCookie, String task, Map<String, Map<Object, Object>> data,
+                         @Nullable EncodedValue encodedData) throws ValidationError {
         this.yourCookie = yourCookie;
         this.validateTaskData(task, data);
         this.task = task;
         this.data = data;
+        this.encodedData = encodedData;
     }
 
     public InitiatorAuth(Map<String, Object> map) throws ValidationError {
@@ -78,18 +100,16 @@ public class InitiatorAuth extends Message {
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-        final byte[] dataBytes = objectMapper.writeValueAsBytes(this.data);
-        packer.packMapHeader(4)
-                .packString("type")
-                    .packString(TYPE)
-                .packString("your_cookie")
-                    .packBinaryHeader(this.yourCookie.length)
-                    .writePayload(this.yourCookie)
-                .packString("task")
-                    .packString(this.task)
-                .packString("data")
-                    .writePayload(dataBytes);
+        packer.writePayload(PREFIX);
+        packer.packBinaryHeader(this.yourCookie.length).writePayload(this.yourCookie);
+        packer.writePayload(TASK_KEY);
+        packer.packString(this.task);
+        packer.writePayload(DATA_KEY);
+        if (this.encodedData != null) {
+            this.encodedData.writeTo(packer);
+        } else {
+            MessagePackHelper.packValue(packer, this.data);
+        }
     }
 
     @Override
@@ -8,11 +8,12 @@
 
 package org.saltyrtc.client.messages.c2c;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.msgpack.core.MessagePacker;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.MessagePackHelper;
+import org.saltyrtc.client.helpers.MessageTemplate;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 
@@ -24,15 +25,36 @@ public class ResponderAuth extends Message {
 
     public static final String TYPE = "auth";
 
+    // Constant parts of the message
+    private static final byte[] PREFIX = new MessageTemplate(4)
+            .string("type").string(TYPE)
+            .string("your_cookie")
+            .toByteArray();
+    private static final byte[] TASKS_KEY = new MessageTemplate().string("tasks").toByteArray();
+    private static final byte[] DATA_KEY = new MessageTemplate().string("data").toByteArray();
+
     private byte[] yourCookie;
     private List<String> tasks;
     private Map<String, Map<Object, Object>> data;
+    @Nullable private EncodedValue encodedData;
 
     public ResponderAuth(byte[] yourCookie, List<String> tasks, Map<String, Map<Object, Object>> data) throws ValidationError {
+        this(yourCookie, tasks, data, null);
+    }
+
+    /**
+     * Create an auth message with task data that has already been encoded with
+     * {@link EncodedValue#encode(Object)}, so that it is not encoded again.
+     *
+     * @param encodedData The encoded task data, it must match the data.
+     */
+    public ResponderAuth(byte[] yourCookie, List<String> tasks, Map<String, Map<Object, Object>> data,
+                         @Nullable EncodedValue encodedData) throws ValidationError {
         this.yourCookie = yourCookie;
         this.validateTasksData(tasks, data);
         this.tasks = tasks;
         this.data = data;
+        this.encodedData = encodedData;
     }
 
     public ResponderAuth(Map<String, Object> map) throws ValidationError {
@@ -81,25 +103,24 @@ public class ResponderAuth extends Message {
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-
         // Pack basic information
-        packer.packMapHeader(4)
-                .packString("type")
-                    .packString(TYPE)
-                .packString("your_cookie")
-                    .packBinaryHeader(this.yourCookie.length)
-                    .writePayload(this.yourCookie);
+        packer.writePayload(PREFIX);
+        packer.packBinaryHeader(this.yourCookie.length).writePayload(this.yourCookie);
 
         // Pack tasks list
-        packer.packString("tasks").packArrayHeader(this.tasks.size());
+        packer.writePayload(TASKS_KEY);
+        packer.packArrayHeader(this.tasks.size());
         for (String task : this.tasks) {
             packer.packString(task);
         }
 
         // Pack data
-        final byte[] dataBytes = objectMapper.writeValueAsBytes(this.data);
-        packer.packString("data").writePayload(dataBytes);
+        packer.writePayload(DATA_KEY);
+        if (this.encodedData != null) {
+            this.encodedData.writeTo(packer);
+        } else {
+            MessagePackHelper.packValue(packer, this.data);
+        }
     }
 
     @Override
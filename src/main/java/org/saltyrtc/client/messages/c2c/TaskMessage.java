@@ -1,13 +1,11 @@
 package org.saltyrtc.client.messages.c2c;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.msgpack.core.MessagePacker;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.Nullable;
+import org.saltyrtc.client.helpers.MessagePackHelper;
 import org.saltyrtc.client.messages.Message;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -15,15 +13,29 @@ import java.util.Map;
  *
  * All message data except the type is stored as an untyped map and can be retrieved through
  * `getData()`.
+ *
+ * Typed task messages pass a {@link TaskMessageCodec} to the constructor instead of a map.
+ * They are encoded with the codec, the map is only created if `getData()` is called.
  */
 public class TaskMessage extends Message {
 
     private final String type;
-    private final Map<String, Object> data;
+    private Map<String, Object> data;
+    @Nullable private final TaskMessageCodec<TaskMessage> codec;
 
     public TaskMessage(String type, Map<String, Object> otherData) {
         this.type = type;
         this.data = otherData;
+        this.codec = null;
+    }
+
+    /**
+     * Constructor for typed task messages.
+     */
+    @SuppressWarnings("unchecked")
+    protected TaskMessage(String type, TaskMessageCodec<? extends TaskMessage> codec) {
+        this.type = type;
+        this.codec = (TaskMessageCodec<TaskMessage>) codec;
     }
 
     @Override
@@ -32,15 +44,27 @@ public class TaskMessage extends Message {
     }
 
     public Map<String, Object> getData() {
+        if (this.data == null && this.codec != null) {
+            this.data = this.codec.toMap(this);
+        }
         return this.data;
     }
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-        final Map<String, Object> fullMsg = new HashMap<>(this.data);
-        fullMsg.put("type", this.type);
-        final byte[] msgBytes = objectMapper.writeValueAsBytes(fullMsg);
-        packer.writePayload(msgBytes);
+        if (this.codec != null) {
+            this.codec.write(this, packer);
+            return;
+        }
+        // The type replaces a "type" entry of the data
+        final boolean hasType = this.data.containsKey("type");
+        packer.packMapHeader(hasType ? this.data.size() : this.data.size() + 1);
+        packer.packString("type").packString(this.type);
+        for (Map.Entry<String, Object> entry : this.data.entrySet()) {
+            if (!"type".equals(entry.getKey())) {
+                packer.packString(entry.getKey());
+                MessagePackHelper.packValue(packer, entry.getValue());
+            }
+        }
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.messages.c2c;
+
+import org.msgpack.core.MessagePacker;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.TaskMessageFields;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encode and decode a typed task message field by field, without going through a map.
+ *
+ * Codecs are usually generated for classes annotated with
+ * {@link org.saltyrtc.client.annotations.TaskMessageType}. Register them with
+ * {@link org.saltyrtc.client.helpers.MessageTypeRegistry#register(TaskMessageCodec, org.saltyrtc.client.helpers.MessageTypeRegistry.Handler)}
+ * to receive typed messages.
+ */
+public interface TaskMessageCodec<T extends TaskMessage> {
+
+    /**
+     * Return the message type.
+     */
+    @NonNull
+    String getType();
+
+    /**
+     * Write the complete message, including the type field.
+     */
+    void write(@NonNull T message, @NonNull MessagePacker packer) throws IOException;
+
+    /**
+     * Read all fields except the type field.
+     *
+     * @throws ValidationError if a field is missing or has the wrong type.
+     */
+    @NonNull
+    T read(@NonNull TaskMessageFields fields) throws SerializationError, ValidationError, IOException;
+
+    /**
+     * Return the fields of the message as map, including the type field.
+     */
+    @NonNull
+    Map<String, Object> toMap(@NonNull T message);
+
+}
@@ -10,6 +10,7 @@ package org.saltyrtc.client.messages.c2c;
 
 import org.msgpack.core.MessagePacker;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageTemplate;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
@@ -21,6 +22,12 @@ public class Token extends Message {
 
     public static final String TYPE = "token";
 
+    // Constant start of the message
+    private static final byte[] PREFIX = new MessageTemplate(2)
+            .string("type").string(TYPE)
+            .string("key")
+            .toByteArray();
+
     private byte[] key;
 
     public Token(byte[] key) {
@@ -38,12 +45,8 @@ public class Token extends Message {
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        packer.packMapHeader(2)
-                .packString("type")
-                    .packString(TYPE)
-                .packString("key")
-                    .packBinaryHeader(this.key.length)
-                    .writePayload(this.key);
+        packer.writePayload(PREFIX);
+        packer.packBinaryHeader(this.key.length).writePayload(this.key);
     }
 
     @Override
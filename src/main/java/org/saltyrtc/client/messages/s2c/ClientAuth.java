@@ -10,6 +10,7 @@ package org.saltyrtc.client.messages.s2c;
 
 import org.msgpack.core.MessagePacker;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageTemplate;
 import org.saltyrtc.client.helpers.ValidationHelper;
 import org.saltyrtc.client.messages.Message;
 
@@ -21,6 +22,18 @@ public class ClientAuth extends Message {
 
     public static final String TYPE = "client-auth";
 
+    // Constant parts of the message
+    private static final byte[] PREFIX = new MessageTemplate(4)
+            .string("type").string(TYPE)
+            .string("your_cookie")
+            .toByteArray();
+    private static final byte[] PING_INTERVAL_KEY = new MessageTemplate()
+            .string("ping_interval")
+            .toByteArray();
+    private static final byte[] SUBPROTOCOLS_KEY = new MessageTemplate()
+            .string("subprotocols")
+            .toByteArray();
+
     private byte[] yourCookie;
     private List<String> subprotocols;
     private int pingInterval;
@@ -53,15 +66,12 @@ public class ClientAuth extends Message {
 
     @Override
     public void write(MessagePacker packer) throws IOException {
-        packer.packMapHeader(4)
-                .packString("type")
-                    .packString("client-auth")
-                .packString("your_cookie")
-                    .packBinaryHeader(this.yourCookie.length)
-                    .writePayload(this.yourCookie)
-                .packString("ping_interval")
-                    .packInt(this.pingInterval);
-        packer.packString("subprotocols").packArrayHeader(this.subprotocols.size());
+        packer.writePayload(PREFIX);
+        packer.packBinaryHeader(this.yourCookie.length).writePayload(this.yourCookie);
+        packer.writePayload(PING_INTERVAL_KEY);
+        packer.packInt(this.pingInterval);
+        packer.writePayload(SUBPROTOCOLS_KEY);
+        packer.packArrayHeader(this.subprotocols.size());
         for (String subprotocol : this.subprotocols) {
             packer.packString(subprotocol);
         }
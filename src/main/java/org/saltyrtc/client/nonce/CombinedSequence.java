@@ -66,6 +66,21 @@ public class CombinedSequence {
      * treated as a protocol error.
      */
     public synchronized CombinedSequenceSnapshot next() throws OverflowException {
+        this.increment();
+        return new CombinedSequenceSnapshot(this.sequenceNumber, this.overflow);
+    }
+
+    /**
+     * Increment the combined sequence number and return it, without creating a snapshot.
+     *
+     * May throw an error if overflow number overflows, see {@link #next()}.
+     */
+    public synchronized long nextCombinedSequence() throws OverflowException {
+        this.increment();
+        return this.getCombinedSequence();
+    }
+
+    private void increment() throws OverflowException {
         if (this.sequenceNumber + 1 >= CombinedSequence.SEQUENCE_NUMBER_MAX) {
             // Sequence number overflow
             this.sequenceNumber = 0;
@@ -78,6 +93,5 @@ public class CombinedSequence {
             // Simply increment the sequence number
             this.sequenceNumber += 1;
         }
-        return new CombinedSequenceSnapshot(this.sequenceNumber, this.overflow);
     }
 }
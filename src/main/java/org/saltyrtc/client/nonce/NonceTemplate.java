@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.nonce;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.helpers.UnsignedHelper;
+
+/**
+ * The constant part of the signaling nonces sent to one peer.
+ *
+ * Cookie, source and destination are validated and encoded once. Writing a nonce
+ * afterwards only copies them and fills in the combined sequence number.
+ *
+ * See {@link SignalingChannelNonce} for the nonce structure. This class is immutable.
+ */
+public final class NonceTemplate {
+
+    // Length of cookie, source and destination
+    private static final int PREFIX_LENGTH = Nonce.COOKIE_LENGTH + 2;
+
+    @NonNull private final byte[] prefix;
+    private final short source;
+    private final short destination;
+
+    /**
+     * Create a new nonce template.
+     *
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public NonceTemplate(@NonNull byte[] cookie, short source, short destination) {
+        if (cookie.length != Nonce.COOKIE_LENGTH) {
+            throw new IllegalArgumentException("cookie must be " + Nonce.COOKIE_LENGTH + " bytes long");
+        }
+        if (source < 0 || source >= (1 << 8)) {
+            throw new IllegalArgumentException("source must be between 0 and 2**8-1");
+        }
+        if (destination < 0 || destination >= (1 << 8)) {
+            throw new IllegalArgumentException("destination must be between 0 and 2**8-1");
+        }
+        this.prefix = new byte[PREFIX_LENGTH];
+        System.arraycopy(cookie, 0, this.prefix, 0, Nonce.COOKIE_LENGTH);
+        this.prefix[Nonce.COOKIE_LENGTH] = UnsignedHelper.getUnsignedByte(source);
+        this.prefix[Nonce.COOKIE_LENGTH + 1] = UnsignedHelper.getUnsignedByte(destination);
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * Return the source byte.
+     */
+    public short getSource() {
+        return this.source;
+    }
+
+    /**
+     * Return the destination byte.
+     */
+    public short getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Write the nonce with the specified combined sequence number to `buffer` at `offset`.
+     *
+     * @param combinedSequence The 48 bit combined sequence number, e.g. from
+     *                         {@link CombinedSequence#nextCombinedSequence()}.
+     */
+    public void write(@NonNull byte[] buffer, int offset, long combinedSequence) {
+        if (combinedSequence < 0 || combinedSequence >= (1L << 48)) {
+            throw new IllegalArgumentException("combined sequence must be between 0 and 2**48-1");
+        }
+        System.arraycopy(this.prefix, 0, buffer, offset, PREFIX_LENGTH);
+        UnsignedHelper.writeUnsignedShort(buffer, offset + PREFIX_LENGTH, (int) (combinedSequence >>> 32));
+        UnsignedHelper.writeUnsignedInt(buffer, offset + PREFIX_LENGTH + 2, combinedSequence & 0xffffffffL);
+    }
+
+    /**
+     * Return the nonce with the specified combined sequence number as a new array.
+     */
+    @NonNull
+    public byte[] toBytes(long combinedSequence) {
+        final byte[] bytes = new byte[Nonce.TOTAL_LENGTH];
+        this.write(bytes, 0, combinedSequence);
+        return bytes;
+    }
+
+}
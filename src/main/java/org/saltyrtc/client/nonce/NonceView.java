@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.nonce;
+
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.helpers.UnsignedHelper;
+
+/**
+ * A read-only view of a SaltyRTC signaling nonce inside a received frame.
+ *
+ * Unlike {@link SignalingChannelNonce}, the fields are read from the underlying array
+ * whenever they are accessed, so wrapping a frame does not allocate or copy anything.
+ * A view can be reused for the next frame by calling {@link #wrap(byte[], int)} again.
+ *
+ * See {@link SignalingChannelNonce} for the nonce structure.
+ */
+public final class NonceView {
+
+    private static final int SOURCE_OFFSET = Nonce.COOKIE_LENGTH;
+    private static final int DESTINATION_OFFSET = Nonce.COOKIE_LENGTH + 1;
+    private static final int OVERFLOW_OFFSET = Nonce.COOKIE_LENGTH + 2;
+    private static final int SEQUENCE_OFFSET = Nonce.COOKIE_LENGTH + 4;
+
+    private byte[] buffer;
+    private int offset;
+
+    /**
+     * Create an empty view. It must be wrapped around a nonce before use.
+     */
+    public NonceView() {
+    }
+
+    /**
+     * Create a view of the nonce at `offset` in `buffer`.
+     */
+    public NonceView(@NonNull byte[] buffer, int offset) {
+        this.wrap(buffer, offset);
+    }
+
+    /**
+     * Point this view to the nonce at `offset` in `buffer`.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a complete nonce at `offset`.
+     */
+    @NonNull
+    public NonceView wrap(@NonNull byte[] buffer, int offset) {
+        if (offset < 0 || buffer.length - offset < Nonce.TOTAL_LENGTH) {
+            throw new IllegalArgumentException("Buffer must contain " + Nonce.TOTAL_LENGTH +
+                " bytes at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Return the source byte.
+     */
+    public short getSource() {
+        return UnsignedHelper.readUnsignedByte(this.buffer[this.offset + SOURCE_OFFSET]);
+    }
+
+    /**
+     * Return the destination byte.
+     */
+    public short getDestination() {
+        return UnsignedHelper.readUnsignedByte(this.buffer[this.offset + DESTINATION_OFFSET]);
+    }
+
+    /**
+     * Return the overflow number.
+     */
+    public int getOverflow() {
+        return UnsignedHelper.readUnsignedShort(this.buffer, this.offset + OVERFLOW_OFFSET);
+    }
+
+    /**
+     * Return the sequence number.
+     */
+    public long getSequence() {
+        return UnsignedHelper.readUnsignedInt(this.buffer, this.offset + SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Return the combined sequence number.
+     */
+    public long getCombinedSequence() {
+        return (long) this.getOverflow() << 32 | this.getSequence();
+    }
+
+    /**
+     * Return whether the cookie in the nonce is equal to the specified cookie.
+     */
+    public boolean hasCookie(@NonNull Cookie cookie) {
+        final byte[] bytes = cookie.getBytes();
+        if (bytes.length != Nonce.COOKIE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < Nonce.COOKIE_LENGTH; i++) {
+            if (this.buffer[this.offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return a copy of the cookie bytes.
+     */
+    @NonNull
+    public byte[] getCookieBytes() {
+        final byte[] cookie = new byte[Nonce.COOKIE_LENGTH];
+        System.arraycopy(this.buffer, this.offset, cookie, 0, Nonce.COOKIE_LENGTH);
+        return cookie;
+    }
+
+    /**
+     * Return a copy of the cookie.
+     */
+    @NonNull
+    public Cookie getCookie() {
+        return new Cookie(this.getCookieBytes());
+    }
+
+    /**
+     * Return a copy of the nonce bytes.
+     */
+    @NonNull
+    public byte[] toBytes() {
+        final byte[] bytes = new byte[Nonce.TOTAL_LENGTH];
+        System.arraycopy(this.buffer, this.offset, bytes, 0, Nonce.TOTAL_LENGTH);
+        return bytes;
+    }
+
+    /**
+     * Return a copy of the nonce as {@link SignalingChannelNonce}.
+     */
+    @NonNull
+    public SignalingChannelNonce toNonce() {
+        return new SignalingChannelNonce(this.getCookieBytes(), this.getSource(), this.getDestination(),
+            this.getOverflow(), this.getSequence());
+    }
+
+}
@@ -61,20 +61,33 @@ public class SignalingChannelNonce extends Nonce {
             throw new IllegalArgumentException("Buffer limit must be at least " + TOTAL_LENGTH);
         }
 
+        // Parse directly from the backing array if possible
+        final byte[] bytes;
+        final int offset;
+        if (buf.hasArray() && buf.remaining() >= TOTAL_LENGTH) {
+            bytes = buf.array();
+            offset = buf.arrayOffset() + buf.position();
+            buf.position(buf.position() + TOTAL_LENGTH);
+        } else {
+            bytes = new byte[TOTAL_LENGTH];
+            buf.get(bytes);
+            offset = 0;
+        }
+
         final byte[] cookie = new byte[COOKIE_LENGTH];
-        buf.get(cookie, 0, COOKIE_LENGTH);
+        System.arraycopy(bytes, offset, cookie, 0, COOKIE_LENGTH);
         validateCookie(cookie);
 
-        final short source = UnsignedHelper.readUnsignedByte(buf.get());
+        final short source = UnsignedHelper.readUnsignedByte(bytes[offset + COOKIE_LENGTH]);
         validateSource(source);
 
-        final short destination = UnsignedHelper.readUnsignedByte(buf.get());
+        final short destination = UnsignedHelper.readUnsignedByte(bytes[offset + COOKIE_LENGTH + 1]);
         validateDestination(destination);
 
-        final int overflow = UnsignedHelper.readUnsignedShort(buf.getShort());
+        final int overflow = UnsignedHelper.readUnsignedShort(bytes, offset + COOKIE_LENGTH + 2);
         validateOverflow(overflow);
 
-        final long sequence = UnsignedHelper.readUnsignedInt(buf.getInt());
+        final long sequence = UnsignedHelper.readUnsignedInt(bytes, offset + COOKIE_LENGTH + 4);
         validateSequence(sequence);
 
         this.cookie = cookie;
@@ -86,16 +99,20 @@ public class SignalingChannelNonce extends Nonce {
 
     @Override
     public byte[] toBytes() {
-        // Pack data
-        ByteBuffer buffer = ByteBuffer.allocate(Nonce.TOTAL_LENGTH);
-        buffer.put(this.cookie);
-        buffer.put(UnsignedHelper.getUnsignedByte(this.source));
-        buffer.put(UnsignedHelper.getUnsignedByte(this.destination));
-        buffer.putShort(UnsignedHelper.getUnsignedShort(this.overflow));
-        buffer.putInt(UnsignedHelper.getUnsignedInt(this.sequence));
-
-        // Return underlying array
-        return buffer.array();
+        final byte[] bytes = new byte[Nonce.TOTAL_LENGTH];
+        this.write(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Write the nonce to `buffer` at `offset`.
+     */
+    public void write(byte[] buffer, int offset) {
+        System.arraycopy(this.cookie, 0, buffer, offset, COOKIE_LENGTH);
+        buffer[offset + COOKIE_LENGTH] = UnsignedHelper.getUnsignedByte(this.source);
+        buffer[offset + COOKIE_LENGTH + 1] = UnsignedHelper.getUnsignedByte(this.destination);
+        UnsignedHelper.writeUnsignedShort(buffer, offset + COOKIE_LENGTH + 2, this.overflow);
+        UnsignedHelper.writeUnsignedInt(buffer, offset + COOKIE_LENGTH + 4, this.sequence);
     }
 
     /**
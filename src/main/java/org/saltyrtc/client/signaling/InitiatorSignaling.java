@@ -12,6 +12,7 @@ import org.saltyrtc.client.SaltyRTC;
 import org.saltyrtc.client.annotations.NonNull;
 import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.crypto.CryptoProvider;
 import org.saltyrtc.client.events.SignalingConnectionLostEvent;
 import org.saltyrtc.client.exceptions.ConnectionException;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
@@ -21,11 +22,14 @@ import org.saltyrtc.client.exceptions.ProtocolException;
 import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.SignalingException;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
 import org.saltyrtc.client.helpers.MessageReader;
 import org.saltyrtc.client.helpers.TaskHelper;
 import org.saltyrtc.client.keystore.AuthToken;
-import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.BoxView;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
+import org.saltyrtc.client.keystore.SharedKeyStore;
 import org.saltyrtc.client.messages.Message;
 import org.saltyrtc.client.messages.c2c.InitiatorAuth;
 import org.saltyrtc.client.messages.c2c.Key;
@@ -35,7 +39,7 @@ import org.saltyrtc.client.messages.s2c.DropResponder;
 import org.saltyrtc.client.messages.s2c.InitiatorServerAuth;
 import org.saltyrtc.client.messages.s2c.NewResponder;
 import org.saltyrtc.client.messages.s2c.SendError;
-import org.saltyrtc.client.nonce.SignalingChannelNonce;
+import org.saltyrtc.client.nonce.NonceView;
 import org.saltyrtc.client.signaling.peers.Peer;
 import org.saltyrtc.client.signaling.peers.Responder;
 import org.saltyrtc.client.signaling.state.ResponderHandshakeState;
@@ -60,6 +64,11 @@ public class InitiatorSignaling extends Signaling {
     // Once the handshake is done, this is the chosen responder
     private Responder responder;
 
+    // Task data of the auth message, it is only encoded once per task
+    @Nullable private Task encodedTask;
+    @Nullable private Map<String, Map<Object, Object>> taskData;
+    @Nullable private EncodedValue encodedTaskData;
+
     // Logging
     protected Logger getLogger() {
         return org.slf4j.LoggerFactory.getLogger("SaltyRTC.ISignaling");
@@ -70,11 +79,14 @@ public class InitiatorSignaling extends Signaling {
                               @Nullable byte[] responderTrustedKey,
                               @Nullable byte[] expectedServerKey,
                               @NonNull Task[] tasks,
-                              int pingInterval) {
+                              int pingInterval,
+                              int messageHistorySize,
+                              @NonNull CryptoProvider cryptoProvider,
+                              @NonNull KeyStorePool keyStorePool) {
         super(saltyRTC, host, port, permanentKey, sslContext, responderTrustedKey, expectedServerKey,
-              SignalingRole.Initiator, tasks, pingInterval);
+              SignalingRole.Initiator, tasks, pingInterval, messageHistorySize, cryptoProvider, keyStorePool);
         if (responderTrustedKey == null) {
-            this.authToken = new AuthToken();
+            this.authToken = new AuthToken(cryptoProvider);
         }
     }
 
@@ -103,8 +115,8 @@ public class InitiatorSignaling extends Signaling {
     }
 
     @Override
-    protected Box encryptHandshakeDataForPeer(short receiver, String messageType,
-                                              byte[] payload, byte[] nonce)
+    protected void encryptHandshakeDataForPeer(short receiver, String messageType,
+                                               byte[] packet, int length)
             throws CryptoFailedException, InvalidKeyException, ProtocolException {
         if (receiver == SALTYRTC_ADDR_INITIATOR) {
             throw new ProtocolException("Initiator cannot encrypt messages for initiator");
@@ -125,9 +137,13 @@ public class InitiatorSignaling extends Signaling {
 
         // Encrypt
         if ("key".equals(messageType)) {
-            return this.permanentKey.encrypt(payload, nonce, responder.getPermanentKey());
+            this.sharedKeyCache.encryptInPlace(this.permanentKey, packet, 0, length, responder.getPermanentKey());
         } else {
-            return responder.getKeyStore().encrypt(payload, nonce, responder.getSessionKey());
+            final SharedKeyStore sharedKey = responder.getSessionSharedKey();
+            if (sharedKey == null) {
+                throw new ProtocolException("Responder session key has not been established");
+            }
+            sharedKey.encryptInPlace(packet, 0, length);
         }
     }
 
@@ -151,7 +167,7 @@ public class InitiatorSignaling extends Signaling {
     }
 
     @Override
-    protected void handleServerAuth(Message baseMsg, SignalingChannelNonce nonce) throws
+    protected void handleServerAuth(Message baseMsg, NonceView nonce) throws
         SignalingException, ConnectionException {
         // Cast to proper subtype
         final InitiatorServerAuth msg;
@@ -203,7 +219,7 @@ public class InitiatorSignaling extends Signaling {
     }
 
     @Override
-    protected void onPeerHandshakeMessage(Box box, SignalingChannelNonce nonce)
+    protected void onPeerHandshakeMessage(BoxView box, NonceView nonce)
         throws ValidationError, SerializationError,
         InternalException, ConnectionException, SignalingException {
 
@@ -218,7 +234,7 @@ public class InitiatorSignaling extends Signaling {
             // Try to decrypt data accordingly.
             try {
                 assert this.server.hasSessionKey();
-                payload = this.permanentKey.decrypt(box, this.server.getSessionKey());
+                payload = this.sharedKeyCache.decrypt(this.permanentKey, box, this.server.getSessionKey());
             } catch (CryptoFailedException | InvalidKeyException e) {
                 e.printStackTrace();
                 throw new ProtocolException("Could not decrypt server message");
@@ -274,7 +290,7 @@ public class InitiatorSignaling extends Signaling {
                         final byte[] peerPublicKey = this.hasTrustedKey()
                                                    ? this.peerTrustedKey
                                                    : responder.getPermanentKey();
-                        payload = this.permanentKey.decrypt(box, peerPublicKey);
+                        payload = this.sharedKeyCache.decrypt(this.permanentKey, box, peerPublicKey);
                     } catch (CryptoFailedException e) {
                         this.getLogger().warn("Could not decrypt key message");
                         this.dropResponder(responder, CloseCode.INITIATOR_COULD_NOT_DECRYPT);
@@ -299,13 +315,12 @@ public class InitiatorSignaling extends Signaling {
                     try {
                         // Note: The session key related to the responder is
                         // responder.keyStore, not this.sessionKey!
-                        payload = responder.getKeyStore().decrypt(box, responder.getSessionKey());
+                        final SharedKeyStore sharedKey = responder.getSessionSharedKey();
+                        assert sharedKey != null;
+                        payload = sharedKey.decrypt(box);
                     } catch (CryptoFailedException e) {
                         e.printStackTrace();
                         throw new ProtocolException("Could not decrypt auth message");
-                    } catch (InvalidKeyException e) {
-                        e.printStackTrace();
-                        throw new ProtocolException("Invalid key when decrypting auth message", e);
                     }
 
                     msg = MessageReader.read(payload);
@@ -320,6 +335,7 @@ public class InitiatorSignaling extends Signaling {
                     // We're connected!
                     this.responder = responder;
                     this.sessionKey = responder.getKeyStore();
+                    this.sessionSharedKey = responder.getSessionSharedKey();
 
                     // Remove responder from responders list
                     this.responders.remove(responder.getId());
@@ -364,7 +380,7 @@ public class InitiatorSignaling extends Signaling {
         }
 
         // Create responder instance
-        final Responder responder = new Responder(responderId, this.responderCounter++);
+        final Responder responder = new Responder(responderId, this.responderCounter++, this.keyStorePool.take());
 
         // If we trust the responder...
         if (this.hasTrustedKey()) {
@@ -415,8 +431,13 @@ public class InitiatorSignaling extends Signaling {
     /**
      * A responder sends his public session key.
      */
-    private void handleKey(Key msg, Responder responder) {
+    private void handleKey(Key msg, Responder responder) throws ProtocolException {
         responder.setSessionKey(msg.getKey());
+        try {
+            responder.setSessionSharedKey(responder.getKeyStore().getSharedKeyStore(msg.getKey()));
+        } catch (InvalidKeyException e) {
+            throw new ProtocolException("Invalid session key from responder", e);
+        }
         responder.handshakeState = ResponderHandshakeState.KEY_RECEIVED;
     }
 
@@ -434,7 +455,7 @@ public class InitiatorSignaling extends Signaling {
     /**
      * A responder repeats our cookie and sends a list of acceptable tasks.
      */
-    private void handleAuth(ResponderAuth msg, Responder responder, SignalingChannelNonce nonce) throws SignalingException {
+    private void handleAuth(ResponderAuth msg, Responder responder, NonceView nonce) throws SignalingException {
         // Validate cookie
         this.validateRepeatedCookie(responder, msg.getYourCookie());
 
@@ -464,14 +485,19 @@ public class InitiatorSignaling extends Signaling {
     /**
      * Repeat the responder's cookie and choose a task.
      */
-    private void sendAuth(Responder responder, SignalingChannelNonce nonce) throws SignalingException, ConnectionException {
+    private void sendAuth(Responder responder, NonceView nonce) throws SignalingException, ConnectionException {
         // Send auth
         final InitiatorAuth msg;
         try {
-            final Map<String, Map<Object, Object>> tasksData = new HashMap<>();
-            tasksData.put(this.task.getName(), this.task.getData());
-            msg = new InitiatorAuth(nonce.getCookieBytes(), this.task.getName(), tasksData);
-        } catch (ValidationError e) {
+            if (this.encodedTask != this.task) {
+                final Map<String, Map<Object, Object>> taskData = new HashMap<>();
+                taskData.put(this.task.getName(), this.task.getData());
+                this.encodedTaskData = EncodedValue.encode(taskData);
+                this.taskData = taskData;
+                this.encodedTask = this.task;
+            }
+            msg = new InitiatorAuth(nonce.getCookieBytes(), this.task.getName(), this.taskData, this.encodedTaskData);
+        } catch (ValidationError | SerializationError e) {
             throw new ProtocolException("Invalid task data", e);
         }
         final byte[] packet = this.buildPacket(msg, responder);
@@ -571,10 +597,8 @@ public class InitiatorSignaling extends Signaling {
             //noinspection ConstantConditions
             if (this.getState() == SignalingState.TASK && this.responder != null & this.responder.getId() == id) {
                 return this.responder;
-            } else if (this.responders.containsKey(id)) {
-                return this.responders.get(id);
             }
-            return null;
+            return this.responders.get(id);
         } else {
             throw new ProtocolException("Invalid peer id: " + id);
         }
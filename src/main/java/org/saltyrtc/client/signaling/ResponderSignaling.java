@@ -12,6 +12,7 @@ import org.saltyrtc.client.SaltyRTC;
 import org.saltyrtc.client.annotations.NonNull;
 import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.crypto.CryptoProvider;
 import org.saltyrtc.client.events.SignalingConnectionLostEvent;
 import org.saltyrtc.client.exceptions.ConnectionException;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
@@ -21,11 +22,14 @@ import org.saltyrtc.client.exceptions.ProtocolException;
 import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.SignalingException;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
 import org.saltyrtc.client.helpers.MessageReader;
 import org.saltyrtc.client.helpers.TaskHelper;
 import org.saltyrtc.client.keystore.AuthToken;
-import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.BoxView;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
+import org.saltyrtc.client.keystore.SharedKeyStore;
 import org.saltyrtc.client.messages.Message;
 import org.saltyrtc.client.messages.c2c.InitiatorAuth;
 import org.saltyrtc.client.messages.c2c.Key;
@@ -35,7 +39,7 @@ import org.saltyrtc.client.messages.s2c.ClientHello;
 import org.saltyrtc.client.messages.s2c.NewInitiator;
 import org.saltyrtc.client.messages.s2c.ResponderServerAuth;
 import org.saltyrtc.client.messages.s2c.SendError;
-import org.saltyrtc.client.nonce.SignalingChannelNonce;
+import org.saltyrtc.client.nonce.NonceView;
 import org.saltyrtc.client.signaling.peers.Initiator;
 import org.saltyrtc.client.signaling.peers.Peer;
 import org.saltyrtc.client.signaling.state.InitiatorHandshakeState;
@@ -47,6 +51,7 @@ import org.slf4j.Logger;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.net.ssl.SSLContext;
@@ -58,6 +63,14 @@ public class ResponderSignaling extends Signaling {
     @Nullable
     private AuthToken authToken = null;
 
+    // Task names and data of the auth message, the data is only encoded once
+    @Nullable
+    private List<String> taskNames;
+    @Nullable
+    private Map<String, Map<Object, Object>> tasksData;
+    @Nullable
+    private EncodedValue encodedTasksData;
+
     // Logging
     protected Logger getLogger() {
         return org.slf4j.LoggerFactory.getLogger("SaltyRTC.RSignaling");
@@ -69,10 +82,13 @@ public class ResponderSignaling extends Signaling {
                               @Nullable byte[] initiatorTrustedKey,
                               @Nullable byte[] expectedServerKey,
                               @NonNull Task[] tasks,
-                              int pingInterval)
+                              int pingInterval,
+                              int messageHistorySize,
+                              @NonNull CryptoProvider cryptoProvider,
+                              @NonNull KeyStorePool keyStorePool)
                               throws InvalidKeyException {
         super(saltyRTC, host, port, permanentKey, sslContext, initiatorTrustedKey, expectedServerKey,
-              SignalingRole.Responder, tasks, pingInterval);
+              SignalingRole.Responder, tasks, pingInterval, messageHistorySize, cryptoProvider, keyStorePool);
         if (initiatorTrustedKey != null) {
             if (initiatorPublicKey != null || authToken != null) {
                 throw new IllegalArgumentException(
@@ -83,7 +99,7 @@ public class ResponderSignaling extends Signaling {
             this.initiator.handshakeState = InitiatorHandshakeState.TOKEN_SENT;
         } else if (initiatorPublicKey != null && authToken != null) {
             this.initiator = new Initiator(initiatorPublicKey);
-            this.authToken = new AuthToken(authToken);
+            this.authToken = new AuthToken(cryptoProvider, authToken);
         } else {
             throw new IllegalArgumentException(
                 "You must specify either a trusted key or a public key / auth token pair");
@@ -106,8 +122,8 @@ public class ResponderSignaling extends Signaling {
     }
 
     @Override
-    protected Box encryptHandshakeDataForPeer(short receiver, String messageType,
-                                              byte[] payload, byte[] nonce)
+    protected void encryptHandshakeDataForPeer(short receiver, String messageType,
+                                               byte[] packet, int length)
             throws CryptoFailedException, InvalidKeyException, ProtocolException {
         if (this.isResponderId(receiver)) {
             throw new ProtocolException("Responder may not encrypt messages for other responders: " + receiver);
@@ -120,16 +136,18 @@ public class ResponderSignaling extends Signaling {
                     throw new ProtocolException(
                         "Cannot encrypt token message for peer: Auth token is null");
                 }
-                return this.authToken.encrypt(payload, nonce);
+                this.authToken.encryptInPlace(packet, 0, length);
+                break;
             case "key":
-                return this.permanentKey.encrypt(payload, nonce, this.initiator.getPermanentKey());
+                this.sharedKeyCache.encryptInPlace(
+                    this.permanentKey, packet, 0, length, this.initiator.getPermanentKey());
+                break;
             default:
-                byte[] peerSessionKey = this.getPeerSessionKey();
-                if (peerSessionKey == null) {
+                if (this.sessionSharedKey == null) {
                     throw new ProtocolException(
                             "Trying to encrypt for peer using session key, but session key is null");
                 }
-                return this.sessionKey.encrypt(payload, nonce, peerSessionKey);
+                this.sessionSharedKey.encryptInPlace(packet, 0, length);
         }
     }
 
@@ -143,7 +161,7 @@ public class ResponderSignaling extends Signaling {
     }
 
     @Override
-    protected void handleServerAuth(Message baseMsg, SignalingChannelNonce nonce) throws ProtocolException {
+    protected void handleServerAuth(Message baseMsg, NonceView nonce) throws ProtocolException {
         // Cast to proper subtype
         final ResponderServerAuth msg;
         try {
@@ -217,7 +235,7 @@ public class ResponderSignaling extends Signaling {
      */
     private void sendKey() throws SignalingException, ConnectionException {
         // Generate our own session key
-        this.sessionKey = new KeyStore();
+        this.sessionKey = this.keyStorePool.take();
 
         // Send public key to initiator
         final Key msg = new Key(this.sessionKey.getPublicKey());
@@ -230,15 +248,20 @@ public class ResponderSignaling extends Signaling {
     /**
      * The initiator sends his public session key.
      */
-    private void handleKey(Key msg) {
+    private void handleKey(Key msg) throws ProtocolException {
         this.initiator.setSessionKey(msg.getKey());
+        try {
+            this.sessionSharedKey = this.sessionKey.getSharedKeyStore(msg.getKey());
+        } catch (InvalidKeyException e) {
+            throw new ProtocolException("Invalid session key from initiator", e);
+        }
         this.initiator.handshakeState = InitiatorHandshakeState.KEY_RECEIVED;
     }
 
     /**
      * Repeat the initiator's cookie and send task list.
      */
-    private void sendAuth(SignalingChannelNonce nonce) throws SignalingException, ConnectionException {
+    private void sendAuth(NonceView nonce) throws SignalingException, ConnectionException {
         // Ensure that cookies are different
         if (nonce.getCookie().equals(this.initiator.getCookiePair().getOurs())) {
             throw new ProtocolException("Their cookie and our cookie are the same");
@@ -247,12 +270,17 @@ public class ResponderSignaling extends Signaling {
         // Send auth
         final ResponderAuth msg;
         try {
-            final Map<String, Map<Object, Object>> tasksData = new HashMap<>();
-            for (Task task : this.tasks) {
-                tasksData.put(task.getName(), task.getData());
+            if (this.encodedTasksData == null) {
+                final Map<String, Map<Object, Object>> tasksData = new HashMap<>();
+                for (Task task : this.tasks) {
+                    tasksData.put(task.getName(), task.getData());
+                }
+                this.encodedTasksData = EncodedValue.encode(tasksData);
+                this.taskNames = TaskHelper.getTaskNames(this.tasks);
+                this.tasksData = tasksData;
             }
-            msg = new ResponderAuth(nonce.getCookieBytes(), TaskHelper.getTaskNames(this.tasks), tasksData);
-        } catch (ValidationError e) {
+            msg = new ResponderAuth(nonce.getCookieBytes(), this.taskNames, this.tasksData, this.encodedTasksData);
+        } catch (ValidationError | SerializationError e) {
             throw new ProtocolException("Invalid task data", e);
         }
         final byte[] packet = this.buildPacket(msg, this.initiator);
@@ -264,7 +292,7 @@ public class ResponderSignaling extends Signaling {
     /**
      * The initiator repeats our cookie and sends the chosen task.
      */
-    private void handleAuth(InitiatorAuth msg, SignalingChannelNonce nonce) throws SignalingException {
+    private void handleAuth(InitiatorAuth msg, NonceView nonce) throws SignalingException {
         // Validate cookie
         this.validateRepeatedCookie(this.initiator, msg.getYourCookie());
 
@@ -301,7 +329,7 @@ public class ResponderSignaling extends Signaling {
      * @return The decrypted message bytes.
      * @throws ProtocolException if decryption fails or when receiving messages in an invalid state.
      */
-    private byte[] decryptInitiatorMessage(Box box) throws ProtocolException {
+    private byte[] decryptInitiatorMessage(BoxView box) throws ProtocolException {
         switch (this.initiator.handshakeState) {
             case NEW:
             case TOKEN_SENT:
@@ -311,7 +339,7 @@ public class ResponderSignaling extends Signaling {
             case KEY_SENT:
                 // Expect a key message, encrypted with the permanent keys
                 try {
-                    return this.permanentKey.decrypt(box, this.initiator.getPermanentKey());
+                    return this.sharedKeyCache.decrypt(this.permanentKey, box, this.initiator.getPermanentKey());
                 } catch (CryptoFailedException | InvalidKeyException e) {
                     e.printStackTrace();
                     throw new ProtocolException("Could not decrypt key message");
@@ -320,8 +348,9 @@ public class ResponderSignaling extends Signaling {
             case AUTH_RECEIVED:
                 // Otherwise, it must be encrypted with the session key.
                 try {
-                    return this.sessionKey.decrypt(box, this.initiator.getSessionKey());
-                } catch (CryptoFailedException | InvalidKeyException e) {
+                    assert this.sessionSharedKey != null;
+                    return this.sessionSharedKey.decrypt(box);
+                } catch (CryptoFailedException e) {
                     e.printStackTrace();
                     throw new ProtocolException("Could not decrypt message using session key");
                 }
@@ -332,7 +361,7 @@ public class ResponderSignaling extends Signaling {
     }
 
     @Override
-    protected void onPeerHandshakeMessage(Box box, SignalingChannelNonce nonce)
+    protected void onPeerHandshakeMessage(BoxView box, NonceView nonce)
             throws ValidationError, SerializationError,
             InternalException, ConnectionException, SignalingException {
 
@@ -347,7 +376,7 @@ public class ResponderSignaling extends Signaling {
             // Try to decrypt data accordingly.
             try {
                 assert this.server.hasSessionKey();
-                payload = this.permanentKey.decrypt(box, this.server.getSessionKey());
+                payload = this.sharedKeyCache.decrypt(this.permanentKey, box, this.server.getSessionKey());
             } catch (CryptoFailedException | InvalidKeyException e) {
                 e.printStackTrace();
                 throw new ProtocolException("Could not decrypt server message");
@@ -406,6 +435,7 @@ public class ResponderSignaling extends Signaling {
      */
     private void handleNewInitiator(NewInitiator msg) throws SignalingException, ConnectionException {
         this.initiator = new Initiator(this.initiator.getPermanentKey());
+        this.sessionSharedKey = null;
         this.initiator.setConnected(true);
         this.initPeerHandshake();
     }
@@ -19,6 +19,8 @@ import org.saltyrtc.client.SaltyRTC;
 import org.saltyrtc.client.annotations.NonNull;
 import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoSelfTest;
 import org.saltyrtc.client.events.ApplicationDataEvent;
 import org.saltyrtc.client.events.CloseEvent;
 import org.saltyrtc.client.events.EventHandler;
@@ -34,11 +36,17 @@ import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.SignalingException;
 import org.saltyrtc.client.exceptions.ValidationError;
 import org.saltyrtc.client.helpers.ArrayHelper;
+import org.saltyrtc.client.helpers.EncodedValue;
 import org.saltyrtc.client.helpers.MessageHistory;
 import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.MessageTypeRegistry;
 import org.saltyrtc.client.keystore.AuthToken;
 import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.BoxView;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
+import org.saltyrtc.client.keystore.SharedKeyCache;
+import org.saltyrtc.client.keystore.SharedKeyStore;
 import org.saltyrtc.client.messages.Message;
 import org.saltyrtc.client.messages.c2c.Application;
 import org.saltyrtc.client.messages.c2c.Close;
@@ -48,7 +56,8 @@ import org.saltyrtc.client.messages.s2c.InitiatorServerAuth;
 import org.saltyrtc.client.messages.s2c.ResponderServerAuth;
 import org.saltyrtc.client.messages.s2c.SendError;
 import org.saltyrtc.client.messages.s2c.ServerHello;
-import org.saltyrtc.client.nonce.CombinedSequenceSnapshot;
+import org.saltyrtc.client.nonce.NonceTemplate;
+import org.saltyrtc.client.nonce.NonceView;
 import org.saltyrtc.client.nonce.SignalingChannelNonce;
 import org.saltyrtc.client.signaling.peers.Peer;
 import org.saltyrtc.client.signaling.peers.Server;
@@ -92,16 +101,32 @@ public abstract class Signaling implements SignalingInterface {
     private SignalingState state = SignalingState.NEW;
     private final HandoverState handoverState = new HandoverState();
 
+    // Views of the incoming frame, reused for every message (see onBinaryMessage)
+    private final BoxView incomingBox = new BoxView();
+    private final NonceView incomingNonce = new NonceView();
+
     // Reference to main class
     final SaltyRTC salty;
 
     // Server information
     @NonNull Server server;
 
+    // Crypto backend for the keys generated during the handshake
+    @NonNull final CryptoProvider cryptoProvider;
+
+    // Pre-generated session key pairs
+    @NonNull final KeyStorePool keyStorePool;
+
     // Our keys
     @NonNull final KeyStore permanentKey;
     KeyStore sessionKey;
 
+    // Cached shared keys of our permanent key, used during the handshakes
+    @NonNull final SharedKeyCache sharedKeyCache = SharedKeyCache.getInstance();
+
+    // Precomputed shared key between our session key and the peer session key
+    @Nullable SharedKeyStore sessionSharedKey;
+
     // Peer trusted key or auth token
     @Nullable AuthToken authToken;
     @Nullable byte[] peerTrustedKey;
@@ -117,8 +142,11 @@ public abstract class Signaling implements SignalingInterface {
     @NonNull final Task[] tasks;
     Task task;
 
+    // Message types of the negotiated task, registered when the task is initialized
+    @NonNull private MessageTypeRegistry messageTypes = new MessageTypeRegistry();
+
     // Message history
-    private final MessageHistory history = new MessageHistory(10);
+    private final MessageHistory history;
 
     public Signaling(SaltyRTC salty, String host, int port,
                      @NonNull KeyStore permanentKey, SSLContext sslContext,
@@ -126,7 +154,10 @@ public abstract class Signaling implements SignalingInterface {
                      @Nullable byte[] expectedServerKey,
                      @NonNull SignalingRole role,
                      @NonNull Task[] tasks,
-                     int pingInterval) {
+                     int pingInterval,
+                     int messageHistorySize,
+                     @NonNull CryptoProvider cryptoProvider,
+                     @NonNull KeyStorePool keyStorePool) {
         this.salty = salty;
         this.host = host;
         this.port = port;
@@ -138,6 +169,9 @@ public abstract class Signaling implements SignalingInterface {
         this.tasks = tasks;
         this.server = new Server();
         this.pingInterval = pingInterval;
+        this.history = new MessageHistory(messageHistorySize);
+        this.cryptoProvider = cryptoProvider;
+        this.keyStorePool = keyStorePool;
 
         // When the handover is complete, notify event handlers and close the WebSocket.
         this.handoverState.handoverComplete.register(new EventHandler<HandoverState.HandoverComplete>() {
@@ -203,6 +237,7 @@ public abstract class Signaling implements SignalingInterface {
      * To get notified when the connection is up and running, subscribe to the `ConnectedEvent`.
      */
     public void connect() throws ConnectionException {
+        this.checkCryptoProviders();
         this.getLogger().info("Connecting to SaltyRTC server at "
                 + this.host + ":" + this.port + "...");
         this.resetConnection(null);
@@ -214,6 +249,21 @@ public abstract class Signaling implements SignalingInterface {
         this.connectWebsocket();
     }
 
+    /**
+     * Refuse to connect with a crypto provider whose self test has failed in the background.
+     *
+     * @throws IllegalStateException The self test of a crypto provider has failed.
+     */
+    private void checkCryptoProviders() {
+        try {
+            CryptoSelfTest.check(this.permanentKey.getCryptoProvider());
+            CryptoSelfTest.check(this.cryptoProvider);
+            CryptoSelfTest.check(this.keyStorePool.getCryptoProvider());
+        } catch (CryptoFailedException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Disconnect from the SaltyRTC server.
      *
@@ -267,6 +317,7 @@ public abstract class Signaling implements SignalingInterface {
 
         // Reset
         this.server = new Server();
+        this.sessionSharedKey = null;
         this.handoverState.reset();
         this.setState(SignalingState.NEW);
         this.getLogger().debug("Connection reset");
@@ -326,13 +377,16 @@ public abstract class Signaling implements SignalingInterface {
                     return;
                 }
 
-                SignalingChannelNonce nonce = null;
+                final NonceView nonce = Signaling.this.incomingNonce;
                 try {
-                    // Parse buffer
-                    final Box box = new Box(ByteBuffer.wrap(binary), SignalingChannelNonce.TOTAL_LENGTH);
+                    // Wrap buffer, nothing is copied before the payload has been decrypted
+                    if (binary.length < SignalingChannelNonce.TOTAL_LENGTH) {
+                        throw new ValidationError("Message is shorter than a nonce (" + binary.length + " bytes)");
+                    }
+                    final BoxView box = Signaling.this.incomingBox.wrap(binary, 0, binary.length);
 
-                    // Parse and validate nonce
-                    nonce = new SignalingChannelNonce(ByteBuffer.wrap(box.getNonce()));
+                    // Validate nonce
+                    nonce.wrap(binary, 0);
                     validateNonce(nonce);
 
                     // Dispatch message
@@ -486,36 +540,34 @@ public abstract class Signaling implements SignalingInterface {
      */
     byte[] buildPacket(Message msg, Peer receiver, boolean encrypt) throws ProtocolException {
         // Choose proper combined sequence number
-        final CombinedSequenceSnapshot csn;
+        final long csn;
         try {
-            csn = receiver.getCsnPair().getOurs().next();
+            csn = receiver.getCsnPair().getOurs().nextCombinedSequence();
         } catch (OverflowException e) {
             throw new ProtocolException("CSN overflow", e);
         }
 
-        // Create nonce
-        final SignalingChannelNonce nonce = new SignalingChannelNonce(
-                receiver.getCookiePair().getOurs().getBytes(), this.address, receiver.getId(),
-                csn.getOverflow(), csn.getSequenceNumber());
-        final byte[] nonceBytes = nonce.toBytes();
+        // Nonce template with cookie and addresses, only the CSN is filled in per message
+        final NonceTemplate nonce = receiver.getNonceTemplate(this.address);
 
-        // Encode message
-        final byte[] payload = msg.toBytes();
-
-        // Non encrypted messages can be created by concatenation
+        // Non encrypted messages can be created by writing the nonce in front of the message
         if (!encrypt) {
-            return ArrayHelper.concat(nonceBytes, payload);
+            final byte[] packet = msg.toBytes(Box.NONCE_LENGTH);
+            nonce.write(packet, 0, csn);
+            return packet;
         }
 
-        // Otherwise, encrypt packet
+        // Otherwise, pack the message behind space for nonce and MAC and encrypt it in place
+        final byte[] packet = msg.toBytes(Box.PLAINTEXT_OFFSET);
+        nonce.write(packet, 0, csn);
+        final int length = packet.length - Box.PLAINTEXT_OFFSET;
         // TODO: Use polymorphism using peer object
-        final Box box;
         try {
             if (receiver.getId() == SALTYRTC_ADDR_SERVER) {
-                box = this.encryptHandshakeDataForServer(payload, nonceBytes);
+                this.encryptHandshakeDataForServer(packet, length);
             } else if (receiver.getId() == SALTYRTC_ADDR_INITIATOR || this.isResponderId(receiver.getId())) {
                 // TODO: Do we re-use the same cookie everywhere?
-                box = this.encryptHandshakeDataForPeer(receiver.getId(), msg.getType(), payload, nonceBytes);
+                this.encryptHandshakeDataForPeer(receiver.getId(), msg.getType(), packet, length);
             } else {
                 throw new ProtocolException("Bad receiver byte: " + receiver);
             }
@@ -524,9 +576,9 @@ public abstract class Signaling implements SignalingInterface {
         }
 
         // Store message in message history
-        this.history.store(msg, nonce);
+        this.history.store(msg, new NonceView(packet, 0));
 
-        return box.toBytes();
+        return packet;
     }
 
     /**
@@ -566,18 +618,18 @@ public abstract class Signaling implements SignalingInterface {
      *
      * @param box The box containing raw nonce and payload bytes.
      */
-    private void onServerHandshakeMessage(Box box, SignalingChannelNonce nonce)
+    private void onServerHandshakeMessage(BoxView box, NonceView nonce)
             throws ValidationError, SerializationError, SignalingException, ConnectionException {
         // Decrypt if necessary
         final byte[] payload;
         if (this.server.handshakeState == ServerHandshakeState.NEW) {
             // The very first message is unencrypted
-            payload = box.getData();
+            payload = box.copyData();
         } else {
             // Later, they're encrypted with our permanent key and the server key
             try {
                 assert this.server.hasSessionKey();
-                payload = this.permanentKey.decrypt(box, this.server.getSessionKey());
+                payload = this.sharedKeyCache.decrypt(this.permanentKey, box, this.server.getSessionKey());
             } catch (CryptoFailedException | InvalidKeyException e) {
                 throw new ProtocolException("Could not decrypt server message", e);
             }
@@ -626,14 +678,14 @@ public abstract class Signaling implements SignalingInterface {
     /**
      * Message received during peer handshake.
      */
-    abstract void onPeerHandshakeMessage(Box box, SignalingChannelNonce nonce)
+    abstract void onPeerHandshakeMessage(BoxView box, NonceView nonce)
         throws ValidationError, SerializationError,
         InternalException, ConnectionException, SignalingException;
 
     /**
      * Message received from peer or server *after* the handshake is done.
      */
-    private void onSignalingMessage(Box box, SignalingChannelNonce nonce) throws SignalingException {
+    private void onSignalingMessage(BoxView box, NonceView nonce) throws SignalingException {
         this.getLogger().debug("Message received");
         if (nonce.getSource() == SALTYRTC_ADDR_SERVER) {
             this.onSignalingServerMessage(box);
@@ -653,7 +705,7 @@ public abstract class Signaling implements SignalingInterface {
     /**
      * Signaling message received from server *after* the handshake is done.
      */
-    private void onSignalingServerMessage(Box box) throws SignalingException {
+    private void onSignalingServerMessage(BoxView box) throws SignalingException {
         final Message message;
 
         try {
@@ -685,7 +737,7 @@ public abstract class Signaling implements SignalingInterface {
         final Message message;
 
         try {
-            message = MessageReader.read(decryptedBytes, this.task.getSupportedMessageTypes());
+            message = MessageReader.read(decryptedBytes, this.messageTypes);
         } catch (ValidationError | SerializationError e) {
             this.getLogger().error("Received invalid message from peer", e);
             return;
@@ -696,7 +748,9 @@ public abstract class Signaling implements SignalingInterface {
             this.handleClose((Close) message);
         } else if (message instanceof TaskMessage) {
             this.getLogger().debug("Received task message");
-            this.task.onTaskMessage((TaskMessage) message);
+            if (!this.messageTypes.dispatch((TaskMessage) message)) {
+                this.task.onTaskMessage((TaskMessage) message);
+            }
         } else if (message instanceof Application) {
             this.getLogger().debug("Received application message");
             this.handleApplication((Application) message);
@@ -708,7 +762,7 @@ public abstract class Signaling implements SignalingInterface {
     /**
      * Handle an incoming server-hello message.
      */
-    private void handleServerHello(ServerHello msg, SignalingChannelNonce nonce) throws ProtocolException {
+    private void handleServerHello(ServerHello msg, NonceView nonce) throws ProtocolException {
         // Update server instance
         this.server.setSessionKey(msg.getKey());
         this.server.getCookiePair().setTheirs(nonce.getCookie());
@@ -739,7 +793,7 @@ public abstract class Signaling implements SignalingInterface {
      * That needs to be done (differently) in the initiator and
      * responder signaling subclasses.
      */
-    abstract void handleServerAuth(Message baseMsg, SignalingChannelNonce nonce) throws
+    abstract void handleServerAuth(Message baseMsg, NonceView nonce) throws
         SignalingException, ConnectionException;
 
     /**
@@ -751,7 +805,7 @@ public abstract class Signaling implements SignalingInterface {
      * @throws ValidationError if the signed keys are not valid.
      */
     void validateSignedKeys(@Nullable byte[] signedKeys,
-                            @NonNull SignalingChannelNonce nonce,
+                            @NonNull NonceView nonce,
                             @NonNull byte[] expectedServerKey)
             throws ValidationError {
         assert this.server.hasSessionKey();
@@ -763,7 +817,7 @@ public abstract class Signaling implements SignalingInterface {
         try {
             getLogger().debug("Expected server key is " + NaCl.asHex(expectedServerKey));
             getLogger().debug("Server session key is " + NaCl.asHex(this.server.getSessionKey()));
-            decrypted = this.permanentKey.decrypt(box, expectedServerKey);
+            decrypted = this.sharedKeyCache.decrypt(this.permanentKey, box, expectedServerKey);
         } catch (CryptoFailedException e) {
             throw new ValidationError("Could not decrypt signed_keys in server-auth message", e);
         } catch (InvalidKeyException e) {
@@ -786,15 +840,32 @@ public abstract class Signaling implements SignalingInterface {
      * @param data The task data provided by the peer.
      */
     void initTask(Task task, Map<Object, Object> data) throws ProtocolException {
+        // The task may register decoders and handlers during init
+        this.messageTypes = new MessageTypeRegistry();
         try {
             task.init(this, data);
         } catch (ValidationError e) {
             e.printStackTrace();
             throw new ProtocolException("Peer sent invalid task data", e);
         }
+        for (String type : task.getSupportedMessageTypes()) {
+            if (!this.messageTypes.contains(type)) {
+                this.messageTypes.register(type);
+            }
+        }
         this.task = task;
     }
 
+    /**
+     * Return the message types of the task.
+     *
+     * This method should primarily be used by tasks.
+     */
+    @NonNull
+    public MessageTypeRegistry getMessageTypeRegistry() {
+        return this.messageTypes;
+    }
+
     /**
      * Return the negotiated task, or null if no task has been negotiated yet.
      */
@@ -834,19 +905,29 @@ public abstract class Signaling implements SignalingInterface {
 
     /**
      * Validate the nonce.
+     *
+     * The sender is looked up once and then used for both the CSN and the cookie check.
      */
-    private void validateNonce(SignalingChannelNonce nonce) throws ValidationError, SignalingException {
+    private void validateNonce(NonceView nonce) throws ValidationError, SignalingException {
         this.validateNonceSource(nonce);
         this.validateNonceDestination(nonce);
-        this.validateNonceCsn(nonce);
-        this.validateNonceCookie(nonce);
+
+        final short source = nonce.getSource();
+        final Peer peer = this.getPeerWithId(source);
+        if (peer == null) {
+            // This can happen e.g. when a responder was dropped between validating
+            // the source and the CSN.
+            throw new ProtocolException("Could not find peer " + source);
+        }
+        this.validateNonceCsn(nonce, peer);
+        this.validateNonceCookie(nonce, peer);
     }
 
     /**
      * Validate the sender address in the nonce.
      * TODO: Rewrite or remove with new peer logic
      */
-    private void validateNonceSource(SignalingChannelNonce nonce) throws ValidationError {
+    private void validateNonceSource(NonceView nonce) throws ValidationError {
         switch (this.getState()) {
             case SERVER_HANDSHAKE:
                 // Messages during server handshake must come from the server.
@@ -894,7 +975,7 @@ public abstract class Signaling implements SignalingInterface {
     /**
      * Validate the receiver address in the nonce.
      */
-    private void validateNonceDestination(SignalingChannelNonce nonce) throws ValidationError {
+    private void validateNonceDestination(NonceView nonce) throws ValidationError {
         Short expected = null;
         if (this.getState() == SignalingState.SERVER_HANDSHAKE) {
             switch (this.server.handshakeState) {
@@ -941,15 +1022,9 @@ public abstract class Signaling implements SignalingInterface {
      * Validate the CSN in the nonce.
      *
      * @param nonce The nonce from the incoming message.
+     * @param peer The sender of the message.
      */
-    private void validateNonceCsn(SignalingChannelNonce nonce) throws ValidationError, SignalingException {
-        final Peer peer = this.getPeerWithId(nonce.getSource());
-        if (peer == null) {
-            // This can happen e.g. when a responder was dropped between validating
-            // the source and the CSN.
-            throw new ProtocolException("Could not find peer " + nonce.getSource());
-        }
-
+    private void validateNonceCsn(NonceView nonce, Peer peer) throws ValidationError {
         // If this is the first message from that sender,
         // validate the overflow number and store the CSN.
         if (!peer.getCsnPair().hasTheirs()) {
@@ -975,10 +1050,9 @@ public abstract class Signaling implements SignalingInterface {
     /**
      * Validate the cookie in the nonce.
      */
-    private void validateNonceCookie(SignalingChannelNonce nonce) throws ValidationError, SignalingException {
-        final Peer peer = this.getPeerWithId(nonce.getSource());
-        if (peer != null && peer.getCookiePair().hasTheirs()) {
-            if (!nonce.getCookie().equals(peer.getCookiePair().getTheirs())) {
+    private void validateNonceCookie(NonceView nonce, Peer peer) throws ValidationError {
+        if (peer.getCookiePair().hasTheirs()) {
+            if (!nonce.hasCookie(peer.getCookiePair().getTheirs())) {
                 throw new ValidationError(peer.getName() + " cookie changed");
             }
         }
@@ -1002,18 +1076,23 @@ public abstract class Signaling implements SignalingInterface {
 
     /**
      * Encrypt data for the server during the handshake.
+     *
+     * The packet contains the nonce, followed by space for the MAC and `length` bytes of data.
+     * It is encrypted in place, see {@link KeyStore#encryptInPlace(byte[], int, int, byte[])}.
      */
-    private Box encryptHandshakeDataForServer(byte[] payload, byte[] nonce)
+    private void encryptHandshakeDataForServer(byte[] packet, int length)
             throws CryptoFailedException, InvalidKeyException {
         assert this.server.hasSessionKey();
-        return this.permanentKey.encrypt(payload, nonce, this.server.getSessionKey());
+        this.sharedKeyCache.encryptInPlace(this.permanentKey, packet, 0, length, this.server.getSessionKey());
     }
 
     /**
      * Encrypt data for the specified peer during the handshake.
+     *
+     * The packet is encrypted in place, see {@link #encryptHandshakeDataForServer(byte[], int)}.
      */
-    abstract Box encryptHandshakeDataForPeer(short receiver, String messageType,
-                                             byte[] payload, byte[] nonce)
+    abstract void encryptHandshakeDataForPeer(short receiver, String messageType,
+                                              byte[] packet, int length)
         throws CryptoFailedException, InvalidKeyException, ProtocolException;
 
     /**
@@ -1116,7 +1195,11 @@ public abstract class Signaling implements SignalingInterface {
     }
 
     private void handleApplication(Application msg) {
-        this.salty.events.applicationData.notifyHandlers(new ApplicationDataEvent(msg.getData()));
+        final EncodedValue data = msg.getEncodedData();
+        this.salty.events.applicationData.notifyHandlers(
+            data != null
+                ? new ApplicationDataEvent(data, this.salty.getApplicationCodecs())
+                : new ApplicationDataEvent(msg.getData()));
     }
 
 	/**
@@ -1160,37 +1243,43 @@ public abstract class Signaling implements SignalingInterface {
      */
     public Box encryptForPeer(@NonNull byte[] data, @NonNull byte[] nonce) throws
         CryptoFailedException {
-        try {
-            return this.sessionKey.encrypt(data, nonce, this.getPeerSessionKey());
-        } catch (InvalidKeyException e) {
-            // This could only happen if the session keys are somehow broken.
-            // If that happens, something went massively wrong.
-            e.printStackTrace();
-            if (this.getState() == SignalingState.TASK) {
-                this.sendClose(CloseCode.INTERNAL_ERROR);
-            }
-            // Close connection
-            this.resetConnection(CloseCode.INTERNAL_ERROR);
-            return null;
+        final SharedKeyStore sharedKey = this.sessionSharedKey;
+        if (sharedKey == null) {
+            throw new CryptoFailedException("Peer session key has not been established");
         }
+        return sharedKey.encrypt(data, nonce);
+    }
+
+    /**
+     * Return the template for nonces of messages sent to the peer.
+     *
+     * This method should primarily be used by tasks.
+     */
+    @Nullable
+    public NonceTemplate getPeerNonceTemplate() {
+        final Peer peer = this.getPeer();
+        return peer == null ? null : peer.getNonceTemplate(this.address);
     }
 
     /**
      * Decrypt data from the peer.
      */
     public byte[] decryptFromPeer(Box box) throws CryptoFailedException {
-        try {
-            return this.sessionKey.decrypt(box, this.getPeerSessionKey());
-        } catch (InvalidKeyException e) {
-            // This could only happen if the session keys are somehow broken.
-            // If that happens, something went massively wrong.
-            e.printStackTrace();
-            if (this.getState() == SignalingState.TASK) {
-                this.sendClose(CloseCode.INTERNAL_ERROR);
-            }
-            // Close connection
-            this.resetConnection(CloseCode.INTERNAL_ERROR);
-            return null;
+        final SharedKeyStore sharedKey = this.sessionSharedKey;
+        if (sharedKey == null) {
+            throw new CryptoFailedException("Peer session key has not been established");
+        }
+        return sharedKey.decrypt(box);
+    }
+
+    /**
+     * Decrypt data from the peer without copying the box out of the received frame.
+     */
+    private byte[] decryptFromPeer(BoxView box) throws CryptoFailedException {
+        final SharedKeyStore sharedKey = this.sessionSharedKey;
+        if (sharedKey == null) {
+            throw new CryptoFailedException("Peer session key has not been established");
         }
+        return sharedKey.decrypt(box);
     }
 }
@@ -5,8 +5,10 @@ import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.exceptions.ConnectionException;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
 import org.saltyrtc.client.exceptions.SignalingException;
+import org.saltyrtc.client.helpers.MessageTypeRegistry;
 import org.saltyrtc.client.keystore.Box;
 import org.saltyrtc.client.messages.c2c.TaskMessage;
+import org.saltyrtc.client.nonce.NonceTemplate;
 import org.saltyrtc.client.signaling.state.HandoverState;
 import org.saltyrtc.client.signaling.state.SignalingState;
 
@@ -36,6 +38,17 @@ public interface SignalingInterface {
     @NonNull
     SignalingRole getRole();
 
+    /**
+     * Return the registry of message types.
+     *
+     * Tasks can register decoders and handlers for their message types in
+     * {@link org.saltyrtc.client.tasks.Task#init}. Types returned by
+     * {@link org.saltyrtc.client.tasks.Task#getSupportedMessageTypes()} that have not been
+     * registered are added afterwards and passed to `onTaskMessage`.
+     */
+    @NonNull
+    MessageTypeRegistry getMessageTypeRegistry();
+
     /**
      * Send a task message through the websocket.
      */
@@ -51,6 +64,18 @@ public interface SignalingInterface {
      */
     Box encryptForPeer(byte[] data, byte[] nonce) throws CryptoFailedException;
 
+    /**
+     * Return the template for nonces of messages sent to the peer.
+     *
+     * It contains our cookie as well as our and the peer's address. Tasks can use it to
+     * create nonces with their own combined sequence numbers without encoding the
+     * constant part again.
+     *
+     * @return The nonce template, or null if there is no peer yet.
+     */
+    @Nullable
+    NonceTemplate getPeerNonceTemplate();
+
     /**
      * Decrypt data from the peer.
      *
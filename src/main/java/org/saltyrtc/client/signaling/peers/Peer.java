@@ -12,6 +12,7 @@ import org.saltyrtc.client.annotations.NonNull;
 import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.cookie.CookiePair;
 import org.saltyrtc.client.nonce.CombinedSequencePair;
+import org.saltyrtc.client.nonce.NonceTemplate;
 
 /**
  * Either the server, the initiator or a responder.
@@ -32,6 +33,9 @@ public abstract class Peer {
     // Cookie pair
     @NonNull private CookiePair cookiePair;
 
+    // Nonce template for outgoing messages, created on first use
+    @Nullable private NonceTemplate nonceTemplate;
+
 	/**
      * Initialize a peer with just an ID.
      */
@@ -95,4 +99,22 @@ public abstract class Peer {
     public CookiePair getCookiePair() {
         return this.cookiePair;
     }
+
+    /**
+     * Return the template for nonces of messages sent to this peer.
+     *
+     * It contains our cookie and the addresses, so it is encoded once and only re-created
+     * if our own address changes (e.g. after the server has assigned it).
+     *
+     * @param source Our address.
+     */
+    @NonNull
+    public NonceTemplate getNonceTemplate(short source) {
+        NonceTemplate template = this.nonceTemplate;
+        if (template == null || template.getSource() != source) {
+            template = new NonceTemplate(this.cookiePair.getOurs().getBytes(), source, this.id);
+            this.nonceTemplate = template;
+        }
+        return template;
+    }
 }
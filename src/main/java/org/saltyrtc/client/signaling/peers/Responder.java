@@ -9,7 +9,9 @@
 package org.saltyrtc.client.signaling.peers;
 
 import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.Nullable;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.SharedKeyStore;
 import org.saltyrtc.client.signaling.state.ResponderHandshakeState;
 
 /**
@@ -17,13 +19,17 @@ import org.saltyrtc.client.signaling.state.ResponderHandshakeState;
  */
 public class Responder extends Peer {
     private final KeyStore keyStore;
+    @Nullable private SharedKeyStore sessionSharedKey;
     public ResponderHandshakeState handshakeState;
     private int counter;
 
-    public Responder(short id, int counter) {
+    /**
+     * @param keyStore A key store with a fresh key pair, used as our session key.
+     */
+    public Responder(short id, int counter, @NonNull KeyStore keyStore) {
         super(id);
         this.counter = counter;
-        this.keyStore = new KeyStore();
+        this.keyStore = keyStore;
         this.handshakeState = ResponderHandshakeState.NEW;
     }
 
@@ -37,6 +43,19 @@ public class Responder extends Peer {
         return this.keyStore;
     }
 
+    /**
+     * Return the precomputed shared key between our session key and the
+     * responder session key, or null if the responder session key is not known yet.
+     */
+    @Nullable
+    public SharedKeyStore getSessionSharedKey() {
+        return this.sessionSharedKey;
+    }
+
+    public void setSessionSharedKey(@Nullable SharedKeyStore sessionSharedKey) {
+        this.sessionSharedKey = sessionSharedKey;
+    }
+
     public int getCounter() {
         return this.counter;
     }
@@ -24,6 +24,9 @@ public interface Task {
      *
      * The task should keep track internally whether it has been initialized or not.
      *
+     * Decoders and handlers for the task message types can be registered here, see
+     * {@link SignalingInterface#getMessageTypeRegistry()}.
+     *
      * @param data The data sent by the peer in the 'auth' message.
      */
     void init(SignalingInterface signaling, Map<Object, Object> data) throws ValidationError;
@@ -68,7 +71,8 @@ public interface Task {
     /**
      * Return the list of supported message types.
      *
-     * Incoming messages with this type will be passed to the task.
+     * Incoming messages with this type will be passed to the task, unless a handler has
+     * been registered for the type.
      */
     @NonNull
     List<String> getSupportedMessageTypes();
@@ -1,6 +1,7 @@
 package org.saltyrtc.client.tests;
 
 import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.TaskMessageType;
 import org.saltyrtc.client.exceptions.ConnectionException;
 import org.saltyrtc.client.exceptions.SignalingException;
 import org.saltyrtc.client.messages.c2c.TaskMessage;
@@ -9,7 +10,6 @@ import org.saltyrtc.client.signaling.SignalingRole;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +20,20 @@ public class PingPongTask extends DummyTask {
     public boolean sentPong = false;
     public boolean receivedPong = false;
 
+    @TaskMessageType("ping")
+    public static class Ping extends TaskMessage {
+        public Ping() {
+            super(PingPongTask_PingCodec.TYPE, PingPongTask_PingCodec.INSTANCE);
+        }
+    }
+
+    @TaskMessageType("pong")
+    public static class Pong extends TaskMessage {
+        public Pong() {
+            super(PingPongTask_PongCodec.TYPE, PingPongTask_PongCodec.INSTANCE);
+        }
+    }
+
     public PingPongTask() {
         this.name = "pingpong.tasks.saltyrtc.org";
     }
@@ -27,6 +41,8 @@ public class PingPongTask extends DummyTask {
     @Override
     public void init(SignalingInterface signaling, Map<Object, Object> data) {
         super.init(signaling, data);
+        signaling.getMessageTypeRegistry().register(PingPongTask_PingCodec.INSTANCE, null);
+        signaling.getMessageTypeRegistry().register(PingPongTask_PongCodec.INSTANCE, null);
     }
 
     @Override
@@ -47,7 +63,7 @@ public class PingPongTask extends DummyTask {
 
     private void sendPing() {
         LOG.info("Sending ping");
-        TaskMessage msg = new TaskMessage("ping", new HashMap<String, Object>());
+        TaskMessage msg = new Ping();
         try {
             this.signaling.sendTaskMessage(msg);
         } catch (SignalingException | ConnectionException e) {
@@ -58,7 +74,7 @@ public class PingPongTask extends DummyTask {
 
     private void sendPong() {
         LOG.info("Sending pong");
-        TaskMessage msg = new TaskMessage("pong", new HashMap<String, Object>());
+        TaskMessage msg = new Pong();
         try {
             this.signaling.sendTaskMessage(msg);
         } catch (SignalingException | ConnectionException e) {
@@ -70,10 +86,10 @@ public class PingPongTask extends DummyTask {
 
     @Override
     public void onTaskMessage(TaskMessage message) {
-        if (message.getType().equals("ping")) {
+        if (message instanceof Ping) {
             LOG.info("Received ping");
             this.sendPong();
-        } else if (message.getType().equals("pong")) {
+        } else if (message instanceof Pong) {
             LOG.info("Received pong");
             this.receivedPong = true;
         }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.codecs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+import org.saltyrtc.client.codecs.ApplicationCodec;
+import org.saltyrtc.client.codecs.ApplicationCodecRegistry;
+import org.saltyrtc.client.codecs.JacksonApplicationCodec;
+import org.saltyrtc.client.events.ApplicationDataEvent;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.messages.c2c.Application;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ApplicationCodecRegistryTest {
+
+    public static class Chat {
+        public String text;
+        public List<String> tags;
+    }
+
+    public static class Point {
+        public final int x;
+        public final int y;
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * Hand-written codec, encodes a point as an array of two integers.
+     */
+    static class PointCodec implements ApplicationCodec<Point> {
+        @Override
+        public Class<Point> getType() {
+            return Point.class;
+        }
+
+        @Override
+        public void encode(Point value, MessagePacker packer) throws IOException {
+            packer.packArrayHeader(2).packInt(value.x).packInt(value.y);
+        }
+
+        @Override
+        public Point decode(EncodedValue data) throws ValidationError {
+            final MessageUnpacker unpacker = data.newUnpacker();
+            try {
+                if (unpacker.getNextFormat().getValueType() != ValueType.ARRAY
+                        || unpacker.unpackArrayHeader() != 2) {
+                    throw new ValidationError("Not a point");
+                }
+                return new Point(unpacker.unpackInt(), unpacker.unpackInt());
+            } catch (IOException | RuntimeException e) {
+                throw new ValidationError("Not a point");
+            }
+        }
+    }
+
+    public static class Blob {
+        public final byte[] bytes;
+        public Blob(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Codec accepting binary data.
+     */
+    static class BlobCodec implements ApplicationCodec<Blob> {
+        @Override
+        public Class<Blob> getType() {
+            return Blob.class;
+        }
+
+        @Override
+        public void encode(Blob value, MessagePacker packer) throws IOException {
+            packer.packBinaryHeader(value.bytes.length).writePayload(value.bytes);
+        }
+
+        @Override
+        public Blob decode(EncodedValue data) throws ValidationError {
+            if (!data.isBinary()) {
+                throw new ValidationError("Not a blob");
+            }
+            return new Blob(data.toByteArray());
+        }
+    }
+
+    private ApplicationCodecRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.registry = new ApplicationCodecRegistry();
+        this.registry.register(new PointCodec());
+        this.registry.register(new JacksonApplicationCodec<>(Chat.class));
+    }
+
+    private ApplicationDataEvent receive(Object data) throws SerializationError, ValidationError {
+        final ApplicationCodec<Object> codec = this.registry.forValue(data);
+        final Application sent = codec != null ? new Application(data, codec) : new Application(data);
+        final Application msg = (Application) MessageReader.read(sent.toBytes());
+        return new ApplicationDataEvent(msg.getEncodedData(), this.registry);
+    }
+
+    @Test
+    public void testHandWrittenCodec() throws SerializationError, ValidationError {
+        final Object data = this.receive(new Point(3, -4)).getData();
+        assertEquals(Point.class, data.getClass());
+        assertEquals(3, ((Point) data).x);
+        assertEquals(-4, ((Point) data).y);
+    }
+
+    @Test
+    public void testJacksonCodec() throws SerializationError, ValidationError {
+        final Chat chat = new Chat();
+        chat.text = "hello";
+        chat.tags = Arrays.asList("a", "b");
+        final ApplicationDataEvent event = this.receive(chat);
+        final Chat received = (Chat) event.getData();
+        assertEquals("hello", received.text);
+        assertEquals(Arrays.asList("a", "b"), received.tags);
+        assertSame(received, event.getDataAs(Chat.class));
+    }
+
+    @Test
+    public void testJacksonCodecWireCompatible() throws SerializationError {
+        final Chat chat = new Chat();
+        chat.text = "hello";
+        assertArrayEquals(new Application((Object) chat).toBytes(),
+            new Application(chat, this.registry.get(Chat.class)).toBytes());
+    }
+
+    @Test
+    public void testNoMatchingCodec() throws SerializationError, ValidationError {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("other", 1);
+        assertEquals(data, this.receive(data).getData());
+        assertEquals(Arrays.asList(1, 2, 3), this.receive(Arrays.asList(1, 2, 3)).getData());
+    }
+
+    @Test
+    public void testDataAsWithCodec() throws SerializationError, ValidationError {
+        final ApplicationDataEvent event = new ApplicationDataEvent(
+            ((Application) MessageReader.read(new Application(new Point(1, 2), new PointCodec()).toBytes()))
+                .getEncodedData());
+        // Without codecs, the data is decoded into a list
+        assertEquals(Arrays.asList(1, 2), event.getData());
+        assertEquals(2, this.receive(new Point(1, 2)).getDataAs(Point.class).y);
+    }
+
+    @Test
+    public void testBytesWithBinaryCodec() throws SerializationError, ValidationError {
+        this.registry.register(new BlobCodec());
+        final byte[] bytes = { 1, 2, 3 };
+        final ApplicationDataEvent event = this.receive(bytes);
+        assertTrue(event.isBinary());
+        assertArrayEquals(bytes, event.getBytes());
+        assertEquals(Blob.class, event.getData().getClass());
+        assertArrayEquals(bytes, event.getBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRegistration() {
+        this.registry.register(new JacksonApplicationCodec<>(Chat.class));
+    }
+
+    @Test
+    public void testLookup() {
+        assertEquals(Point.class, this.registry.get(Point.class).getType());
+        assertNull(this.registry.get(String.class));
+        assertNull(this.registry.forValue(null));
+        assertNull(this.registry.forValue("text"));
+        assertEquals(Chat.class, this.registry.forValue(new Chat()).getType());
+    }
+
+    @Test
+    public void testCopy() {
+        final ApplicationCodecRegistry copy = new ApplicationCodecRegistry(this.registry);
+        copy.register(new JacksonApplicationCodec<>(String.class));
+        assertNull(this.registry.get(String.class));
+        assertTrue(new ApplicationCodecRegistry().isEmpty());
+    }
+
+}
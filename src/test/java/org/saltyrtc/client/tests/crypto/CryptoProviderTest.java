@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.crypto;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.JcaCryptoProvider;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.client.helpers.HexHelper;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Known answer tests that every crypto provider must pass.
+ */
+@RunWith(Parameterized.class)
+public class CryptoProviderTest {
+
+    // Test vectors from tests/box.* in the NaCl distribution (keys from RFC 7748, section 6.1)
+    private static final byte[] ALICE_SK = HexHelper.hexStringToByteArray(
+        "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+    private static final byte[] ALICE_PK = HexHelper.hexStringToByteArray(
+        "8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+    private static final byte[] BOB_SK = HexHelper.hexStringToByteArray(
+        "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+    private static final byte[] BOB_PK = HexHelper.hexStringToByteArray(
+        "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f");
+    private static final byte[] SHARED_KEY = HexHelper.hexStringToByteArray(
+        "1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389");
+    private static final byte[] NONCE = HexHelper.hexStringToByteArray(
+        "69696ee955b62b73cd62bda875fc73d68219e0036b7a0b37");
+    private static final byte[] MESSAGE = HexHelper.hexStringToByteArray(
+        "be075fc53c81f2d5cf141316ebeb0c7b5228c52a4c62cbd44b66849b64244ffc"
+        + "e5ecbaaf33bd751a1ac728d45e6c61296cdc3c01233561f41db66cce314adb31"
+        + "0e3be8250c46f06dceea3a7fa1348057e2f6556ad6b1318a024a838f21af1fde"
+        + "048977eb48f59ffd4924ca1c60902e52f0a089bc76897040e082f93776384864"
+        + "5e0705");
+    private static final byte[] BOX = HexHelper.hexStringToByteArray(
+        "f3ffc7703f9400e52a7dfb4b3d3305d98e993b9f48681273c29650ba32fc76ce"
+        + "48332ea7164d96a4476fb8c531a1186ac0dfc17c98dce87b4da7f011ec48c972"
+        + "71d2c20f9b928fe2270d6fb863d51738b48eeee314a7cc8ab932164548e526ae"
+        + "90224368517acfeabd6bb3732bc0e9da99832b61ca01b6de56244a9e88d5f9b3"
+        + "7973f622a43d14a6599b1f654cb45a74e355a5");
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Iterable<Object[]> providers() {
+        final List<Object[]> providers = new ArrayList<>();
+        providers.add(new Object[] { "jnacl", new JnaclCryptoProvider() });
+        if (JcaCryptoProvider.isSupported()) {
+            providers.add(new Object[] { "jca", new JcaCryptoProvider() });
+        }
+        // Only available if built with the Java 17 classes and run with the Vector API module
+        try {
+            providers.add(new Object[] { "vector",
+                Class.forName("org.saltyrtc.client.crypto.VectorCryptoProvider").newInstance() });
+        } catch (LinkageError | ReflectiveOperationException | UnsupportedOperationException e) {
+            // Not available
+        }
+        return providers;
+    }
+
+    private final CryptoProvider provider;
+
+    public CryptoProviderTest(String name, CryptoProvider provider) {
+        this.provider = provider;
+    }
+
+    @Test
+    public void testDerivePublicKey() throws InvalidKeyException {
+        assertArrayEquals(ALICE_PK, this.provider.derivePublicKey(ALICE_SK));
+        assertArrayEquals(BOB_PK, this.provider.derivePublicKey(BOB_SK));
+    }
+
+    @Test
+    public void testGenerateKeyPair() throws InvalidKeyException {
+        final byte[] publicKey = new byte[CryptoProvider.PUBLICKEYBYTES];
+        final byte[] secretKey = new byte[CryptoProvider.SECRETKEYBYTES];
+        this.provider.generateKeyPair(publicKey, secretKey);
+        assertArrayEquals(publicKey, this.provider.derivePublicKey(secretKey));
+        // Generated keys must work with the reference implementation as well
+        assertArrayEquals(publicKey, NaCl.derivePublicKey(secretKey));
+    }
+
+    @Test
+    public void testGenerateKeyPairs() throws InvalidKeyException {
+        final byte[][] publicKeys = new byte[5][CryptoProvider.PUBLICKEYBYTES];
+        final byte[][] secretKeys = new byte[5][CryptoProvider.SECRETKEYBYTES];
+        this.provider.generateKeyPairs(publicKeys, secretKeys);
+        for (int i = 0; i < publicKeys.length; i++) {
+            assertArrayEquals(publicKeys[i], this.provider.derivePublicKey(secretKeys[i]));
+            assertArrayEquals(publicKeys[i], NaCl.derivePublicKey(secretKeys[i]));
+        }
+        assertFalse(Arrays.equals(secretKeys[0], secretKeys[1]));
+    }
+
+    @Test
+    public void testBox() throws InvalidKeyException, CryptoFailedException {
+        final CryptoInstance alice = this.provider.getInstance(ALICE_SK, BOB_PK);
+        assertArrayEquals(BOX, alice.encrypt(MESSAGE, NONCE));
+        final CryptoInstance bob = this.provider.getInstance(BOB_SK, ALICE_PK);
+        assertArrayEquals(MESSAGE, bob.decrypt(BOX, NONCE));
+    }
+
+    @Test
+    public void testSecretBox() throws InvalidKeyException, CryptoFailedException {
+        final CryptoInstance instance = this.provider.getSymmetricInstance(SHARED_KEY);
+        assertArrayEquals(BOX, instance.encrypt(MESSAGE, NONCE));
+        assertArrayEquals(MESSAGE, instance.decrypt(BOX, NONCE));
+    }
+
+    @Test
+    public void testBoxInPlace() throws InvalidKeyException, CryptoFailedException {
+        final CryptoInstance instance = this.provider.getInstance(ALICE_SK, BOB_PK);
+        final int offset = 3;
+        final byte[] buffer = new byte[offset + CryptoProvider.BOXOVERHEAD + MESSAGE.length];
+        System.arraycopy(MESSAGE, 0, buffer, offset + CryptoProvider.BOXOVERHEAD, MESSAGE.length);
+        instance.encrypt(buffer, offset, buffer, offset + CryptoProvider.BOXOVERHEAD, MESSAGE.length, NONCE, 0);
+        assertArrayEquals(BOX, Arrays.copyOfRange(buffer, offset, buffer.length));
+        instance.decrypt(buffer, offset, buffer, offset, BOX.length, NONCE, 0);
+        assertArrayEquals(MESSAGE, Arrays.copyOfRange(buffer, offset, offset + MESSAGE.length));
+    }
+
+    @Test(expected=CryptoFailedException.class)
+    public void testDecryptTampered() throws InvalidKeyException, CryptoFailedException {
+        final byte[] box = BOX.clone();
+        box[box.length - 1] ^= 1;
+        this.provider.getInstance(BOB_SK, ALICE_PK).decrypt(box, NONCE);
+    }
+
+    @Test
+    public void testWipe() throws InvalidKeyException, CryptoFailedException {
+        final CryptoInstance instance = this.provider.getInstance(ALICE_SK, BOB_PK);
+        final CryptoInstance copy = instance.copy();
+        instance.encrypt(MESSAGE, NONCE);
+        instance.wipe();
+        // Short and long messages may be encrypted by different implementations
+        for (byte[] data : new byte[][] { MESSAGE, new byte[1024] }) {
+            try {
+                instance.encrypt(data, NONCE);
+                fail("Wiped instance encrypted data");
+            } catch (CryptoFailedException e) {
+                // Expected
+            }
+        }
+        try {
+            instance.decrypt(BOX, NONCE);
+            fail("Wiped instance decrypted data");
+        } catch (CryptoFailedException e) {
+            // Expected
+        }
+        // The copy keeps its own key
+        assertArrayEquals(BOX, copy.encrypt(MESSAGE, NONCE));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testCopyWiped() throws InvalidKeyException {
+        final CryptoInstance instance = this.provider.getSymmetricInstance(SHARED_KEY);
+        instance.wipe();
+        instance.copy();
+    }
+
+    @Test
+    public void testProvidersAgree() throws InvalidKeyException, CryptoFailedException {
+        final CryptoProvider reference = new JnaclCryptoProvider();
+        final byte[] publicKey = new byte[CryptoProvider.PUBLICKEYBYTES];
+        final byte[] secretKey = new byte[CryptoProvider.SECRETKEYBYTES];
+        reference.generateKeyPair(publicKey, secretKey);
+        final byte[] expected = reference.getInstance(ALICE_SK, publicKey).encrypt(MESSAGE, NONCE);
+        assertArrayEquals(expected, this.provider.getInstance(ALICE_SK, publicKey).encrypt(MESSAGE, NONCE));
+        assertArrayEquals(expected, this.provider.getInstance(secretKey, ALICE_PK).encrypt(MESSAGE, NONCE));
+    }
+
+    @Test
+    public void testMessageSizes() throws InvalidKeyException, CryptoFailedException {
+        // Providers may use different code paths depending on the size
+        final CryptoInstance reference = new JnaclCryptoProvider().getSymmetricInstance(SHARED_KEY);
+        final CryptoInstance instance = this.provider.getSymmetricInstance(SHARED_KEY);
+        final SecureRandom random = new SecureRandom();
+        final int[] sizes = { 0, 1, 15, 16, 31, 32, 33, 63, 64, 65, 255, 256, 511, 512, 513,
+            1023, 1024, 1025, 1040, 4095, 4096, 4097, 65536 + 7 };
+        for (int size : sizes) {
+            final byte[] message = new byte[size];
+            random.nextBytes(message);
+            final byte[] expected = reference.encrypt(message, NONCE);
+            assertArrayEquals("size " + size, expected, instance.encrypt(message, NONCE));
+            assertArrayEquals("size " + size, message, instance.decrypt(expected, NONCE));
+
+            // In place, at an odd offset
+            final byte[] buffer = new byte[1 + expected.length];
+            System.arraycopy(message, 0, buffer, 1 + CryptoProvider.BOXOVERHEAD, size);
+            instance.encrypt(buffer, 1, buffer, 1 + CryptoProvider.BOXOVERHEAD, size, NONCE, 0);
+            assertArrayEquals("size " + size, expected, Arrays.copyOfRange(buffer, 1, buffer.length));
+            instance.decrypt(buffer, 1, buffer, 1, expected.length, NONCE, 0);
+            assertArrayEquals("size " + size, message, Arrays.copyOfRange(buffer, 1, 1 + size));
+
+            // Tampered
+            expected[random.nextInt(expected.length)] ^= 1;
+            try {
+                instance.decrypt(expected, NONCE);
+                fail("Tampered box of size " + size + " was accepted");
+            } catch (CryptoFailedException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected=InvalidKeyException.class)
+    public void testInvalidPublicKey() throws InvalidKeyException {
+        this.provider.getInstance(ALICE_SK, new byte[CryptoProvider.PUBLICKEYBYTES - 1]);
+    }
+
+    @Test(expected=InvalidKeyException.class)
+    public void testInvalidSymmetricKey() throws InvalidKeyException {
+        this.provider.getSymmetricInstance(new byte[CryptoProvider.SYMMKEYBYTES + 1]);
+    }
+
+    @Test
+    public void testKeyLengths() {
+        assertEquals(NaCl.PUBLICKEYBYTES, CryptoProvider.PUBLICKEYBYTES);
+        assertEquals(NaCl.NONCEBYTES, CryptoProvider.NONCEBYTES);
+        assertEquals(NaCl.BOXOVERHEAD, CryptoProvider.BOXOVERHEAD);
+    }
+
+}
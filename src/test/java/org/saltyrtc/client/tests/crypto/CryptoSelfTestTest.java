@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.crypto;
+
+import org.junit.Test;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoSelfTest;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CryptoSelfTestTest {
+
+    /**
+     * A provider that does not check the authenticator of boxes.
+     */
+    private static class BrokenCryptoProvider extends JnaclCryptoProvider {
+        @NonNull
+        @Override
+        public CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey)
+                throws InvalidKeyException {
+            final CryptoInstance instance = super.getInstance(secretKey, publicKey);
+            return new CryptoInstance() {
+                @NonNull
+                @Override
+                public byte[] encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+                    return instance.encrypt(data, nonce);
+                }
+
+                @NonNull
+                @Override
+                public byte[] decrypt(@NonNull byte[] data, @NonNull byte[] nonce) {
+                    return new byte[data.length - BOXOVERHEAD];
+                }
+
+                @Override
+                public void encrypt(@NonNull byte[] output, int outputOffset, @NonNull byte[] input,
+                                    int inputOffset, int inputLength, @NonNull byte[] nonce,
+                                    int nonceOffset) throws CryptoFailedException {
+                    instance.encrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+                }
+
+                @Override
+                public void decrypt(@NonNull byte[] output, int outputOffset, @NonNull byte[] input,
+                                    int inputOffset, int inputLength, @NonNull byte[] nonce, int nonceOffset) {
+                }
+
+                @NonNull
+                @Override
+                public CryptoInstance copy() {
+                    return instance.copy();
+                }
+
+                @Override
+                public void wipe() {
+                    instance.wipe();
+                }
+            };
+        }
+    }
+
+    private static class RecordingListener implements CryptoSelfTest.Listener {
+        final BlockingQueue<CryptoSelfTest.Result> results = new ArrayBlockingQueue<>(10);
+        final List<Thread> threads = new ArrayList<>();
+
+        @Override
+        public void onResult(@NonNull CryptoSelfTest.Result result) {
+            this.threads.add(Thread.currentThread());
+            this.results.add(result);
+        }
+    }
+
+    @Test
+    public void testRun() throws CryptoFailedException {
+        CryptoSelfTest.run(new JnaclCryptoProvider());
+    }
+
+    @Test
+    public void testRunFails() {
+        try {
+            CryptoSelfTest.run(new BrokenCryptoProvider());
+            fail("Broken provider passed the self test");
+        } catch (CryptoFailedException e) {
+            assertTrue(e.getMessage().contains("box decryption"));
+        }
+    }
+
+    @Test
+    public void testOff() throws CryptoFailedException {
+        final JnaclCryptoProvider provider = new JnaclCryptoProvider();
+        final RecordingListener listener = new RecordingListener();
+        CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.OFF, listener);
+        assertTrue(listener.results.isEmpty());
+        assertNull(CryptoSelfTest.getResult(provider));
+    }
+
+    @Test
+    public void testBlocking() throws CryptoFailedException {
+        final JnaclCryptoProvider provider = new JnaclCryptoProvider();
+        final RecordingListener listener = new RecordingListener();
+        CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BLOCKING, listener);
+        final CryptoSelfTest.Result result = listener.results.poll();
+        assertNotNull(result);
+        assertTrue(result.isPassed());
+        assertSame(provider, result.getProvider());
+        assertSame(Thread.currentThread(), listener.threads.get(0));
+
+        // The result is remembered
+        assertSame(result, CryptoSelfTest.getResult(provider));
+        CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BLOCKING, listener);
+        assertSame(result, listener.results.poll());
+    }
+
+    @Test
+    public void testBlockingFails() {
+        final BrokenCryptoProvider provider = new BrokenCryptoProvider();
+        final RecordingListener listener = new RecordingListener();
+        try {
+            CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BLOCKING, listener);
+            fail("Broken provider passed the self test");
+        } catch (CryptoFailedException e) {
+            final CryptoSelfTest.Result result = listener.results.poll();
+            assertNotNull(result);
+            assertFalse(result.isPassed());
+            assertSame(e, result.getError());
+        }
+    }
+
+    @Test
+    public void testBackground() throws CryptoFailedException, InterruptedException {
+        final BrokenCryptoProvider provider = new BrokenCryptoProvider();
+        final RecordingListener listener = new RecordingListener();
+        CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BACKGROUND, listener);
+        final CryptoSelfTest.Result result = listener.results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertFalse(result.isPassed());
+        assertEquals(1, listener.threads.size());
+        assertNotSame(Thread.currentThread(), listener.threads.get(0));
+        assertSame(result, CryptoSelfTest.getResult(provider));
+    }
+
+    @Test
+    public void testBackgroundRefusesFailedProvider() throws InterruptedException {
+        final BrokenCryptoProvider provider = new BrokenCryptoProvider();
+        final RecordingListener listener = new RecordingListener();
+        try {
+            CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BACKGROUND, listener);
+        } catch (CryptoFailedException e) {
+            fail("Background self test delayed the caller");
+        }
+        assertNotNull(listener.results.poll(10, TimeUnit.SECONDS));
+
+        // Once the failure is known, the provider is refused
+        try {
+            CryptoSelfTest.check(provider);
+            fail("Failed provider was not refused");
+        } catch (CryptoFailedException e) {
+            assertTrue(e.getMessage().contains("box decryption"));
+        }
+        try {
+            CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BACKGROUND, listener);
+            fail("Failed provider was not refused");
+        } catch (CryptoFailedException e) {
+            assertSame(e, listener.results.poll().getError());
+        }
+    }
+
+    @Test
+    public void testCheck() throws CryptoFailedException {
+        final JnaclCryptoProvider provider = new JnaclCryptoProvider();
+        // Not tested yet
+        CryptoSelfTest.check(provider);
+        CryptoSelfTest.verify(provider, CryptoSelfTest.Policy.BLOCKING, null);
+        CryptoSelfTest.check(provider);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.crypto;
+
+import org.junit.Test;
+import org.saltyrtc.client.crypto.CryptoSelfTest;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.helpers.HexHelper;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.curve25519;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test vectors from RFC 7748.
+ */
+public class Curve25519Test {
+
+    private static byte[] scalarmult(String scalar, String u) {
+        final byte[] out = new byte[32];
+        curve25519.crypto_scalarmult(out, HexHelper.hexStringToByteArray(scalar),
+            HexHelper.hexStringToByteArray(u));
+        return out;
+    }
+
+    private static void assertHex(String expected, byte[] actual) {
+        assertEquals(expected, NaCl.asHex(actual));
+    }
+
+    @Test
+    public void testVector1() {
+        assertHex("c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552", scalarmult(
+            "a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4",
+            "e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c"));
+    }
+
+    @Test
+    public void testVector2() {
+        // The most significant bit of the u-coordinate is set and must be ignored
+        assertHex("95cbde9476e8907d7aade45cb4b873f88b595a68799fa152e6f8f7647aac7957", scalarmult(
+            "4b66e9d4d1b4673c5ad22691957d6af5c11b6421e0ea01d42ca4169e7918ba0d",
+            "e5210f12786811d3f4b7959d0538ae2c31dbe7106fc03c3efc4cd549c715a493"));
+    }
+
+    @Test
+    public void testIterated() {
+        byte[] k = new byte[32];
+        byte[] u = new byte[32];
+        k[0] = 9;
+        u[0] = 9;
+        for (int i = 1; i <= 1000; i++) {
+            final byte[] result = new byte[32];
+            curve25519.crypto_scalarmult(result, k, u);
+            u = k;
+            k = result;
+            if (i == 1) {
+                assertHex("422c8e7a6227d7bca1350b3e2bb7279f7897b87bb6854b783c60e80311ae3079", k);
+            }
+        }
+        assertHex("684cf59ba83309552800ef566f2f4d3c1c3887c49360e3875f2eb94d99532c51", k);
+    }
+
+    @Test
+    public void testDiffieHellman() {
+        final byte[] aliceSk = HexHelper.hexStringToByteArray(
+            "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+        final byte[] bobSk = HexHelper.hexStringToByteArray(
+            "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+
+        final byte[] alicePk = new byte[32];
+        final byte[] bobPk = new byte[32];
+        curve25519.crypto_scalarmult_base(alicePk, aliceSk);
+        curve25519.crypto_scalarmult_base(bobPk, bobSk);
+        assertHex("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a", alicePk);
+        assertHex("de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f", bobPk);
+
+        final byte[] shared1 = new byte[32];
+        final byte[] shared2 = new byte[32];
+        curve25519.crypto_scalarmult(shared1, aliceSk, bobPk);
+        curve25519.crypto_scalarmult(shared2, bobSk, alicePk);
+        assertHex("4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742", shared1);
+        assertArrayEquals(shared1, shared2);
+    }
+
+    @Test
+    public void testScalarmultBaseMatchesLadder() {
+        final byte[] base = new byte[32];
+        base[0] = 9;
+        final SecureRandom random = new SecureRandom();
+        for (int i = 0; i < 200; i++) {
+            final byte[] scalar = new byte[32];
+            if (i == 0) {
+                Arrays.fill(scalar, (byte) 0xff);
+            } else if (i > 1) {
+                random.nextBytes(scalar);
+            }
+            final byte[] expected = new byte[32];
+            final byte[] actual = new byte[32];
+            curve25519.crypto_scalarmult(expected, scalar, base);
+            curve25519.crypto_scalarmult_base(actual, scalar);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testScalarmultBaseBatch() {
+        final SecureRandom random = new SecureRandom();
+        final byte[][] scalars = new byte[17][32];
+        final byte[][] results = new byte[17][32];
+        for (byte[] scalar : scalars) {
+            random.nextBytes(scalar);
+        }
+        curve25519.crypto_scalarmult_base_batch(results, scalars);
+        for (int i = 0; i < scalars.length; i++) {
+            final byte[] expected = new byte[32];
+            curve25519.crypto_scalarmult_base(expected, scalars[i]);
+            assertArrayEquals(expected, results[i]);
+        }
+
+        // Single element and empty batches
+        curve25519.crypto_scalarmult_base_batch(new byte[0][], new byte[0][]);
+        final byte[][] single = new byte[1][32];
+        curve25519.crypto_scalarmult_base_batch(single, new byte[][] { HexHelper.hexStringToByteArray(
+            "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a") });
+        assertHex("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a", single[0]);
+    }
+
+    @Test
+    public void testSelfTest() throws CryptoFailedException {
+        CryptoSelfTest.run(new JnaclCryptoProvider());
+    }
+
+}
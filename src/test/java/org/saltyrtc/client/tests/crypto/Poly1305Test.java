@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.crypto;
+
+import org.junit.Test;
+import org.saltyrtc.client.helpers.HexHelper;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.poly1305;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class Poly1305Test {
+
+    private static final byte[] KEY = HexHelper.hexStringToByteArray(
+        "85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b");
+    private static final byte[] MESSAGE = "Cryptographic Forum Research Group"
+        .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Test vector from RFC 8439, section 2.5.2.
+     */
+    @Test
+    public void testVector() {
+        final byte[] tag = new byte[16];
+        poly1305.crypto_onetimeauth(tag, 0, MESSAGE, 0, MESSAGE.length, KEY);
+        assertEquals("a8061dc1305136c6c22b8baf0c0127a9", NaCl.asHex(tag));
+        assertEquals(0, poly1305.crypto_onetimeauth_verify(tag, 0, MESSAGE, 0, MESSAGE.length, KEY));
+    }
+
+    @Test
+    public void testVerifyChecksAllBytes() {
+        final byte[] tag = new byte[16];
+        poly1305.crypto_onetimeauth(tag, 0, MESSAGE, 0, MESSAGE.length, KEY);
+        for (int i = 0; i < tag.length; i++) {
+            tag[i] ^= 0x80;
+            assertEquals(-1, poly1305.crypto_onetimeauth_verify(tag, 0, MESSAGE, 0, MESSAGE.length, KEY));
+            tag[i] ^= 0x80;
+        }
+    }
+
+    @Test
+    public void testBoxRejectsModifiedLastTagByte() {
+        final byte[] key = new byte[NaCl.SYMMKEYBYTES];
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        final byte[] box = NaCl.symmetricEncryptData(MESSAGE, key, nonce);
+        assertNotNull(NaCl.symmetricDecryptData(box, key, nonce));
+        box[NaCl.BOXOVERHEAD - 1] ^= 1;
+        assertNull(NaCl.symmetricDecryptData(box, key, nonce));
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.crypto;
+
+import org.junit.Test;
+import org.saltyrtc.client.helpers.HexHelper;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.crypto.xsalsa20;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class XSalsa20Test {
+
+    private static final byte[] KEY = HexHelper.hexStringToByteArray(
+        "1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389");
+    private static final byte[] NONCE = HexHelper.hexStringToByteArray(
+        "69696ee955b62b73cd62bda875fc73d68219e0036b7a0b37");
+
+    /**
+     * Test vector from the NaCl test suite (tests/stream3.c).
+     */
+    @Test
+    public void testVector() {
+        final byte[] stream = new byte[32];
+        xsalsa20.crypto_stream(stream, stream.length, NONCE, KEY);
+        assertEquals("eea6a7251c1e72916d11c2cb214d3c252539121d8e234e652d651fa4c8cff880",
+            NaCl.asHex(stream));
+    }
+
+    /**
+     * Encrypting with an offset or a partial last block must match the plain keystream.
+     */
+    @Test
+    public void testStreamXorMatchesKeystream() {
+        final SecureRandom random = new SecureRandom();
+        final byte[] stream = new byte[64 * 4 + 32 + 200];
+        xsalsa20.crypto_stream(stream, stream.length, NONCE, KEY);
+        for (int length : new int[] { 0, 1, 31, 32, 33, 63, 64, 65, 127, 200 }) {
+            final byte[] message = new byte[length];
+            random.nextBytes(message);
+            final byte[] output = new byte[5 + length];
+            final byte[] c0 = new byte[32];
+            xsalsa20.crypto_stream_xor_skip32(c0, output, 5, message, 0, length, NONCE, KEY);
+            assertArrayEquals(Arrays.copyOfRange(stream, 0, 32), c0);
+            for (int i = 0; i < length; i++) {
+                assertEquals((byte) (message[i] ^ stream[32 + i]), output[5 + i]);
+            }
+        }
+    }
+
+    /**
+     * Boxes with alternating cookies must match the uncached secret box, so that the subkey
+     * cache of a NaCl instance never returns the subkey of a different cookie.
+     */
+    @Test
+    public void testSubkeyCacheCookies() {
+        final SecureRandom random = new SecureRandom();
+        final NaCl nacl = new NaCl(KEY);
+        final byte[][] cookies = new byte[3][16];
+        for (byte[] cookie : cookies) {
+            random.nextBytes(cookie);
+        }
+        final byte[] message = "hello".getBytes();
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        for (int i = 0; i < 20; i++) {
+            // Cycle through two cookies, then occasionally a third one
+            final byte[] cookie = cookies[i % 7 == 6 ? 2 : i % 2];
+            System.arraycopy(cookie, 0, nonce, 0, cookie.length);
+            nonce[NaCl.NONCEBYTES - 1] = (byte) i;
+            final byte[] box = nacl.encrypt(message, nonce);
+            assertArrayEquals(NaCl.symmetricEncryptData(message, KEY, nonce), box);
+            assertArrayEquals(message, nacl.decrypt(box, nonce));
+        }
+    }
+
+    /**
+     * The MAC key must be derived from the keystream even if the message is empty.
+     */
+    @Test
+    public void testEmptyMessage() {
+        final byte[] box = NaCl.symmetricEncryptData(new byte[0], KEY, NONCE);
+        assertEquals(NaCl.BOXOVERHEAD, box.length);
+        assertNotNull(NaCl.symmetricDecryptData(box, KEY, NONCE));
+
+        // Poly1305 of an empty message is the second half of its key
+        final byte[] stream = new byte[32];
+        xsalsa20.crypto_stream(stream, stream.length, NONCE, KEY);
+        assertArrayEquals(Arrays.copyOfRange(stream, 16, 32), box);
+    }
+
+}
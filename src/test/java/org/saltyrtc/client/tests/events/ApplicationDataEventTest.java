@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.events;
+
+import org.junit.Test;
+import org.msgpack.core.MessageUnpacker;
+import org.saltyrtc.client.events.ApplicationDataEvent;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.messages.c2c.Application;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ApplicationDataEventTest {
+
+    public static class Pojo {
+        public int number;
+        public List<String> list;
+    }
+
+    private static ApplicationDataEvent receive(Object data) throws SerializationError, ValidationError {
+        final Application msg = (Application) MessageReader.read(new Application(data).toBytes());
+        return new ApplicationDataEvent(msg.getEncodedData());
+    }
+
+    @Test
+    public void testDecodedOnce() throws SerializationError, ValidationError {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("number", 42);
+        final ApplicationDataEvent event = receive(data);
+        assertEquals(data, event.getData());
+        assertSame(event.getData(), event.getData());
+        assertFalse(event.isBinary());
+        assertNull(event.getBytes());
+    }
+
+    @Test
+    public void testRawData() throws SerializationError, ValidationError {
+        final ApplicationDataEvent event = receive("hello");
+        final ApplicationDataEvent fromObject = new ApplicationDataEvent("hello");
+        assertArrayEquals(fromObject.getRawData().toByteArray(), event.getRawData().toByteArray());
+        assertEquals(event.getRawData().getLength(), event.getRawData().asByteBuffer().remaining());
+        assertTrue(event.getRawData().asByteBuffer().isReadOnly());
+    }
+
+    @Test
+    public void testDataAs() throws SerializationError, ValidationError {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("number", 42);
+        data.put("list", Arrays.asList("a", "b"));
+        final Pojo pojo = receive(data).getDataAs(Pojo.class);
+        assertEquals(42, pojo.number);
+        assertEquals(Arrays.asList("a", "b"), pojo.list);
+        assertEquals(42, new ApplicationDataEvent(data).getDataAs(Pojo.class).number);
+    }
+
+    @Test(expected = SerializationError.class)
+    public void testDataAsInvalid() throws SerializationError, ValidationError {
+        receive("hello").getDataAs(Pojo.class);
+    }
+
+    @Test
+    public void testDataUnpacker() throws SerializationError, ValidationError, IOException {
+        final MessageUnpacker unpacker = receive(Arrays.asList(1, "b")).getDataUnpacker();
+        assertEquals(2, unpacker.unpackArrayHeader());
+        assertEquals(1, unpacker.unpackInt());
+        assertEquals("b", unpacker.unpackString());
+        assertFalse(unpacker.hasNext());
+    }
+
+    @Test
+    public void testBinary() throws SerializationError, ValidationError {
+        final byte[] bytes = { 1, 2, 3 };
+        final ApplicationDataEvent event = receive(bytes);
+        assertTrue(event.isBinary());
+        assertArrayEquals(bytes, event.getBytes());
+        assertTrue(new ApplicationDataEvent(bytes).isBinary());
+        assertSame(bytes, new ApplicationDataEvent(bytes).getBytes());
+    }
+
+}
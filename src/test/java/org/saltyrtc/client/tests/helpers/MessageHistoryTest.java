@@ -17,6 +17,8 @@ import org.saltyrtc.client.messages.s2c.DropResponder;
 import org.saltyrtc.client.messages.s2c.ServerHello;
 import org.saltyrtc.client.nonce.SignalingChannelNonce;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -91,4 +93,53 @@ public class MessageHistoryTest {
         assertEquals(m2, history.find(MessageHistory.getMessageKey(b)));
     }
 
+    @Test
+    public void testLongKey() {
+        SignalingChannelNonce nonce = new SignalingChannelNonce(RandomHelper.pseudoRandomBytes(16), (short)0xfe, (short)0x02, 0xabcd, 0x12345678L);
+        Message m = new DropResponder(3);
+        MessageHistory history = new MessageHistory(4);
+        history.store(m, nonce);
+        assertEquals(0xfe02abcd12345678L, MessageHistory.getKey((short)0xfe, (short)0x02, nonce.getCombinedSequence()));
+        assertEquals(m, history.find(0xfe02abcd12345678L));
+        assertEquals(m, history.find("FE02ABCD12345678"));
+        assertNull(history.find(new byte[] { 1, 2, 3 }));
+        assertNull(history.find("fe02"));
+    }
+
+    @Test
+    public void testDisabled() {
+        SignalingChannelNonce nonce = new SignalingChannelNonce(RandomHelper.pseudoRandomBytes(16), (short)1, (short)2, 3, 4);
+        MessageHistory history = new MessageHistory(0);
+        history.store(new DropResponder(1), nonce);
+        assertEquals(0, history.size());
+        assertNull(history.find(MessageHistory.getMessageKey(nonce)));
+    }
+
+    /**
+     * Only the most recent messages must be found after many keys have been
+     * added to and removed from the index.
+     */
+    @Test
+    public void testEviction() {
+        final int size = 13;
+        final Random random = new Random(42);
+        final long[] keys = new long[1000];
+        final Message[] messages = new Message[keys.length];
+        MessageHistory history = new MessageHistory(size);
+        for (int i = 0; i < keys.length; i++) {
+            // Few distinct sources and destinations, so that keys collide in the index
+            keys[i] = MessageHistory.getKey((short) random.nextInt(3), (short) random.nextInt(3), i);
+            messages[i] = new DropResponder(2 + i % 200);
+            history.store(messages[i], keys[i]);
+            for (int j = 0; j <= i; j++) {
+                if (j > i - size) {
+                    assertEquals(messages[j], history.find(keys[j]));
+                } else {
+                    assertNull(history.find(keys[j]));
+                }
+            }
+        }
+        assertEquals(size, history.size());
+    }
+
 }
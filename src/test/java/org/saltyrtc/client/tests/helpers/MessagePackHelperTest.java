@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.helpers.MessagePackHelper;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessagePackHelperTest {
+
+    private static byte[] pack(Object value) throws IOException {
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        MessagePackHelper.packValue(packer, value);
+        packer.close();
+        return packer.toByteArray();
+    }
+
+    /**
+     * Values are packed exactly like Jackson packs them.
+     */
+    @Test
+    public void testSameAsJackson() throws IOException {
+        final Map<Object, Object> nested = new LinkedHashMap<>();
+        nested.put(1, "one");
+        nested.put("bytes", new byte[] { 1, 2, 3 });
+        nested.put("nil", null);
+        final Map<String, Object> value = new LinkedHashMap<>();
+        value.put("string", "hello ✓");
+        value.put("true", true);
+        value.put("small", 7);
+        value.put("negative", -100000);
+        value.put("long", 1L << 40);
+        value.put("big", BigInteger.ONE.shiftLeft(63));
+        value.put("short", (short) 300);
+        value.put("double", 1.5);
+        value.put("float", 2.5f);
+        value.put("list", Arrays.asList(1, "b", Arrays.asList(false)));
+        value.put("array", new Object[] { "x", 2 });
+        value.put("nested", nested);
+
+        final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+        assertArrayEquals(objectMapper.writeValueAsBytes(value), pack(value));
+    }
+
+    @Test
+    public void testJacksonAvailable() {
+        assertTrue(MessagePackHelper.isJacksonAvailable());
+    }
+
+}
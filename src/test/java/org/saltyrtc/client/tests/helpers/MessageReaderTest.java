@@ -8,16 +8,36 @@
 
 package org.saltyrtc.client.tests.helpers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.junit.Test;
 import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessagePack;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
 import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.MessageTypeRegistry;
+import org.saltyrtc.client.messages.c2c.Application;
+import org.saltyrtc.client.messages.c2c.TaskMessage;
+import org.saltyrtc.client.messages.s2c.InitiatorServerAuth;
+import org.saltyrtc.client.messages.s2c.ServerHello;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class MessageReaderTest {
 
@@ -62,4 +82,184 @@ public class MessageReaderTest {
         }
     }
 
+    @Test
+    public void testTypeNotFirst() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("key").packBinaryHeader(32).writePayload(new byte[32])
+            .packString("type").packString("server-hello");
+        final ServerHello msg = (ServerHello) MessageReader.read(packer.toByteArray());
+        assertArrayEquals(new byte[32], msg.getKey());
+    }
+
+    @Test
+    public void testUnknownFieldsSkipped() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(4)
+            .packString("type").packString("server-auth")
+            .packString("unknown").packArrayHeader(2).packInt(1).packMapHeader(0)
+            .packString("your_cookie").packBinaryHeader(16).writePayload(new byte[16])
+            .packString("responders").packArrayHeader(2).packInt(2).packInt(3);
+        final InitiatorServerAuth msg = (InitiatorServerAuth) MessageReader.read(packer.toByteArray());
+        assertEquals(Arrays.asList(2, 3), msg.getResponders());
+        assertNull(msg.getSignedKeys());
+    }
+
+    @Test
+    public void testWrongBinaryLength() throws IOException, SerializationError {
+        // The header claims more data than the message contains, the length is checked first
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("server-hello")
+            .packString("key").packBinaryHeader(33);
+        try {
+            MessageReader.read(packer.toByteArray());
+            fail("No ValidationError thrown");
+        } catch (ValidationError e) {
+            assertEquals("Key must be 32 bytes long, not 33", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMissingField() throws IOException, SerializationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(1).packString("type").packString("server-hello");
+        try {
+            MessageReader.read(packer.toByteArray());
+            fail("No ValidationError thrown");
+        } catch (ValidationError e) {
+            assertEquals("Key must be a byte array", e.getMessage());
+        }
+    }
+
+    @Test(expected=SerializationError.class)
+    public void testOversizedArray() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packString("data").packArrayHeader(Integer.MAX_VALUE);
+        MessageReader.read(packer.toByteArray());
+    }
+
+    @Test(expected=SerializationError.class)
+    public void testDeeplyNested() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packString("data");
+        for (int i = 0; i < 10000; i++) {
+            packer.packArrayHeader(1);
+        }
+        packer.packNil();
+        MessageReader.read(packer.toByteArray());
+    }
+
+    @Test(expected=SerializationError.class)
+    public void testNonStringKey() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packInt(1).packString("data");
+        MessageReader.read(packer.toByteArray());
+    }
+
+    /**
+     * Application and task data must be decoded to the same objects as with Jackson.
+     */
+    @Test
+    public void testSameValuesAsJackson() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(3)
+            .packString("type").packString("ping")
+            .packString("data").packMapHeader(9)
+                .packString("nil").packNil()
+                .packString("bool").packBoolean(true)
+                .packString("int").packInt(-42)
+                .packString("long").packLong(1L << 40)
+                .packString("big").packBigInteger(BigInteger.ONE.shiftLeft(63))
+                .packString("float").packFloat(1.5f)
+                .packString("string").packString("h\u00e9llo")
+                .packString("list").packArrayHeader(2).packInt(1).packArrayHeader(0)
+                .packString("ext").packExtensionTypeHeader((byte) 1, 2).writePayload(new byte[] { 3, 4 })
+            .packString("bin").packBinaryHeader(3).writePayload(new byte[] { 1, 2, 3 });
+        final byte[] bytes = packer.toByteArray();
+
+        final Map<String, Object> expected = new ObjectMapper(new MessagePackFactory())
+            .readValue(bytes, new TypeReference<Map<String, Object>>() {});
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        registry.register("ping");
+        final TaskMessage msg = (TaskMessage) MessageReader.read(bytes, registry);
+        final Map<String, Object> actual = msg.getData();
+
+        assertEquals(expected.keySet(), actual.keySet());
+        assertArrayEquals((byte[]) expected.get("bin"), (byte[]) actual.get("bin"));
+        final Map<?, ?> expectedData = (Map<?, ?>) expected.get("data");
+        final Map<?, ?> actualData = (Map<?, ?>) actual.get("data");
+        assertEquals(expectedData.getClass(), actualData.getClass());
+        for (Object key : expectedData.keySet()) {
+            final Object value = expectedData.get(key);
+            if (value == null) {
+                assertNull(actualData.get(key));
+            } else if (value instanceof MessagePackExtensionType) {
+                final MessagePackExtensionType ext = (MessagePackExtensionType) actualData.get(key);
+                assertEquals(((MessagePackExtensionType) value).getType(), ext.getType());
+                assertArrayEquals(((MessagePackExtensionType) value).getData(), ext.getData());
+            } else {
+                assertEquals(key.toString(), value.getClass(), actualData.get(key).getClass());
+                assertEquals(key.toString(), value, actualData.get(key));
+            }
+        }
+        assertEquals(((List<?>) expectedData.get("list")).get(1).getClass(),
+            ((List<?>) actualData.get("list")).get(1).getClass());
+    }
+
+    @Test(expected=SerializationError.class)
+    public void testApplicationNestedNonStringKey() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packString("data").packArrayHeader(1).packMapHeader(1).packInt(1).packNil();
+        MessageReader.read(packer.toByteArray());
+    }
+
+    @Test(expected=SerializationError.class)
+    public void testApplicationTruncatedData() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packString("data").packArrayHeader(2).packString("a");
+        MessageReader.read(packer.toByteArray());
+    }
+
+    /**
+     * Application data is kept encoded, so it can be forwarded without decoding it.
+     */
+    @Test
+    public void testApplicationEncodedData() throws IOException, SerializationError, ValidationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2)
+            .packString("type").packString("application")
+            .packString("data").packMapHeader(1).packString("a").packArrayHeader(2).packInt(1).packString("b");
+        final byte[] bytes = packer.toByteArray();
+
+        final Application msg = (Application) MessageReader.read(bytes);
+        final EncodedValue data = msg.getEncodedData();
+        assertArrayEquals(Arrays.copyOfRange(bytes, 23, bytes.length), data.toByteArray());
+        assertArrayEquals(bytes, msg.toBytes());
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1, "b")), msg.getData());
+        assertSame(msg.getData(), msg.getData());
+    }
+
+    @Test
+    public void testApplicationMissingData() throws IOException, SerializationError {
+        MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(1).packString("type").packString(Application.TYPE);
+        try {
+            MessageReader.read(packer.toByteArray());
+            fail("No ValidationError thrown");
+        } catch (ValidationError e) {
+            assertEquals("Message is missing the 'data' key", e.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.helpers;
+
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.MessageTypeRegistry;
+import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.messages.c2c.TaskMessage;
+import org.saltyrtc.client.messages.s2c.ServerHello;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageTypeRegistryTest {
+
+    /**
+     * A typed task message.
+     */
+    private static class Offer extends TaskMessage {
+        final String sdp;
+
+        Offer(Map<String, Object> data, String sdp) {
+            super("offer", data);
+            this.sdp = sdp;
+        }
+    }
+
+    private static final MessageTypeRegistry.Decoder<Offer> OFFER_DECODER = new MessageTypeRegistry.Decoder<Offer>() {
+        @Override
+        public Offer decode(TaskMessage message) throws ValidationError {
+            final Object sdp = message.getData().get("sdp");
+            if (!(sdp instanceof String)) {
+                throw new ValidationError("sdp must be a string");
+            }
+            return new Offer(message.getData(), (String) sdp);
+        }
+    };
+
+    private static byte[] pack(String type, String key, Object value) throws IOException {
+        final MessageBufferPacker packer = new MessagePack.PackerConfig().newBufferPacker();
+        packer.packMapHeader(2).packString(key);
+        if (value instanceof String) {
+            packer.packString((String) value);
+        } else {
+            packer.packInt((Integer) value);
+        }
+        packer.packString("type").packString(type);
+        return packer.toByteArray();
+    }
+
+    @Test
+    public void testCoreTypes() throws IOException, SerializationError, ValidationError {
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        assertTrue(registry.contains("server-hello"));
+        assertTrue(registry.contains("application"));
+        assertFalse(registry.contains("offer"));
+        final Message msg = MessageReader.read(new ServerHello(new byte[32]).toBytes(), registry);
+        assertTrue(msg instanceof ServerHello);
+        try {
+            registry.register("close");
+            fail("Core type could be registered");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void testPlainTaskType() throws IOException, SerializationError, ValidationError {
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        final byte[] bytes = pack("candidates", "count", 3);
+        try {
+            MessageReader.read(bytes, registry);
+            fail("Unknown type was accepted");
+        } catch (ValidationError e) {
+            assertEquals("Unknown message type: candidates", e.getMessage());
+        }
+
+        registry.register("candidates");
+        final Message msg = MessageReader.read(bytes, registry);
+        assertEquals(TaskMessage.class, msg.getClass());
+        assertEquals("candidates", msg.getType());
+        assertEquals(3, ((TaskMessage) msg).getData().get("count"));
+        assertEquals("candidates", ((TaskMessage) msg).getData().get("type"));
+
+        // No handler registered
+        assertFalse(registry.dispatch((TaskMessage) msg));
+
+        try {
+            registry.register("candidates");
+            fail("Type could be registered twice");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void testDecoderAndHandler() throws IOException, SerializationError, ValidationError {
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        final List<Offer> handled = new ArrayList<>();
+        registry.register("offer", OFFER_DECODER, new MessageTypeRegistry.Handler<Offer>() {
+            @Override
+            public void handle(Offer message) {
+                handled.add(message);
+            }
+        });
+
+        final Message msg = MessageReader.read(pack("offer", "sdp", "v=0"), registry);
+        assertTrue(msg instanceof Offer);
+        assertEquals("v=0", ((Offer) msg).sdp);
+
+        assertTrue(registry.dispatch((TaskMessage) msg));
+        assertEquals(1, handled.size());
+        assertSame(msg, handled.get(0));
+
+        try {
+            MessageReader.read(pack("offer", "sdp", 1), registry);
+            fail("Decoder did not reject the message");
+        } catch (ValidationError e) {
+            assertEquals("sdp must be a string", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testManyTypes() throws IOException, SerializationError, ValidationError {
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        for (int i = 0; i < 100; i++) {
+            registry.register("type-" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("type-" + i, MessageReader.read(pack("type-" + i, "n", i), registry).getType());
+        }
+        assertTrue(MessageReader.read(new ServerHello(new byte[32]).toBytes(), registry) instanceof ServerHello);
+    }
+
+}
@@ -13,6 +13,7 @@ import org.saltyrtc.client.helpers.UnsignedHelper;
 
 import java.nio.ByteBuffer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -124,4 +125,29 @@ public class UnsignedHelperTest {
         UnsignedHelper.getUnsignedInt(-1);
     }
 
+    @Test
+    public void testReadUnsignedFromArray() {
+        byte[] bytes = new byte[] { 7, -128, 1, -128, 0, 0, 1 };
+        assertEquals((0x80 << 8) + 1, UnsignedHelper.readUnsignedShort(bytes, 1));
+        assertEquals(2147483649L, UnsignedHelper.readUnsignedInt(bytes, 3));
+    }
+
+    @Test
+    public void testWriteUnsignedToArray() {
+        byte[] bytes = new byte[7];
+        UnsignedHelper.writeUnsignedShort(bytes, 1, 0x8001);
+        UnsignedHelper.writeUnsignedInt(bytes, 3, 0x80000001L);
+        assertArrayEquals(new byte[] { 0, -128, 1, -128, 0, 0, 1 }, bytes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteUnsignedShortTooLarge() {
+        UnsignedHelper.writeUnsignedShort(new byte[2], 0, 65536 /* 1 << 16 */);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteUnsignedIntNegative() {
+        UnsignedHelper.writeUnsignedInt(new byte[4], 0, -1);
+    }
+
 }
@@ -16,6 +16,7 @@ import org.saltyrtc.client.keystore.AuthToken;
 import org.saltyrtc.client.keystore.Box;
 import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
 
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -78,6 +79,29 @@ public class AuthTokenTest {
         this.at.decrypt(box);
     }
 
+    @Test
+    public void testEncryptDecryptInPlace() throws CryptoFailedException {
+        final byte[] in = "hello".getBytes();
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        this.random.nextBytes(nonce);
+        final byte[] expected = this.at.encrypt(in, nonce).toBytes();
+
+        // Encrypt in place
+        final byte[] buffer = new byte[Box.PLAINTEXT_OFFSET + in.length];
+        System.arraycopy(nonce, 0, buffer, 0, nonce.length);
+        System.arraycopy(in, 0, buffer, Box.PLAINTEXT_OFFSET, in.length);
+        assertEquals(expected.length, this.at.encryptInPlace(buffer, 0, in.length));
+        assertArrayEquals(expected, buffer);
+
+        // Decrypt in place
+        final ByteBuffer boxBuffer = ByteBuffer.wrap(buffer);
+        this.at.decryptInPlace(boxBuffer);
+        assertEquals(in.length, boxBuffer.remaining());
+        final byte[] decrypted = new byte[boxBuffer.remaining()];
+        boxBuffer.get(decrypted);
+        assertArrayEquals(in, decrypted);
+    }
+
     @Test(expected=InvalidKeyException.class)
     public void testInvalidKey() throws InvalidKeyException {
         final byte[] token = {42};
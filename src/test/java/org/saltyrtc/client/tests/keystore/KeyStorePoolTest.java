@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.keystore;
+
+import org.junit.Test;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.CryptoProviders;
+import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class KeyStorePoolTest {
+
+    private final CryptoProvider provider = CryptoProviders.getDefault();
+
+    /**
+     * Executor that runs tasks synchronously when requested.
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.tasks.add(command);
+        }
+
+        void runAll() {
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+            }
+        }
+    }
+
+    @Test
+    public void testRefill() {
+        final ManualExecutor executor = new ManualExecutor();
+        final KeyStorePool pool = new KeyStorePool(this.provider, 1, 3, executor);
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(3, pool.size());
+        assertEquals(3, pool.getGenerated());
+
+        // Above the low watermark, no refill is scheduled
+        pool.take();
+        assertEquals(2, pool.size());
+        assertEquals(0, executor.tasks.size());
+
+        // Reaching the low watermark schedules a single refill
+        pool.take();
+        pool.take();
+        assertEquals(0, pool.size());
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(3, pool.size());
+        assertEquals(3, pool.getTakes());
+        assertEquals(0, pool.getStarvations());
+    }
+
+    @Test
+    public void testStarvation() {
+        final ManualExecutor executor = new ManualExecutor();
+        final KeyStorePool pool = new KeyStorePool(this.provider, 0, 2, executor);
+        final KeyStore keyStore = pool.take();
+        assertEquals(1, pool.getStarvations());
+        assertEquals(32, keyStore.getPublicKey().length);
+        assertArrayEquals(keyStore.getPublicKey(), new KeyStore(keyStore.getSecretKey()).getPublicKey());
+    }
+
+    @Test
+    public void testKeysAreUnique() {
+        final ManualExecutor executor = new ManualExecutor();
+        final KeyStorePool pool = new KeyStorePool(this.provider, 0, 2, executor);
+        executor.runAll();
+        assertFalse(Arrays.equals(pool.take().getPublicKey(), pool.take().getPublicKey()));
+    }
+
+    @Test
+    public void testDisabled() {
+        final KeyStorePool pool = KeyStorePool.disabled(this.provider);
+        pool.take();
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getStarvations());
+        assertEquals(1, pool.getTakes());
+    }
+
+    @Test
+    public void testBackgroundThread() throws InterruptedException {
+        final KeyStorePool pool = new KeyStorePool(this.provider, 1, 4);
+        try {
+            for (int i = 0; i < 100 && pool.size() < 4; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, pool.size());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(0, pool.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidWatermarks() {
+        new KeyStorePool(this.provider, 2, 2, new ManualExecutor());
+    }
+
+}
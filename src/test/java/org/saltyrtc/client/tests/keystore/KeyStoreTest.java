@@ -8,8 +8,10 @@
 
 package org.saltyrtc.client.tests.keystore;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import org.saltyrtc.client.crypto.JcaCryptoProvider;
 import org.saltyrtc.client.exceptions.CryptoFailedException;
 import org.saltyrtc.client.exceptions.InvalidKeyException;
 import org.saltyrtc.client.helpers.HexHelper;
@@ -119,4 +121,19 @@ public class KeyStoreTest {
         assertArrayEquals(ks3.getPublicKey(), ks4.getPublicKey());
     }
 
+    /**
+     * Key stores using different crypto providers must be able to talk to each other.
+     */
+    @Test
+    public void testCryptoProviderInterop() throws CryptoFailedException, InvalidKeyException {
+        Assume.assumeTrue(JcaCryptoProvider.isSupported());
+        final KeyStore jca = new KeyStore(new JcaCryptoProvider());
+        final byte[] in = "hello".getBytes();
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        this.random.nextBytes(nonce);
+        final Box box = jca.encrypt(in, nonce, this.ks.getPublicKey());
+        assertArrayEquals(in, this.ks.decrypt(box, jca.getPublicKey()));
+        assertArrayEquals(jca.getPublicKey(), new KeyStore(jca.getSecretKey()).getPublicKey());
+    }
+
 }
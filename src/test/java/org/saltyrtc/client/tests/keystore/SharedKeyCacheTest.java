@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.keystore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.crypto.CryptoInstance;
+import org.saltyrtc.client.crypto.CryptoProvider;
+import org.saltyrtc.client.crypto.JnaclCryptoProvider;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.SharedKeyCache;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SharedKeyCacheTest {
+
+    private KeyStore ours;
+    private KeyStore theirs;
+    private SecureRandom random = new SecureRandom();
+
+    @Before
+    public void setUp() throws Exception {
+        this.ours = new KeyStore();
+        this.theirs = new KeyStore();
+    }
+
+    private byte[] randomNonce() {
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        this.random.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Encrypt a box from our key store for the peer using the cache.
+     */
+    private Box encrypt(SharedKeyCache cache, KeyStore keyStore, byte[] otherKey)
+            throws InvalidKeyException, CryptoFailedException {
+        return cache.encrypt(keyStore, "hello".getBytes(), this.randomNonce(), otherKey);
+    }
+
+    /**
+     * Crypto provider recording the returned instances. Operations on them run `hook` first.
+     */
+    private static class RecordingCryptoProvider extends JnaclCryptoProvider {
+        final List<CryptoInstance> instances = new ArrayList<>();
+        Runnable hook;
+
+        @NonNull
+        @Override
+        public CryptoInstance getInstance(@NonNull byte[] secretKey, @NonNull byte[] publicKey)
+                throws InvalidKeyException {
+            final CryptoInstance instance = super.getInstance(secretKey, publicKey);
+            this.instances.add(instance);
+            return new CryptoInstance() {
+                private void runHook() {
+                    if (RecordingCryptoProvider.this.hook != null) {
+                        RecordingCryptoProvider.this.hook.run();
+                    }
+                }
+
+                @NonNull
+                @Override
+                public byte[] encrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+                    this.runHook();
+                    return instance.encrypt(data, nonce);
+                }
+
+                @NonNull
+                @Override
+                public byte[] decrypt(@NonNull byte[] data, @NonNull byte[] nonce) throws CryptoFailedException {
+                    this.runHook();
+                    return instance.decrypt(data, nonce);
+                }
+
+                @Override
+                public void encrypt(@NonNull byte[] output, int outputOffset,
+                                    @NonNull byte[] input, int inputOffset, int inputLength,
+                                    @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+                    this.runHook();
+                    instance.encrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+                }
+
+                @Override
+                public void decrypt(@NonNull byte[] output, int outputOffset,
+                                    @NonNull byte[] input, int inputOffset, int inputLength,
+                                    @NonNull byte[] nonce, int nonceOffset) throws CryptoFailedException {
+                    this.runHook();
+                    instance.decrypt(output, outputOffset, input, inputOffset, inputLength, nonce, nonceOffset);
+                }
+
+                @NonNull
+                @Override
+                public CryptoInstance copy() {
+                    return instance.copy();
+                }
+
+                @Override
+                public void wipe() {
+                    instance.wipe();
+                }
+            };
+        }
+    }
+
+    private static void assertWiped(CryptoInstance instance) {
+        try {
+            instance.encrypt("hello".getBytes(), new byte[NaCl.NONCEBYTES]);
+            fail("Wiped instance encrypted data");
+        } catch (CryptoFailedException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = new SharedKeyCache(4);
+        this.encrypt(cache, this.ours, this.theirs.getPublicKey());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        this.encrypt(cache, this.ours, this.theirs.getPublicKey());
+        // Lookup uses the key contents, not the array identity
+        final KeyStore oursCopy = new KeyStore(this.ours.getPublicKey().clone(), this.ours.getSecretKey().clone());
+        this.encrypt(cache, oursCopy, this.theirs.getPublicKey().clone());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCachedKeyDecrypts() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = new SharedKeyCache(4);
+        final byte[] in = "hello".getBytes();
+        final Box box = this.theirs.getSharedKeyStore(this.ours.getPublicKey())
+            .encrypt(in, this.randomNonce());
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(in, cache.decrypt(this.ours, box, this.theirs.getPublicKey()));
+        }
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEncryptInPlace() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = new SharedKeyCache(4);
+        final byte[] in = "hello".getBytes();
+        final byte[] buffer = new byte[Box.PLAINTEXT_OFFSET + in.length];
+        System.arraycopy(this.randomNonce(), 0, buffer, 0, Box.NONCE_LENGTH);
+        System.arraycopy(in, 0, buffer, Box.PLAINTEXT_OFFSET, in.length);
+        final int length = cache.encryptInPlace(this.ours, buffer, 0, in.length, this.theirs.getPublicKey());
+        assertEquals(buffer.length, length);
+        final Box box = new Box(ByteBuffer.wrap(buffer), Box.NONCE_LENGTH);
+        assertArrayEquals(in, this.theirs.decrypt(box, this.ours.getPublicKey()));
+    }
+
+    @Test
+    public void testKeyStoreRoundtrip() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = new SharedKeyCache(4);
+        final byte[] in = "hello".getBytes();
+        final Box box = cache.encrypt(this.ours, in, this.randomNonce(), this.theirs.getPublicKey());
+        assertArrayEquals(in, cache.decrypt(this.theirs, box, this.ours.getPublicKey()));
+        assertArrayEquals(in, this.theirs.decrypt(box, this.ours.getPublicKey()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testKeyStoreDoesNotUseCache() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = SharedKeyCache.getInstance();
+        final long misses = cache.getMisses();
+        final long hits = cache.getHits();
+        final Box box = this.ours.encrypt("hello".getBytes(), this.randomNonce(), this.theirs.getPublicKey());
+        this.theirs.decrypt(box, this.ours.getPublicKey());
+        assertEquals(misses, cache.getMisses());
+        assertEquals(hits, cache.getHits());
+    }
+
+    @Test
+    public void testLruEviction() throws InvalidKeyException, CryptoFailedException {
+        final SharedKeyCache cache = new SharedKeyCache(2);
+        final byte[] a = new KeyStore().getPublicKey();
+        final byte[] b = new KeyStore().getPublicKey();
+        final byte[] c = new KeyStore().getPublicKey();
+        this.encrypt(cache, this.ours, a);
+        this.encrypt(cache, this.ours, b);
+        // Touch a, so that b is the least recently used entry
+        this.encrypt(cache, this.ours, a);
+        this.encrypt(cache, this.ours, c);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        this.encrypt(cache, this.ours, a);
+        assertEquals(2, cache.getHits());
+        this.encrypt(cache, this.ours, b);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testHitReusesInstance() throws InvalidKeyException, CryptoFailedException {
+        final RecordingCryptoProvider provider = new RecordingCryptoProvider();
+        final KeyStore ours = new KeyStore(provider, this.ours.getPublicKey(), this.ours.getSecretKey());
+        final SharedKeyCache cache = new SharedKeyCache(1);
+        for (int i = 0; i < 3; i++) {
+            this.encrypt(cache, ours, this.theirs.getPublicKey());
+        }
+        assertEquals(1, provider.instances.size());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testEvictionWipesSharedKey() throws InvalidKeyException, CryptoFailedException {
+        final RecordingCryptoProvider provider = new RecordingCryptoProvider();
+        final KeyStore ours = new KeyStore(provider, this.ours.getPublicKey(), this.ours.getSecretKey());
+        final SharedKeyCache cache = new SharedKeyCache(1);
+        this.encrypt(cache, ours, this.theirs.getPublicKey());
+        this.encrypt(cache, ours, new KeyStore().getPublicKey());
+        assertEquals(1, cache.getEvictions());
+        assertWiped(provider.instances.get(0));
+
+        // The evicted key pair is computed again
+        this.encrypt(cache, ours, this.theirs.getPublicKey());
+        assertEquals(3, provider.instances.size());
+    }
+
+    @Test
+    public void testEvictionWaitsForUsers() throws InvalidKeyException, CryptoFailedException {
+        final RecordingCryptoProvider provider = new RecordingCryptoProvider();
+        final KeyStore ours = new KeyStore(provider, this.ours.getPublicKey(), this.ours.getSecretKey());
+        final SharedKeyCache cache = new SharedKeyCache(1);
+        final byte[] in = "hello".getBytes();
+
+        // Evict the entry while the operation is using it
+        provider.hook = new Runnable() {
+            @Override
+            public void run() {
+                cache.clear();
+            }
+        };
+        final Box box = cache.encrypt(ours, in, this.randomNonce(), this.theirs.getPublicKey());
+        assertEquals(1, cache.getEvictions());
+        assertArrayEquals(in, this.theirs.decrypt(box, this.ours.getPublicKey()));
+
+        // Wiped once the operation is done
+        assertWiped(provider.instances.get(0));
+    }
+
+    @Test
+    public void testDisabled() throws InvalidKeyException, CryptoFailedException {
+        final RecordingCryptoProvider provider = new RecordingCryptoProvider();
+        final KeyStore ours = new KeyStore(provider, this.ours.getPublicKey(), this.ours.getSecretKey());
+        final SharedKeyCache cache = new SharedKeyCache(4);
+        this.encrypt(cache, ours, this.theirs.getPublicKey());
+        cache.setMaxSize(0);
+        assertEquals(0, cache.size());
+        this.encrypt(cache, ours, this.theirs.getPublicKey());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+
+        // Uncached instances are wiped after use
+        assertWiped(provider.instances.get(1));
+    }
+
+    @Test(expected=InvalidKeyException.class)
+    public void testInvalidKey() throws InvalidKeyException, CryptoFailedException {
+        this.encrypt(new SharedKeyCache(4), this.ours, new byte[3]);
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.keystore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.saltyrtc.client.exceptions.CryptoFailedException;
+import org.saltyrtc.client.exceptions.InvalidKeyException;
+import org.saltyrtc.client.keystore.Box;
+import org.saltyrtc.client.keystore.BoxView;
+import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.SharedKeyStore;
+import org.saltyrtc.vendor.com.neilalexander.jnacl.NaCl;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SharedKeyStoreTest {
+
+    private KeyStore ours;
+    private KeyStore theirs;
+    private SecureRandom random = new SecureRandom();
+
+    @Before
+    public void setUp() throws Exception {
+        this.ours = new KeyStore();
+        this.theirs = new KeyStore();
+    }
+
+    private byte[] randomNonce() {
+        final byte[] nonce = new byte[NaCl.NONCEBYTES];
+        this.random.nextBytes(nonce);
+        return nonce;
+    }
+
+    @Test
+    public void testEncryptDecrypt() throws CryptoFailedException, InvalidKeyException {
+        final SharedKeyStore ourShared = this.ours.getSharedKeyStore(this.theirs.getPublicKey());
+        final SharedKeyStore theirShared = this.theirs.getSharedKeyStore(this.ours.getPublicKey());
+        assertArrayEquals(this.theirs.getPublicKey(), ourShared.getRemotePublicKey());
+
+        // Reuse the precomputed key for multiple messages in both directions
+        for (int i = 0; i < 3; i++) {
+            final byte[] in = ("hello " + i).getBytes();
+            final Box box = ourShared.encrypt(in, this.randomNonce());
+            assertArrayEquals(in, theirShared.decrypt(box));
+            final Box reply = theirShared.encrypt(in, this.randomNonce());
+            assertArrayEquals(in, ourShared.decrypt(reply));
+        }
+    }
+
+    @Test
+    public void testCompatibleWithKeyStore() throws CryptoFailedException, InvalidKeyException {
+        final byte[] in = "hello".getBytes();
+        final byte[] nonce = this.randomNonce();
+        final SharedKeyStore shared = this.ours.getSharedKeyStore(this.theirs.getPublicKey());
+        final Box expected = this.ours.encrypt(in, nonce, this.theirs.getPublicKey());
+        final Box actual = shared.encrypt(in, nonce);
+        assertArrayEquals(expected.getData(), actual.getData());
+        assertEquals(nonce, actual.getNonce());
+        assertArrayEquals(in, this.theirs.decrypt(actual, this.ours.getPublicKey()));
+    }
+
+    @Test(expected=CryptoFailedException.class)
+    public void testDecryptWrongKeyFails() throws CryptoFailedException, InvalidKeyException {
+        final KeyStore other = new KeyStore();
+        final Box box = this.ours.getSharedKeyStore(this.theirs.getPublicKey())
+            .encrypt("hello".getBytes(), this.randomNonce());
+        other.getSharedKeyStore(this.ours.getPublicKey()).decrypt(box);
+    }
+
+    @Test
+    public void testEncryptInPlace() throws CryptoFailedException, InvalidKeyException {
+        final byte[] in = "hello in place".getBytes();
+        final byte[] nonce = this.randomNonce();
+        final SharedKeyStore shared = this.ours.getSharedKeyStore(this.theirs.getPublicKey());
+        final byte[] expected = shared.encrypt(in, nonce).toBytes();
+
+        // Box at a non-zero offset
+        final int offset = 7;
+        final byte[] buffer = new byte[offset + Box.PLAINTEXT_OFFSET + in.length + 3];
+        System.arraycopy(nonce, 0, buffer, offset, nonce.length);
+        System.arraycopy(in, 0, buffer, offset + Box.PLAINTEXT_OFFSET, in.length);
+        final int length = shared.encryptInPlace(buffer, offset, in.length);
+        assertEquals(expected.length, length);
+        final byte[] actual = new byte[length];
+        System.arraycopy(buffer, offset, actual, 0, length);
+        assertArrayEquals(expected, actual);
+
+        // Decrypt in place on the other side
+        final SharedKeyStore other = this.theirs.getSharedKeyStore(this.ours.getPublicKey());
+        assertEquals(in.length, other.decryptInPlace(buffer, offset, length));
+        final byte[] decrypted = new byte[in.length];
+        System.arraycopy(buffer, offset + Box.PLAINTEXT_OFFSET, decrypted, 0, in.length);
+        assertArrayEquals(in, decrypted);
+    }
+
+    @Test
+    public void testEncryptInPlaceByteBuffer() throws CryptoFailedException, InvalidKeyException {
+        final byte[] in = "hello byte buffer".getBytes();
+        final SharedKeyStore shared = this.ours.getSharedKeyStore(this.theirs.getPublicKey());
+
+        // Use a slice, so that the array offset is not zero
+        final ByteBuffer backing = ByteBuffer.allocate(5 + Box.PLAINTEXT_OFFSET + in.length);
+        backing.position(5);
+        final ByteBuffer buffer = backing.slice();
+        buffer.put(this.randomNonce());
+        buffer.position(Box.PLAINTEXT_OFFSET);
+        buffer.put(in);
+        buffer.flip();
+
+        shared.encryptInPlace(buffer);
+        assertEquals(Box.PLAINTEXT_OFFSET + in.length, buffer.remaining());
+        final Box box = new Box(buffer.duplicate(), Box.NONCE_LENGTH);
+        assertArrayEquals(in, this.theirs.getSharedKeyStore(this.ours.getPublicKey()).decrypt(box));
+
+        this.theirs.getSharedKeyStore(this.ours.getPublicKey()).decryptInPlace(buffer);
+        final byte[] decrypted = new byte[buffer.remaining()];
+        buffer.get(decrypted);
+        assertArrayEquals(in, decrypted);
+    }
+
+    @Test(expected=CryptoFailedException.class)
+    public void testDecryptInPlaceTampered() throws CryptoFailedException, InvalidKeyException {
+        final byte[] box = this.ours.getSharedKeyStore(this.theirs.getPublicKey())
+            .encrypt("hello".getBytes(), this.randomNonce()).toBytes();
+        box[box.length - 1] ^= 1;
+        this.theirs.getSharedKeyStore(this.ours.getPublicKey()).decryptInPlace(box, 0, box.length);
+    }
+
+    @Test(expected=CryptoFailedException.class)
+    public void testDecryptInPlaceTooShort() throws CryptoFailedException, InvalidKeyException {
+        final byte[] box = new byte[Box.PLAINTEXT_OFFSET - 1];
+        this.ours.getSharedKeyStore(this.theirs.getPublicKey()).decryptInPlace(box, 0, box.length);
+    }
+
+    @Test
+    public void testDecryptBoxView() throws CryptoFailedException, InvalidKeyException {
+        final byte[] in = "hello view".getBytes();
+        final byte[] box = this.ours.getSharedKeyStore(this.theirs.getPublicKey())
+            .encrypt(in, this.randomNonce()).toBytes();
+
+        // Box in the middle of a larger frame
+        final byte[] frame = new byte[3 + box.length + 2];
+        System.arraycopy(box, 0, frame, 3, box.length);
+        final byte[] copy = frame.clone();
+        final BoxView view = new BoxView().wrap(frame, 3, box.length);
+        assertEquals(box.length, view.getSize());
+        assertEquals(box.length - Box.NONCE_LENGTH, view.getDataLength());
+        assertArrayEquals(box, view.toBox().toBytes());
+
+        assertArrayEquals(in, this.theirs.getSharedKeyStore(this.ours.getPublicKey()).decrypt(view));
+        assertArrayEquals(in, this.theirs.decrypt(view, this.ours.getPublicKey()));
+
+        // The frame must not be modified
+        assertArrayEquals(copy, frame);
+    }
+
+    @Test(expected=CryptoFailedException.class)
+    public void testDecryptBoxViewTooShort() throws CryptoFailedException, InvalidKeyException {
+        final BoxView view = new BoxView(new byte[Box.PLAINTEXT_OFFSET - 1]);
+        this.ours.getSharedKeyStore(this.theirs.getPublicKey()).decrypt(view);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBoxViewOutOfBounds() {
+        new BoxView().wrap(new byte[Box.PLAINTEXT_OFFSET], 1, Box.PLAINTEXT_OFFSET);
+    }
+
+    @Test(expected=InvalidKeyException.class)
+    public void testInvalidKeyLength() throws InvalidKeyException {
+        this.ours.getSharedKeyStore(new byte[NaCl.PUBLICKEYBYTES - 1]);
+    }
+
+}
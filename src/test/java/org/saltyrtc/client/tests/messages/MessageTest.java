@@ -8,9 +8,16 @@
 
 package org.saltyrtc.client.tests.messages;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 import org.saltyrtc.client.exceptions.SerializationError;
 import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.EncodedValue;
 import org.saltyrtc.client.helpers.MessageReader;
 import org.saltyrtc.client.helpers.RandomHelper;
 import org.saltyrtc.client.messages.Message;
@@ -31,7 +38,11 @@ import org.saltyrtc.client.messages.s2c.SendError;
 import org.saltyrtc.client.messages.s2c.ServerHello;
 import org.saltyrtc.client.signaling.CloseCode;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -242,6 +253,61 @@ public class MessageTest {
         assertArrayEquals(original.getYourCookie(), returned.getYourCookie());
     }
 
+    @Test
+    public void testAuthWithEncodedData() throws SerializationError, ValidationError {
+        final byte[] cookie = RandomHelper.pseudoRandomBytes(16);
+        final List<String> tasks = asList("dummytask", "alternative");
+        final Map<String, Map<Object, Object>> data = new HashMap<>();
+        final Map<Object, Object> dummytaskData = new HashMap<>();
+        dummytaskData.put("do_something", "yes");
+        dummytaskData.put("exclude", asList(1, 2));
+        data.put(tasks.get(0), dummytaskData);
+        data.put(tasks.get(1), null);
+        final EncodedValue encodedData = EncodedValue.encode(data);
+        assertArrayEquals(
+            new ResponderAuth(cookie, tasks, data).toBytes(),
+            new ResponderAuth(cookie, tasks, data, encodedData).toBytes());
+
+        data.remove(tasks.get(1));
+        final EncodedValue encodedTaskData = EncodedValue.encode(data);
+        assertArrayEquals(
+            new InitiatorAuth(cookie, tasks.get(0), data).toBytes(),
+            new InitiatorAuth(cookie, tasks.get(0), data, encodedTaskData).toBytes());
+    }
+
+    /**
+     * Messages written with templates must be encoded exactly as before.
+     */
+    @Test
+    public void testTemplatesWireCompatible() throws IOException {
+        final byte[] cookie = RandomHelper.pseudoRandomBytes(16);
+        for (List<String> subprotocols : asList(asList("v1.saltyrtc.org"), asList("v1.saltyrtc.org", "other"))) {
+            final MessageBufferPacker expected = MessagePack.newDefaultBufferPacker();
+            expected.packMapHeader(4)
+                    .packString("type").packString("client-auth")
+                    .packString("your_cookie").packBinaryHeader(cookie.length).writePayload(cookie)
+                    .packString("ping_interval").packInt(30)
+                    .packString("subprotocols").packArrayHeader(subprotocols.size());
+            for (String subprotocol : subprotocols) {
+                expected.packString(subprotocol);
+            }
+            assertArrayEquals(expected.toByteArray(), new ClientAuth(cookie, subprotocols, 30).toBytes());
+        }
+
+        final byte[] key = RandomHelper.pseudoRandomBytes(32);
+        final MessageBufferPacker expected = MessagePack.newDefaultBufferPacker();
+        expected.packMapHeader(2)
+                .packString("type").packString("key")
+                .packString("key").packBinaryHeader(key.length).writePayload(key);
+        assertArrayEquals(expected.toByteArray(), new Key(key).toBytes());
+
+        expected.clear();
+        expected.packMapHeader(2)
+                .packString("type").packString("close")
+                .packString("reason").packInt(CloseCode.GOING_AWAY);
+        assertArrayEquals(expected.toByteArray(), new Close(CloseCode.GOING_AWAY).toBytes());
+    }
+
     @Test
     public void testCloseValidation() throws SerializationError, ValidationError {
         final Close original = new Close(4000);
@@ -303,5 +369,58 @@ public class MessageTest {
         assertEquals(number, returned.getData());
     }
 
+    @Test
+    public void testBinaryApplicationData() throws ValidationError, SerializationError {
+        final byte[] bytes = RandomHelper.pseudoRandomBytes(100);
+        final Application returned = roundTrip(new Application(bytes));
+        assertArrayEquals(bytes, (byte[]) returned.getData());
+    }
+
+    @Test
+    public void testBinaryApplicationDataWireCompatible() throws IOException {
+        // Must be encoded exactly like Jackson encodes a byte array
+        final byte[] bytes = RandomHelper.pseudoRandomBytes(300);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MessagePacker packer = MessagePack.newDefaultPacker(expected);
+        packer.packMapHeader(2)
+                .packString("type")
+                .packString("application")
+                .packString("data");
+        packer.writePayload(new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(bytes));
+        packer.close();
+        assertArrayEquals(expected.toByteArray(), new Application(bytes).toBytes());
+    }
+
+    @Test
+    public void testByteBufferApplicationData() throws ValidationError, SerializationError {
+        final byte[] bytes = RandomHelper.pseudoRandomBytes(100);
+        final byte[] expected = Arrays.copyOfRange(bytes, 10, 90);
+
+        // Heap buffer with an offset
+        final ByteBuffer heap = ByteBuffer.wrap(bytes, 10, 80).slice();
+        assertArrayEquals(expected, (byte[]) roundTrip(new Application(heap)).getData());
+        assertEquals(0, heap.position());
+
+        // Direct buffer
+        final ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        direct.put(bytes).position(10).limit(90);
+        final Application original = new Application(direct);
+        assertArrayEquals(expected, (byte[]) roundTrip(original).getData());
+        assertArrayEquals(expected, (byte[]) roundTrip(original).getData());
+        assertEquals(10, direct.position());
+        assertEquals(new Application(expected).toBytes().length, original.toBytes().length);
+    }
+
+    @Test
+    public void testToBytesWithHeadroom() {
+        final Key key = new Key(RandomHelper.pseudoRandomBytes(32));
+        final byte[] expected = key.toBytes();
+        for (int headroom : new int[] { 0, 24, 40, Message.MAX_HEADROOM }) {
+            final byte[] actual = key.toBytes(headroom);
+            assertEquals(headroom + expected.length, actual.length);
+            assertArrayEquals(new byte[headroom], Arrays.copyOfRange(actual, 0, headroom));
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, headroom, actual.length));
+        }
+    }
 
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.messages;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.saltyrtc.client.annotations.NonNull;
+import org.saltyrtc.client.annotations.TaskMessageField;
+import org.saltyrtc.client.annotations.TaskMessageType;
+import org.saltyrtc.client.exceptions.SerializationError;
+import org.saltyrtc.client.exceptions.ValidationError;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.MessageTypeRegistry;
+import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.messages.c2c.TaskMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Codecs generated by the task message processor.
+ */
+public class TaskMessageCodecTest {
+
+    @TaskMessageType("offer")
+    public static class Offer extends TaskMessage {
+        @NonNull String sdp;
+        int id;
+        boolean trickle;
+        double ratio;
+        @TaskMessageField("max_size") Long maxSize;
+        Boolean relay;
+        byte[] payload;
+
+        public Offer() {
+            super(TaskMessageCodecTest_OfferCodec.TYPE, TaskMessageCodecTest_OfferCodec.INSTANCE);
+        }
+    }
+
+    @TaskMessageType("empty")
+    public static class Empty extends TaskMessage {
+        public Empty() {
+            super(TaskMessageCodecTest_EmptyCodec.TYPE, TaskMessageCodecTest_EmptyCodec.INSTANCE);
+        }
+    }
+
+    private MessageTypeRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.registry = new MessageTypeRegistry();
+        this.registry.register(TaskMessageCodecTest_OfferCodec.INSTANCE, null);
+        this.registry.register(TaskMessageCodecTest_EmptyCodec.INSTANCE, null);
+    }
+
+    private static Offer createOffer() {
+        final Offer offer = new Offer();
+        offer.sdp = "v=0";
+        offer.id = -3;
+        offer.trickle = true;
+        offer.ratio = 0.5;
+        offer.maxSize = 1L << 40;
+        offer.payload = new byte[] { 1, 2, 3 };
+        return offer;
+    }
+
+    private static byte[] packOffer(String key, Object value) throws IOException {
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(3)
+            .packString("type").packString("offer")
+            .packString("id").packInt(1)
+            .packString(key);
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof String) {
+            packer.packString((String) value);
+        } else {
+            packer.packInt((Integer) value);
+        }
+        return packer.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws SerializationError, ValidationError {
+        final Offer offer = createOffer();
+        final Message message = MessageReader.read(offer.toBytes(), this.registry);
+        assertEquals(Offer.class, message.getClass());
+        final Offer read = (Offer) message;
+        assertEquals("offer", read.getType());
+        assertEquals("v=0", read.sdp);
+        assertEquals(-3, read.id);
+        assertTrue(read.trickle);
+        assertEquals(0.5, read.ratio, 0);
+        assertEquals(Long.valueOf(1L << 40), read.maxSize);
+        assertNull(read.relay);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, read.payload);
+
+        assertEquals(Empty.class, MessageReader.read(new Empty().toBytes(), this.registry).getClass());
+    }
+
+    @Test
+    public void testSameAsMap() throws SerializationError, ValidationError, IOException {
+        final Offer offer = createOffer();
+        final Map<String, Object> data = offer.getData();
+        assertEquals("offer", data.get("type"));
+        assertEquals(1L << 40, data.get("max_size"));
+        assertSame(data, offer.getData());
+
+        // The generated encoding decodes to the same map as the map encoding
+        final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+        final TypeReference<Map<String, Object>> mapType = new TypeReference<Map<String, Object>>() {};
+        final Map<String, Object> fromCodec = objectMapper.readValue(offer.toBytes(), mapType);
+        final Map<String, Object> fromMap = objectMapper.readValue(
+            new TaskMessage("offer", new HashMap<>(data)).toBytes(), mapType);
+        assertArrayEquals((byte[]) fromMap.remove("payload"), (byte[]) fromCodec.remove("payload"));
+        assertEquals(fromMap, fromCodec);
+
+        // Untyped messages can be read as typed messages
+        final Map<String, Object> untyped = new HashMap<>();
+        untyped.put("sdp", "v=1");
+        untyped.put("id", 7);
+        untyped.put("trickle", false);
+        untyped.put("ratio", 1);
+        untyped.put("unknown", new ArrayList<>());
+        final Offer read = (Offer) MessageReader.read(new TaskMessage("offer", untyped).toBytes(), this.registry);
+        assertEquals("v=1", read.sdp);
+        assertEquals(7, read.id);
+        assertEquals(1.0, read.ratio, 0);
+        assertNull(read.maxSize);
+    }
+
+    @Test
+    public void testMissingField() throws IOException, SerializationError {
+        try {
+            MessageReader.read(packOffer("sdp", "v=0"), this.registry);
+            fail("No ValidationError thrown");
+        } catch (ValidationError e) {
+            assertEquals("Message is missing the 'trickle' field", e.getMessage());
+        }
+    }
+
+    @Test(expected = ValidationError.class)
+    public void testNonNullFieldIsNil() throws IOException, SerializationError, ValidationError {
+        MessageReader.read(packOffer("sdp", null), this.registry);
+    }
+
+    @Test(expected = ValidationError.class)
+    public void testWrongFieldType() throws IOException, SerializationError, ValidationError {
+        MessageReader.read(packOffer("sdp", 42), this.registry);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testWriteNonNullFieldIsNull() {
+        final Offer offer = createOffer();
+        offer.sdp = null;
+        offer.toBytes();
+    }
+
+    @Test
+    public void testHandler() throws SerializationError, ValidationError {
+        final List<Offer> received = new ArrayList<>();
+        final MessageTypeRegistry registry = new MessageTypeRegistry();
+        registry.register(TaskMessageCodecTest_OfferCodec.INSTANCE, new MessageTypeRegistry.Handler<Offer>() {
+            @Override
+            public void handle(Offer message) {
+                received.add(message);
+            }
+        });
+        assertTrue(registry.dispatch((TaskMessage) MessageReader.read(createOffer().toBytes(), registry)));
+        assertEquals(1, received.size());
+        assertEquals("v=0", received.get(0).sdp);
+    }
+
+}
@@ -72,6 +72,14 @@ public class CombinedSequenceTest {
         assertEquals(oldOverflow + 1, cs.getOverflow());
     }
 
+    @Test
+    public void testNextCombinedSequence() throws OverflowException {
+        final CombinedSequence cs = new CombinedSequence(CombinedSequence.SEQUENCE_NUMBER_MAX - 2, 3);
+        assertEquals((3L << 32) + CombinedSequence.SEQUENCE_NUMBER_MAX - 1, cs.nextCombinedSequence());
+        assertEquals(4L << 32, cs.nextCombinedSequence());
+        assertEquals((4L << 32) + 1, cs.next().getCombinedSequence());
+    }
+
     @Test(expected = OverflowException.class)
     public void testOverflowOverflow() throws OverflowException, NoSuchFieldException, IllegalAccessException {
         CombinedSequence cs = new CombinedSequence();
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.nonce;
+
+import org.junit.Test;
+import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.nonce.NonceTemplate;
+import org.saltyrtc.client.nonce.SignalingChannelNonce;
+import org.saltyrtc.client.signaling.peers.Peer;
+import org.saltyrtc.client.signaling.peers.Responder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class NonceTemplateTest {
+
+    @Test
+    public void testMatchesSignalingChannelNonce() {
+        final byte[] cookie = new Cookie().getBytes();
+        final NonceTemplate template = new NonceTemplate(cookie, (short) 0x01, (short) 0xff);
+        final long[][] values = { {0, 0}, {0, 0xffffffffL}, {1, 0}, {0xffff, 0xffffffffL}, {0x1234, 0x89abcdefL} };
+        for (long[] value : values) {
+            final SignalingChannelNonce expected = new SignalingChannelNonce(
+                cookie, (short) 0x01, (short) 0xff, (int) value[0], value[1]);
+            assertArrayEquals(expected.toBytes(), template.toBytes(expected.getCombinedSequence()));
+        }
+    }
+
+    @Test
+    public void testWriteAtOffset() {
+        final byte[] cookie = new Cookie().getBytes();
+        final NonceTemplate template = new NonceTemplate(cookie, (short) 0x00, (short) 0x02);
+        final byte[] buffer = new byte[3 + SignalingChannelNonce.TOTAL_LENGTH + 2];
+        template.write(buffer, 3, (7L << 32) + 42);
+        final SignalingChannelNonce expected = new SignalingChannelNonce(cookie, (short) 0x00, (short) 0x02, 7, 42);
+        final byte[] actual = new byte[SignalingChannelNonce.TOTAL_LENGTH];
+        System.arraycopy(buffer, 3, actual, 0, actual.length);
+        assertArrayEquals(expected.toBytes(), actual);
+        assertEquals(0, buffer[0]);
+        assertEquals(0, buffer[buffer.length - 1]);
+    }
+
+    @Test
+    public void testValidation() {
+        final byte[] cookie = new Cookie().getBytes();
+        try {
+            new NonceTemplate(new byte[15], (short) 0, (short) 0);
+            fail("Did not raise IllegalArgumentException for cookie");
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            new NonceTemplate(cookie, (short) 256, (short) 0);
+            fail("Did not raise IllegalArgumentException for source");
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            new NonceTemplate(cookie, (short) 0, (short) -1);
+            fail("Did not raise IllegalArgumentException for destination");
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            new NonceTemplate(cookie, (short) 0, (short) 0).toBytes(1L << 48);
+            fail("Did not raise IllegalArgumentException for combined sequence");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void testPeerTemplate() {
+        final Peer peer = new Responder((short) 0x03, 0, new KeyStore());
+        final NonceTemplate template = peer.getNonceTemplate((short) 0x01);
+        assertSame(template, peer.getNonceTemplate((short) 0x01));
+        assertEquals(0x03, template.getDestination());
+
+        // Changing our address creates a new template
+        final NonceTemplate other = peer.getNonceTemplate((short) 0x02);
+        assertNotSame(template, other);
+        assertEquals(0x02, other.getSource());
+        final byte[] nonce = other.toBytes(1);
+        final byte[] cookie = new byte[Cookie.COOKIE_LENGTH];
+        System.arraycopy(nonce, 0, cookie, 0, cookie.length);
+        assertEquals(peer.getCookiePair().getOurs(), new Cookie(cookie));
+    }
+
+}
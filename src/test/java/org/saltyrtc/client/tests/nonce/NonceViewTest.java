@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016 Threema GmbH / SaltyRTC Contributors
+ *
+ * Licensed under the Apache License, Version 2.0, <see LICENSE-APACHE file>
+ * or the MIT license <see LICENSE-MIT file>, at your option. This file may not be
+ * copied, modified, or distributed except according to those terms.
+ */
+
+package org.saltyrtc.client.tests.nonce;
+
+import org.junit.Test;
+import org.saltyrtc.client.cookie.Cookie;
+import org.saltyrtc.client.nonce.NonceView;
+import org.saltyrtc.client.nonce.SignalingChannelNonce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NonceViewTest {
+
+    private static byte[] frame(int offset, SignalingChannelNonce nonce) {
+        final byte[] frame = new byte[offset + SignalingChannelNonce.TOTAL_LENGTH + 5];
+        nonce.write(frame, offset);
+        return frame;
+    }
+
+    @Test
+    public void testAccessors() {
+        final byte[] cookie = new Cookie().getBytes();
+        final SignalingChannelNonce nonce = new SignalingChannelNonce(
+            cookie, (short) 0xfe, (short) 0x81, 0xfffe, 0xfffffffeL);
+        final NonceView view = new NonceView(frame(3, nonce), 3);
+        assertEquals(nonce.getSource(), view.getSource());
+        assertEquals(nonce.getDestination(), view.getDestination());
+        assertEquals(nonce.getOverflow(), view.getOverflow());
+        assertEquals(nonce.getSequence(), view.getSequence());
+        assertEquals(nonce.getCombinedSequence(), view.getCombinedSequence());
+        assertArrayEquals(cookie, view.getCookieBytes());
+        assertEquals(nonce.getCookie(), view.getCookie());
+        assertArrayEquals(nonce.toBytes(), view.toBytes());
+        assertArrayEquals(nonce.toBytes(), view.toNonce().toBytes());
+    }
+
+    @Test
+    public void testHasCookie() {
+        final Cookie cookie = new Cookie();
+        final NonceView view = new NonceView(
+            frame(0, new SignalingChannelNonce(cookie.getBytes(), (short) 1, (short) 2, 0, 1)), 0);
+        assertTrue(view.hasCookie(cookie));
+        assertTrue(view.hasCookie(new Cookie(cookie.getBytes().clone())));
+        assertFalse(view.hasCookie(new Cookie()));
+    }
+
+    @Test
+    public void testRewrap() {
+        final NonceView view = new NonceView();
+        final byte[] cookie = new Cookie().getBytes();
+        view.wrap(frame(0, new SignalingChannelNonce(cookie, (short) 1, (short) 2, 0, 10)), 0);
+        assertEquals(10, view.getCombinedSequence());
+        view.wrap(frame(1, new SignalingChannelNonce(cookie, (short) 3, (short) 4, 1, 11)), 1);
+        assertEquals(3, view.getSource());
+        assertEquals(4, view.getDestination());
+        assertEquals((1L << 32) + 11, view.getCombinedSequence());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTooShort() {
+        new NonceView(new byte[SignalingChannelNonce.TOTAL_LENGTH], 1);
+    }
+
+}
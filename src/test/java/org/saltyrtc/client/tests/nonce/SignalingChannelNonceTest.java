@@ -103,4 +103,40 @@ public class SignalingChannelNonceTest {
         assertArrayEquals(bytes, bytesAgain);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testBytesConstructorAdvancesPosition() {
+        final byte[] bytes = new SignalingChannelNonce(cookie, (short) 1, (short) 2, 3, 4).toBytes();
+
+        // Heap buffer slice with a non-zero array offset, followed by more data
+        final ByteBuffer backing = ByteBuffer.allocate(3 + bytes.length + 5);
+        backing.position(3);
+        final ByteBuffer heap = backing.slice();
+        heap.put(bytes).put((byte) 42).flip();
+
+        // Direct buffer
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 1);
+        direct.put(bytes).put((byte) 42).flip();
+
+        for (ByteBuffer buf : new ByteBuffer[] { heap, direct }) {
+            final SignalingChannelNonce nonce = new SignalingChannelNonce(buf);
+            assertArrayEquals(cookie, nonce.getCookieBytes());
+            assertEquals(1, nonce.getSource());
+            assertEquals(2, nonce.getDestination());
+            assertEquals(3, nonce.getOverflow());
+            assertEquals(4, nonce.getSequence());
+            assertEquals(bytes.length, buf.position());
+            assertEquals(42, buf.get());
+        }
+    }
+
+    @Test
+    public void testWriteAtOffset() {
+        final SignalingChannelNonce nonce = new SignalingChannelNonce(cookie, (short) 1, (short) 2, 3, 4);
+        final byte[] buffer = new byte[5 + SignalingChannelNonce.TOTAL_LENGTH];
+        nonce.write(buffer, 5);
+        final byte[] expected = new byte[buffer.length];
+        System.arraycopy(nonce.toBytes(), 0, expected, 5, SignalingChannelNonce.TOTAL_LENGTH);
+        assertArrayEquals(expected, buffer);
+    }
+
+}
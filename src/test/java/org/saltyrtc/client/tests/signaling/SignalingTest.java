@@ -9,15 +9,32 @@
 package org.saltyrtc.client.tests.signaling;
 
 import org.junit.Test;
+import org.saltyrtc.client.crypto.CryptoProviders;
+import org.saltyrtc.client.helpers.MessageHistory;
+import org.saltyrtc.client.helpers.MessageReader;
+import org.saltyrtc.client.helpers.RandomHelper;
+import org.saltyrtc.client.keystore.AuthToken;
+import org.saltyrtc.client.keystore.Box;
 import org.saltyrtc.client.keystore.KeyStore;
+import org.saltyrtc.client.keystore.KeyStorePool;
+import org.saltyrtc.client.messages.Message;
+import org.saltyrtc.client.messages.c2c.Token;
+import org.saltyrtc.client.messages.s2c.ClientHello;
+import org.saltyrtc.client.nonce.SignalingChannelNonce;
 import org.saltyrtc.client.signaling.InitiatorSignaling;
 import org.saltyrtc.client.signaling.ResponderSignaling;
+import org.saltyrtc.client.signaling.Signaling;
+import org.saltyrtc.client.signaling.peers.Peer;
 import org.saltyrtc.client.tasks.Task;
 import org.saltyrtc.client.tests.Config;
 import org.saltyrtc.client.tests.DummyTask;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class SignalingTest {
@@ -29,12 +46,12 @@ public class SignalingTest {
                 null, Config.SALTYRTC_HOST, Config.SALTYRTC_PORT, new KeyStore(), null,
                 null, null,
                 new Task[] { new DummyTask() },
-                0);
+                0, MessageHistory.DEFAULT_SIZE, CryptoProviders.getDefault(), KeyStorePool.disabled(CryptoProviders.getDefault()));
         final ResponderSignaling responder = new ResponderSignaling(
                 null, Config.SALTYRTC_HOST, Config.SALTYRTC_PORT, new KeyStore(), null,
                 initiator.getPublicPermanentKey(), initiator.getAuthToken(), null, null,
                 new Task[] { new DummyTask() },
-                0);
+                0, MessageHistory.DEFAULT_SIZE, CryptoProviders.getDefault(), KeyStorePool.disabled(CryptoProviders.getDefault()));
 
         // Verify WebSocket path
         Method initiatorMeth = InitiatorSignaling.class.getDeclaredMethod("getWebsocketPath");
@@ -47,4 +64,41 @@ public class SignalingTest {
         assertEquals(initiatorPath, responderPath);
     }
 
+    @Test
+    public void testBuildPacket() throws Exception {
+        final InitiatorSignaling initiator = new InitiatorSignaling(
+                null, Config.SALTYRTC_HOST, Config.SALTYRTC_PORT, new KeyStore(), null,
+                null, null,
+                new Task[] { new DummyTask() },
+                0, MessageHistory.DEFAULT_SIZE, CryptoProviders.getDefault(), KeyStorePool.disabled(CryptoProviders.getDefault()));
+        final ResponderSignaling responder = new ResponderSignaling(
+                null, Config.SALTYRTC_HOST, Config.SALTYRTC_PORT, new KeyStore(), null,
+                initiator.getPublicPermanentKey(), initiator.getAuthToken(), null, null,
+                new Task[] { new DummyTask() },
+                0, MessageHistory.DEFAULT_SIZE, CryptoProviders.getDefault(), KeyStorePool.disabled(CryptoProviders.getDefault()));
+        final Method buildPacket = Signaling.class.getDeclaredMethod(
+                "buildPacket", Message.class, Peer.class, boolean.class);
+        buildPacket.setAccessible(true);
+        final Field initiatorField = ResponderSignaling.class.getDeclaredField("initiator");
+        final Field serverField = Signaling.class.getDeclaredField("server");
+        initiatorField.setAccessible(true);
+        serverField.setAccessible(true);
+
+        // Encrypted with the auth token
+        final Token token = new Token(RandomHelper.pseudoRandomBytes(32));
+        final Peer peer = (Peer) initiatorField.get(responder);
+        byte[] packet = (byte[]) buildPacket.invoke(responder, token, peer, true);
+        final Box box = new Box(ByteBuffer.wrap(packet), SignalingChannelNonce.TOTAL_LENGTH);
+        final SignalingChannelNonce nonce = new SignalingChannelNonce(ByteBuffer.wrap(box.getNonce()));
+        assertArrayEquals(peer.getCookiePair().getOurs().getBytes(), nonce.getCookieBytes());
+        final byte[] decrypted = new AuthToken(initiator.getAuthToken()).decrypt(box);
+        assertArrayEquals(token.getKey(), ((Token) MessageReader.read(decrypted)).getKey());
+
+        // Not encrypted
+        final ClientHello hello = new ClientHello(responder.getPublicPermanentKey());
+        packet = (byte[]) buildPacket.invoke(responder, hello, serverField.get(responder), false);
+        final byte[] payload = Arrays.copyOfRange(packet, SignalingChannelNonce.TOTAL_LENGTH, packet.length);
+        assertArrayEquals(hello.toBytes(), payload);
+    }
+
 }